@@ -0,0 +1,59 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import it.fahner.mywapi.http.HttpResponseStream;
+
+/**
+ * A basic implementation of {@link MyStreamingRequest}. Works like {@link MyBaseRequest}, except that the body
+ * of the response is read from {@link #getStream()} while {@link #onResolved()} runs. {@link #getResponse()}
+ * only holds the status and headers of the response.
+ * <p>Does not use the cache, override {@link #isStreamCacheable()} to change that.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public abstract class MyBaseStreamingRequest extends MyBaseRequest implements MyStreamingRequest {
+	
+	/** Contains the response stream while the request is being completed. */
+	private HttpResponseStream stream;
+	
+	@Override
+	public boolean isStreamCacheable() {
+		return false;
+	}
+	
+	@Override
+	public final void complete(HttpResponseStream stream) {
+		this.stream = stream;
+		try {
+			complete(stream.getHead());
+		} finally {
+			this.stream = null;
+		}
+	}
+	
+	/**
+	 * Returns the stream to read the body of the response from. Only available while {@link #onResolved()}
+	 * runs, and only if the request has succeeded.
+	 * @since MyWebApi 1.0
+	 * @return The response stream, <code>null</code> if there is no body to read
+	 */
+	protected HttpResponseStream getStream() {
+		return this.stream;
+	}
+	
+}
@@ -0,0 +1,226 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import it.fahner.mywapi.http.HttpRequest;
+import it.fahner.mywapi.http.HttpResponse;
+import it.fahner.mywapi.myutil.MyCircuitBreaker;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps the state of a single {@link MyRequest} while MyWebApi is resolving it, which may take several
+ * attempts.
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+final class MyCall {
+	
+	/** The request being resolved. */
+	final MyRequest request;
+	
+	/** The HTTP representation of the first attempt, identifies the request while it is open. */
+	final HttpRequest http;
+	
+	/** The future to complete once the request has been resolved. */
+	final CompletableFuture<HttpResponse> future;
+	
+	/** The future that identical requests wait for, <code>null</code> if duplicates are allowed. */
+	final CompletableFuture<HttpResponse> shared;
+	
+	/** Flag indicating that all request listeners must be notified once the request has been resolved. */
+	final boolean broadcast;
+	
+	/** The retry policy that applies to this request. */
+	final MyRetryPolicy retryPolicy;
+	
+	/** The circuit breaker of the endpoint of the request, <code>null</code> if circuit breaking is disabled. */
+	final MyCircuitBreaker breaker;
+	
+	/** The timeouts that apply to this request. */
+	final MyTimeouts timeouts;
+	
+	/** The time at which the deadline of the request expires, <code>0</code> if it has no deadline. */
+	final long deadline;
+	
+	/** The amount of times the request has been sent. */
+	int attempts;
+	
+	/** The attempts that are currently waiting for their response (more than one while hedging). */
+	private final ArrayList<HttpRequest> sending;
+	
+	/** Flag indicating that the outcome of the request has been decided. */
+	private boolean settled;
+	
+	/** Flag indicating that the deadline of the request has expired. */
+	private boolean expired;
+	
+	/** Flag indicating that the outcome of the request has been handed to everyone waiting for it. */
+	private boolean finished;
+	
+	/** The task that expires the request once its deadline is reached, <code>null</code> if there is none. */
+	private Future<?> deadlineTask;
+	
+	/** The attempt whose response is being read by a streaming request, <code>null</code> if there is none. */
+	private HttpRequest reading;
+	
+	MyCall(MyRequest request, HttpRequest http, CompletableFuture<HttpResponse> future,
+			CompletableFuture<HttpResponse> shared, boolean broadcast, MyRetryPolicy retryPolicy,
+			MyCircuitBreaker breaker, MyTimeouts timeouts) {
+		this.request = request;
+		this.http = http;
+		this.future = future;
+		this.shared = shared;
+		this.broadcast = broadcast;
+		this.retryPolicy = retryPolicy;
+		this.breaker = breaker;
+		this.timeouts = timeouts;
+		this.deadline = timeouts.getDeadline() > 0 ? System.currentTimeMillis() + timeouts.getDeadline() : 0;
+		this.sending = new ArrayList<HttpRequest>(1);
+		this.settled = false;
+		this.expired = false;
+		this.finished = false;
+		this.reading = null;
+	}
+	
+	@Override
+	public String toString() {
+		return request.toString();
+	}
+	
+	/**
+	 * Registers an attempt that is about to be sent.
+	 * @param http The attempt
+	 * @return <code>true</code> if the attempt can be sent, <code>false</code> if the outcome is already decided
+	 *  or the deadline has expired
+	 */
+	synchronized boolean startAttempt(HttpRequest http) {
+		if (settled || expired) { return false; }
+		sending.add(http);
+		return true;
+	}
+	
+	/**
+	 * Unregisters an attempt that has received its response or has failed. If the attempt decides the outcome
+	 * of the request, all other attempts are aborted.
+	 * @param http The attempt
+	 * @param decisive <code>true</code> if the attempt has a response that resolves the request,
+	 *  <code>false</code> if it has failed (and the request may be retried)
+	 * @return <code>true</code> if the caller must handle the outcome of the attempt, <code>false</code> if the
+	 *  outcome is already decided or another attempt is still waiting for its response
+	 */
+	synchronized boolean endAttempt(HttpRequest http, boolean decisive) {
+		sending.remove(http);
+		if (settled) { return false; }
+		if (!decisive) { return sending.isEmpty(); }
+		settled = true;
+		for (HttpRequest other : sending) {
+			other.abort();
+		}
+		sending.clear();
+		return true;
+	}
+	
+	/**
+	 * Registers the attempt whose response is handed to a streaming request, so the deadline also covers
+	 * reading the response. Aborts the attempt right away if the deadline has already expired.
+	 * @param http The attempt that has decided the outcome of the request
+	 */
+	synchronized void startReading(HttpRequest http) {
+		if (finished) { return; }
+		reading = http;
+		if (expired) { http.abort(); }
+	}
+	
+	/**
+	 * Expires the request because its deadline has been reached, and aborts all attempts that are waiting for
+	 * their response, or the response that a streaming request is still reading. Those attempts fail the request
+	 * themselves.
+	 * @return <code>true</code> if the caller must fail the request, <code>false</code> if it has already been
+	 *  resolved or an aborted attempt will fail it
+	 */
+	synchronized boolean expire() {
+		if (finished) { return false; }
+		if (settled) {
+			expired = true;
+			if (reading != null) { reading.abort(); }
+			return false;
+		}
+		expired = true;
+		if (sending.isEmpty()) { return true; }
+		for (HttpRequest http : sending) {
+			http.abort();
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the task that expires the request once its deadline is reached, so it can be cancelled when the
+	 * request is resolved before that.
+	 * @param task The task
+	 */
+	synchronized void setDeadlineTask(Future<?> task) {
+		if (settled) {
+			task.cancel(false);
+		} else {
+			deadlineTask = task;
+		}
+	}
+	
+	/**
+	 * Marks the outcome of the request as decided, and the request as finished.
+	 * @return <code>true</code> if the request has not been finished before
+	 */
+	synchronized boolean settle() {
+		settled = true;
+		if (deadlineTask != null) {
+			deadlineTask.cancel(false);
+			deadlineTask = null;
+		}
+		reading = null;
+		if (finished) { return false; }
+		finished = true;
+		return true;
+	}
+	
+	/**
+	 * Checks if the outcome of the request has been decided.
+	 * @return <code>true</code> if the request has been resolved
+	 */
+	synchronized boolean isSettled() {
+		return settled;
+	}
+	
+	/**
+	 * Checks if the deadline of the request has expired.
+	 * @return <code>true</code> if the deadline has expired
+	 */
+	synchronized boolean isExpired() {
+		return expired;
+	}
+	
+	/**
+	 * Checks if an attempt is waiting for its response.
+	 * @return <code>true</code> if an attempt has been sent and the outcome is not decided yet
+	 */
+	synchronized boolean isSending() {
+		return !settled && !expired && !sending.isEmpty();
+	}
+	
+}
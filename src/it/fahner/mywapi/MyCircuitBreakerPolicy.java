@@ -0,0 +1,235 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+/**
+ * Describes when the circuit breaker of an endpoint opens, and how it recovers.
+ * <p>Every endpoint (the base URL plus the path of a request) has its own circuit breaker. It keeps track
+ * of the outcome of the last requests to that endpoint. A request counts as failed when it timed out or
+ * received a status code in the 5xx range, and counts as slow when it took longer than the slow call
+ * duration. Once enough requests have been made and either the failure rate or the slow call rate reaches
+ * its threshold, the circuit opens: every request to the endpoint fails immediately (or is completed with a
+ * stale cached response, if one is available) without being sent.</p>
+ * <p>After the circuit has been open for a while, it lets a few probe requests through. If all of them
+ * succeed the circuit closes again, otherwise it opens for another period.</p>
+ * <p>All setters return the policy itself, for call chaining.</p>
+ * @see MyWebApi#setCircuitBreakerPolicy(MyCircuitBreakerPolicy)
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class MyCircuitBreakerPolicy {
+	
+	/** Contains the amount of most recent requests the rates are calculated over. */
+	private int windowSize;
+	
+	/** Contains the amount of requests that must have been made before the circuit can open. */
+	private int minimumCalls;
+	
+	/** Contains the percentage of failed requests at which the circuit opens. */
+	private int failureRateThreshold;
+	
+	/** Contains the percentage of slow requests at which the circuit opens. */
+	private int slowCallRateThreshold;
+	
+	/** Contains the duration in milliseconds after which a request counts as slow. */
+	private long slowCallDuration;
+	
+	/** Contains the time in milliseconds the circuit stays open before it lets probe requests through. */
+	private long openDuration;
+	
+	/** Contains the amount of probe requests that must succeed before the circuit closes again. */
+	private int probes;
+	
+	/** Contains the time in milliseconds that an expired cached response can still be used while open. */
+	private long staleDuration;
+	
+	/**
+	 * Creates a new circuit breaker policy that opens when at least half of the last 20 requests (with a
+	 * minimum of 10) failed, or when all of them took longer than 5 seconds. The circuit stays open for
+	 * 10 seconds and then closes after 3 successful probe requests. Stale cached responses are not used.
+	 * @since MyWebApi 1.0
+	 */
+	public MyCircuitBreakerPolicy() {
+		this.windowSize = 20;
+		this.minimumCalls = 10;
+		this.failureRateThreshold = 50;
+		this.slowCallRateThreshold = 100;
+		this.slowCallDuration = 5000;
+		this.openDuration = 10000;
+		this.probes = 3;
+		this.staleDuration = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "{MyCircuitBreakerPolicy: " + failureRateThreshold + "% failed or " + slowCallRateThreshold
+				+ "% slow of " + windowSize + " requests }";
+	}
+	
+	/**
+	 * Sets the amount of most recent requests the failure rate and slow call rate are calculated over.
+	 * @since MyWebApi 1.0
+	 * @param windowSize The amount of requests
+	 * @return This policy for call chaining
+	 */
+	public MyCircuitBreakerPolicy setWindowSize(int windowSize) {
+		this.windowSize = Math.max(1, windowSize);
+		return this;
+	}
+	
+	/**
+	 * Sets the amount of requests that must have been made to an endpoint before its circuit can open.
+	 * @since MyWebApi 1.0
+	 * @param minimumCalls The amount of requests
+	 * @return This policy for call chaining
+	 */
+	public MyCircuitBreakerPolicy setMinimumCalls(int minimumCalls) {
+		this.minimumCalls = Math.max(1, minimumCalls);
+		return this;
+	}
+	
+	/**
+	 * Sets the percentage of failed requests at which the circuit opens.
+	 * @since MyWebApi 1.0
+	 * @param percentage The percentage (1-100)
+	 * @return This policy for call chaining
+	 */
+	public MyCircuitBreakerPolicy setFailureRateThreshold(int percentage) {
+		this.failureRateThreshold = percentage;
+		return this;
+	}
+	
+	/**
+	 * Sets the percentage of slow requests at which the circuit opens, and the duration after which a
+	 * request counts as slow.
+	 * @since MyWebApi 1.0
+	 * @param percentage The percentage (1-100)
+	 * @param milliseconds The duration in milliseconds after which a request counts as slow
+	 * @return This policy for call chaining
+	 */
+	public MyCircuitBreakerPolicy setSlowCallRateThreshold(int percentage, long milliseconds) {
+		this.slowCallRateThreshold = percentage;
+		this.slowCallDuration = milliseconds;
+		return this;
+	}
+	
+	/**
+	 * Sets the time the circuit stays open before it lets probe requests through.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The time in milliseconds
+	 * @return This policy for call chaining
+	 */
+	public MyCircuitBreakerPolicy setOpenDuration(long milliseconds) {
+		this.openDuration = milliseconds;
+		return this;
+	}
+	
+	/**
+	 * Sets the amount of probe requests that must succeed before the circuit closes again.
+	 * @since MyWebApi 1.0
+	 * @param probes The amount of probe requests
+	 * @return This policy for call chaining
+	 */
+	public MyCircuitBreakerPolicy setProbes(int probes) {
+		this.probes = Math.max(1, probes);
+		return this;
+	}
+	
+	/**
+	 * Sets how long an expired cached response is kept, so it can still be used while the circuit is open.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The time in milliseconds after expiring, <code>0</code> to never use stale responses
+	 * @return This policy for call chaining
+	 */
+	public MyCircuitBreakerPolicy setStaleDuration(long milliseconds) {
+		this.staleDuration = milliseconds;
+		return this;
+	}
+	
+	/**
+	 * Returns the amount of most recent requests the rates are calculated over.
+	 * @since MyWebApi 1.0
+	 * @return The amount of requests
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+	
+	/**
+	 * Returns the amount of requests that must have been made before the circuit can open.
+	 * @since MyWebApi 1.0
+	 * @return The amount of requests
+	 */
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+	
+	/**
+	 * Returns the percentage of failed requests at which the circuit opens.
+	 * @since MyWebApi 1.0
+	 * @return The percentage
+	 */
+	public int getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+	
+	/**
+	 * Returns the percentage of slow requests at which the circuit opens.
+	 * @since MyWebApi 1.0
+	 * @return The percentage
+	 */
+	public int getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+	
+	/**
+	 * Returns the duration after which a request counts as slow.
+	 * @since MyWebApi 1.0
+	 * @return The duration in milliseconds
+	 */
+	public long getSlowCallDuration() {
+		return slowCallDuration;
+	}
+	
+	/**
+	 * Returns the time the circuit stays open before it lets probe requests through.
+	 * @since MyWebApi 1.0
+	 * @return The time in milliseconds
+	 */
+	public long getOpenDuration() {
+		return openDuration;
+	}
+	
+	/**
+	 * Returns the amount of probe requests that must succeed before the circuit closes again.
+	 * @since MyWebApi 1.0
+	 * @return The amount of probe requests
+	 */
+	public int getProbes() {
+		return probes;
+	}
+	
+	/**
+	 * Returns how long an expired cached response is kept for use while the circuit is open.
+	 * @since MyWebApi 1.0
+	 * @return The time in milliseconds after expiring
+	 */
+	public long getStaleDuration() {
+		return staleDuration;
+	}
+	
+}
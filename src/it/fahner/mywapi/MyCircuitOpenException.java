@@ -0,0 +1,36 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import java.io.IOException;
+
+/**
+ * Thrown (or used to complete a future exceptionally) when a request is not sent because the circuit breaker
+ * of its endpoint is open.
+ * @see MyCircuitBreakerPolicy
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyCircuitOpenException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public MyCircuitOpenException(String endpoint) {
+		super("Circuit open for endpoint '" + endpoint + "'");
+	}
+	
+}
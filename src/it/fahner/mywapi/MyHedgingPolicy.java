@@ -0,0 +1,139 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+/**
+ * Describes when a second, identical, request is sent for a <code>GET</code> request that has not received a
+ * response yet ("hedging").
+ * <p>A small amount of slow responses from the origin usually dominates the highest latency percentiles. When
+ * a <code>GET</code> request has not received a response after the hedge delay, MyWebApi sends the same
+ * request again. Whichever request receives its response first resolves the request, the other one is
+ * aborted.</p>
+ * <p>By default the hedge delay is the observed 95th percentile of the latency of all requests, so only the
+ * slowest 5% of the requests is hedged. A fixed delay can be set instead. To prevent hedging from doubling the
+ * load on an origin that is slow for every request, the amount of hedges is limited to a fraction of the
+ * amount of requests.</p>
+ * <p>All setters return the policy itself, for call chaining.</p>
+ * @see MyWebApi#setHedgingPolicy(MyHedgingPolicy)
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class MyHedgingPolicy {
+	
+	/** Contains the fixed hedge delay in milliseconds, <code>0</code> to use the observed latency. */
+	private long delay;
+	
+	/** Contains the latency percentile that is used as the hedge delay. */
+	private int percentile;
+	
+	/** Contains the amount of observed latencies that are needed before the percentile is used. */
+	private int minSamples;
+	
+	/** Contains the maximum amount of hedges as a fraction of the amount of requests. */
+	private double maxRatio;
+	
+	/**
+	 * Creates a new hedging policy that hedges requests that take longer than the observed 95th percentile
+	 * (once at least 20 latencies have been observed), with at most one hedge for every 10 requests.
+	 * @since MyWebApi 1.0
+	 */
+	public MyHedgingPolicy() {
+		this.delay = 0;
+		this.percentile = 95;
+		this.minSamples = 20;
+		this.maxRatio = 0.1;
+	}
+	
+	@Override
+	public String toString() {
+		return "{MyHedgingPolicy: after " + (delay > 0 ? delay + " ms" : "p" + percentile) + ", max "
+				+ maxRatio + " }";
+	}
+	
+	/**
+	 * Sets a fixed hedge delay, instead of using the observed latency.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The hedge delay in milliseconds, <code>0</code> to use the observed latency
+	 * @return This policy for call chaining
+	 */
+	public MyHedgingPolicy setDelay(long milliseconds) {
+		this.delay = Math.max(0, milliseconds);
+		return this;
+	}
+	
+	/**
+	 * Sets the percentile of the observed latency that is used as the hedge delay, and the amount of latencies
+	 * that must be observed before any request is hedged.
+	 * @since MyWebApi 1.0
+	 * @param percentile The percentile to use (1-100)
+	 * @param minSamples The amount of latencies to observe first
+	 * @return This policy for call chaining
+	 */
+	public MyHedgingPolicy setPercentile(int percentile, int minSamples) {
+		this.percentile = percentile;
+		this.minSamples = Math.max(1, minSamples);
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum amount of hedges as a fraction of the amount of <code>GET</code> requests.
+	 * @since MyWebApi 1.0
+	 * @param ratio The maximum fraction (e.g. <code>0.1</code> for at most one hedge every 10 requests)
+	 * @return This policy for call chaining
+	 */
+	public MyHedgingPolicy setMaxRatio(double ratio) {
+		this.maxRatio = ratio;
+		return this;
+	}
+	
+	/**
+	 * Returns the fixed hedge delay.
+	 * @since MyWebApi 1.0
+	 * @return The hedge delay in milliseconds, <code>0</code> if the observed latency is used
+	 */
+	public long getDelay() {
+		return delay;
+	}
+	
+	/**
+	 * Returns the percentile of the observed latency that is used as the hedge delay.
+	 * @since MyWebApi 1.0
+	 * @return The percentile
+	 */
+	public int getPercentile() {
+		return percentile;
+	}
+	
+	/**
+	 * Returns the amount of latencies that must be observed before any request is hedged.
+	 * @since MyWebApi 1.0
+	 * @return The amount of latencies
+	 */
+	public int getMinSamples() {
+		return minSamples;
+	}
+	
+	/**
+	 * Returns the maximum amount of hedges as a fraction of the amount of <code>GET</code> requests.
+	 * @since MyWebApi 1.0
+	 * @return The maximum fraction
+	 */
+	public double getMaxRatio() {
+		return maxRatio;
+	}
+	
+}
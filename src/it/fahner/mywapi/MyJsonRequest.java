@@ -0,0 +1,135 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import it.fahner.mywapi.http.HttpBodySource;
+import it.fahner.mywapi.json.JsonCodec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * A {@link MyBaseRequest} that receives a JSON document, and delivers it as an object of its result type.
+ * <p>The body of a successful response is read straight from its bytes by the codec of the result type (see
+ * {@link JsonCodec}), which is built once and then shared by all requests with the same result type. The
+ * decoded result is handed to {@link #onResolved(Object)}.</p>
+ * <p>To send an object as the JSON body of the request, return it from {@link #getRequestObject()}. It is
+ * encoded by the codec of its class.</p>
+ * @param <T> The type of the result
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public abstract class MyJsonRequest<T> extends MyBaseRequest {
+	
+	/** The content type of the JSON body of a request. */
+	public static final String CONTENT_TYPE = "application/json; charset=utf-8";
+	
+	/** Contains the codec of the result type. */
+	private final JsonCodec<T> codec;
+	
+	/** Contains the encoded body, <code>null</code> if it has not been encoded yet. */
+	private HttpBodySource bodySource;
+	
+	/** Contains the decoded result, <code>null</code> if there is none. */
+	private T result;
+	
+	/** Contains the reason the response could not be decoded, <code>null</code> if it could. */
+	private IOException decodeError;
+	
+	/**
+	 * Creates a new JSON request.
+	 * @since MyWebApi 1.0
+	 * @param resultType The class of the result
+	 * @throws IllegalArgumentException When the class cannot be converted from JSON
+	 */
+	protected MyJsonRequest(Class<T> resultType) {
+		this.codec = JsonCodec.of(resultType);
+	}
+	
+	/**
+	 * Creates a new JSON request with a generic result type, like <code>List&lt;Item&gt;</code>.
+	 * @since MyWebApi 1.0
+	 * @param resultType The type of the result
+	 * @throws IllegalArgumentException When the type cannot be converted from JSON
+	 */
+	@SuppressWarnings("unchecked")
+	protected MyJsonRequest(Type resultType) {
+		this.codec = (JsonCodec<T>) JsonCodec.of(resultType);
+	}
+	
+	/**
+	 * Returns the object to send as the JSON body of this request. It is encoded once, when the body of this
+	 * request is first needed.
+	 * <p>Returns <code>null</code> by default, to send no body.</p>
+	 * @since MyWebApi 1.0
+	 * @return The object to encode, <code>null</code> to send no body
+	 */
+	protected Object getRequestObject() {
+		return null;
+	}
+	
+	@Override
+	public HttpBodySource getBodySource() {
+		if (bodySource == null) {
+			Object body = getRequestObject();
+			if (body != null) { bodySource = HttpBodySource.of(JsonCodec.encode(body), CONTENT_TYPE); }
+		}
+		return bodySource;
+	}
+	
+	/**
+	 * Returns the decoded result of this request.
+	 * @since MyWebApi 1.0
+	 * @return The result, <code>null</code> if the request has not succeeded or its response could not be decoded
+	 */
+	protected T getResult() {
+		return this.result;
+	}
+	
+	/**
+	 * Returns the reason the response of this request could not be decoded.
+	 * @since MyWebApi 1.0
+	 * @return The error, <code>null</code> if the response was decoded (or there was none to decode)
+	 */
+	protected IOException getDecodeError() {
+		return this.decodeError;
+	}
+	
+	@Override
+	protected final void onResolved() {
+		result = null;
+		decodeError = null;
+		if (hasSucceeded()) {
+			try {
+				result = codec.readDocument(getResponse().getJsonParser());
+			} catch (IOException e) {
+				decodeError = e;
+				MyLog.error("Could not decode JSON response (" + this + "): " + e.getMessage());
+			}
+		}
+		onResolved(result);
+	}
+	
+	/**
+	 * The method to override to respond to this request being resolved.
+	 * @since MyWebApi 1.0
+	 * @param result The decoded result, <code>null</code> if the request has not succeeded or its response could
+	 *  not be decoded (see {@link #hasSucceeded()} and {@link #getDecodeError()})
+	 */
+	protected abstract void onResolved(T result);
+	
+}
@@ -0,0 +1,177 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import it.fahner.mywapi.http.types.HttpContentType;
+import it.fahner.mywapi.json.JsonCodec;
+import it.fahner.mywapi.json.JsonParseException;
+import it.fahner.mywapi.json.JsonPullParser;
+import it.fahner.mywapi.json.JsonToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Locale;
+
+/**
+ * A {@link MyBaseStreamingRequest} that receives a sequence of JSON values, and delivers every value to
+ * {@link #onElement(Object)} as soon as it has been received, while the rest of the response is still arriving.
+ * <p>The response is either a JSON array, of which every element is delivered, or newline-delimited JSON
+ * (a sequence of values separated by newlines, see {@link #isNewlineDelimited()}) of which every value is
+ * delivered. Every element is decoded by the codec of the element type (see {@link JsonCodec}), straight from
+ * the bytes of the response. Only one element is held in memory at a time, regardless of the size of the
+ * response.</p>
+ * <p>Once the response has been read (or the request has failed), {@link #onFinished()} is called.</p>
+ * @param <T> The type of the elements
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public abstract class MyJsonStreamRequest<T> extends MyBaseStreamingRequest {
+	
+	/** Contains the codec of the element type. */
+	private final JsonCodec<T> codec;
+	
+	/** Contains the amount of elements that have been delivered. */
+	private long elements;
+	
+	/** Contains the reason the response could not be decoded, <code>null</code> if it could. */
+	private IOException decodeError;
+	
+	/**
+	 * Creates a new JSON stream request.
+	 * @since MyWebApi 1.0
+	 * @param elementType The class of the elements
+	 * @throws IllegalArgumentException When the class cannot be converted from JSON
+	 */
+	protected MyJsonStreamRequest(Class<T> elementType) {
+		this.codec = JsonCodec.of(elementType);
+	}
+	
+	/**
+	 * Creates a new JSON stream request with a generic element type, like <code>Map&lt;String, Item&gt;</code>.
+	 * @since MyWebApi 1.0
+	 * @param elementType The type of the elements
+	 * @throws IllegalArgumentException When the type cannot be converted from JSON
+	 */
+	@SuppressWarnings("unchecked")
+	protected MyJsonStreamRequest(Type elementType) {
+		this.codec = (JsonCodec<T>) JsonCodec.of(elementType);
+	}
+	
+	/**
+	 * Returns the amount of elements that have been delivered to {@link #onElement(Object)}.
+	 * @since MyWebApi 1.0
+	 * @return The amount of elements
+	 */
+	protected long getElementCount() {
+		return this.elements;
+	}
+	
+	/**
+	 * Returns the reason the response of this request could not be decoded. The elements before the error have
+	 * been delivered.
+	 * @since MyWebApi 1.0
+	 * @return The error, <code>null</code> if the response was decoded (or there was none to decode)
+	 */
+	protected IOException getDecodeError() {
+		return this.decodeError;
+	}
+	
+	/**
+	 * Checks if the response is newline-delimited JSON instead of a JSON array.
+	 * <p>By default this is the case when the content type of the response is
+	 * <code>application/x-ndjson</code>, <code>application/jsonl</code> or a similar type, or when it is a
+	 * JSON text sequence (<code>application/json-seq</code>), of which the record separators are skipped.</p>
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> to deliver every value at the top level, <code>false</code> to deliver every
+	 *  element of the array at the top level
+	 */
+	protected boolean isNewlineDelimited() {
+		HttpContentType type = getResponse().getContentType();
+		if (type == null || type.getContentType() == null) { return false; }
+		String mime = type.getContentType().toLowerCase(Locale.ENGLISH);
+		return mime.contains("ndjson") || mime.contains("jsonl") || mime.contains("json-seq");
+	}
+	
+	@Override
+	protected final void onResolved() {
+		elements = 0;
+		decodeError = null;
+		if (hasSucceeded() && getStream() != null) {
+			try {
+				read(getStream().getJsonParser());
+			} catch (IOException e) {
+				decodeError = e;
+				MyLog.error("Could not decode JSON stream (" + this + "): " + e.getMessage());
+			}
+		}
+		onFinished();
+	}
+	
+	/**
+	 * Reads all elements, and delivers them one by one.
+	 * @param parser The parser over the response body, positioned before its first token
+	 * @throws IOException When the response is malformed or could not be read
+	 */
+	private void read(JsonPullParser parser) throws IOException {
+		if (isNewlineDelimited()) {
+			parser.setMultipleValues(true);
+			while (parser.next() != JsonToken.END_DOCUMENT) {
+				deliver(parser);
+			}
+			return;
+		}
+		if (parser.next() != JsonToken.BEGIN_ARRAY) {
+			throw new JsonParseException("Expected an array but found " + parser.getToken(), parser.getOffset());
+		}
+		while (parser.next() != JsonToken.END_ARRAY) {
+			deliver(parser);
+		}
+		if (parser.next() != JsonToken.END_DOCUMENT) {
+			throw new JsonParseException("Unexpected data after the document", parser.getOffset());
+		}
+	}
+	
+	/**
+	 * Decodes a single element, and delivers it.
+	 * @param parser The parser, positioned at the first token of the element
+	 * @throws IOException When the element is malformed or could not be read
+	 */
+	private void deliver(JsonPullParser parser) throws IOException {
+		T element = codec.read(parser);
+		elements += 1;
+		onElement(element);
+	}
+	
+	/**
+	 * The method to override to respond to an element of the response. Called on the thread that reads the
+	 * response, before the next element has been received.
+	 * @since MyWebApi 1.0
+	 * @param element The decoded element
+	 */
+	protected abstract void onElement(T element);
+	
+	/**
+	 * The method to override to respond to this request being resolved, after all elements have been delivered.
+	 * Use {@link #hasSucceeded()} and {@link #getDecodeError()} to find out if all elements have been received.
+	 * <p>Does nothing by default.</p>
+	 * @since MyWebApi 1.0
+	 */
+	protected void onFinished() {
+		// Nothing to do by default
+	}
+	
+}
@@ -0,0 +1,127 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import it.fahner.mywapi.http.HttpBodySource;
+import it.fahner.mywapi.http.types.HttpParamList;
+import it.fahner.mywapi.http.types.HttpRequestMethod;
+
+/**
+ * A request that was queued in a previous session and has been restored from the queue journal.
+ * <p>The original {@link MyRequest} instance no longer exists once the application has restarted,
+ * so only the registered {@link MyRequestListener}s are notified when a restored request is resolved.
+ * Use {@link #getContentName()} (and the other getters) to find out what kind of request it was.</p>
+ * @see MyWebApi#setQueueJournal(java.io.File)
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyQueuedRequest extends MyBaseRequest {
+	
+	/** Contains the path of the original request. */
+	private String path;
+	
+	/** Contains the request method of the original request. */
+	private HttpRequestMethod method;
+	
+	/** Contains the URL parameters of the original request. */
+	private HttpParamList urlParameters;
+	
+	/** Contains the content name of the original request. */
+	private String contentName;
+	
+	/** Contains the body of the original request. */
+	private String body;
+	
+	/** Contains the body source of the original request, <code>null</code> if it had none. */
+	private HttpBodySource bodySource;
+	
+	/**
+	 * Creates a request that resolves the same resource as a request from a previous session.
+	 * @since MyWebApi 1.0
+	 * @param path The path of the original request (can be <code>null</code>)
+	 * @param method The request method of the original request (can be <code>null</code>)
+	 * @param urlParameters The URL parameters of the original request
+	 * @param contentName The content name of the original request (can be <code>null</code>)
+	 * @param body The body of the original request (can be <code>null</code>)
+	 */
+	public MyQueuedRequest(String path, HttpRequestMethod method, HttpParamList urlParameters,
+			String contentName, String body) {
+		this(path, method, urlParameters, contentName, body, null);
+	}
+	
+	/**
+	 * Creates a request that resolves the same resource as a request from a previous session, which had a body
+	 * source.
+	 * @since MyWebApi 1.0
+	 * @param path The path of the original request (can be <code>null</code>)
+	 * @param method The request method of the original request (can be <code>null</code>)
+	 * @param urlParameters The URL parameters of the original request
+	 * @param contentName The content name of the original request (can be <code>null</code>)
+	 * @param body The body of the original request (can be <code>null</code>)
+	 * @param bodySource The body source of the original request (can be <code>null</code>)
+	 */
+	public MyQueuedRequest(String path, HttpRequestMethod method, HttpParamList urlParameters,
+			String contentName, String body, HttpBodySource bodySource) {
+		this.path = path;
+		this.method = method;
+		this.urlParameters = urlParameters;
+		this.contentName = contentName;
+		this.body = body;
+		this.bodySource = bodySource;
+	}
+	
+	@Override
+	public String toString() {
+		return "{MyQueuedRequest: '" + contentName + "' }";
+	}
+	
+	@Override
+	public String getPath() {
+		return path;
+	}
+	
+	@Override
+	public HttpRequestMethod getRequestMethod() {
+		return method;
+	}
+	
+	@Override
+	public String getContentName() {
+		return contentName;
+	}
+	
+	@Override
+	public HttpParamList getUrlParameters() {
+		return urlParameters;
+	}
+	
+	@Override
+	public String getBody() {
+		return body;
+	}
+	
+	@Override
+	public HttpBodySource getBodySource() {
+		return bodySource;
+	}
+	
+	@Override
+	protected void onResolved() {
+		// Nothing to do, the request listeners are notified by MyWebApi
+	}
+	
+}
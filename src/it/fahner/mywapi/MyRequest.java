@@ -16,6 +16,7 @@
 
 package it.fahner.mywapi;
 
+import it.fahner.mywapi.http.HttpBodySource;
 import it.fahner.mywapi.http.HttpResponse;
 import it.fahner.mywapi.http.types.HttpParamList;
 import it.fahner.mywapi.http.types.HttpRequestMethod;
@@ -29,6 +30,24 @@ import it.fahner.mywapi.http.types.HttpStatusCode;
  */
 public interface MyRequest {
 	
+	/**
+	 * Priority for requests that run in the background (for example prefetching or bulk synchronization).
+	 * @since MyWebApi 1.0
+	 */
+	public static final int PRIORITY_LOW = 0;
+	
+	/**
+	 * Priority for requests that have no specific urgency.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int PRIORITY_NORMAL = 5;
+	
+	/**
+	 * Priority for requests that a user is actively waiting for.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int PRIORITY_HIGH = 10;
+	
 	/**
 	 * Allows the request to further specify the URL. This value gets directly appended to the base
 	 * URL provided by your {@link MyWebConfigs}.
@@ -84,6 +103,57 @@ public interface MyRequest {
 	 */
 	public String getBody();
 	
+	/**
+	 * Returns the source of the HTTP body of the request to send, which is written to the connection while the
+	 * request is sent. Use this instead of {@link #getBody()} for large bodies, or bodies that are produced
+	 * while they are being sent.
+	 * <p>A request with a body that can only be sent once (see {@link HttpBodySource#isRepeatable()}) is never
+	 * retried or hedged.</p>
+	 * <p>Returns <code>null</code> by default.</p>
+	 * @since MyWebApi 1.0
+	 * @return The source of the request body, <code>null</code> to use {@link #getBody()}
+	 */
+	public default HttpBodySource getBodySource() {
+		return null;
+	}
+	
+	/**
+	 * Returns the priority of this request. When more requests are started than MyWebApi resolves at the same
+	 * time, requests with a higher priority are sent first. Requests that have been waiting for a long time
+	 * are gradually treated as if they had a higher priority, so they are never starved.
+	 * <p>Use one of {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_HIGH}, or any value
+	 * in between.</p>
+	 * <p>Returns {@link #PRIORITY_NORMAL} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @return The priority of this request
+	 */
+	public default int getPriority() {
+		return PRIORITY_NORMAL;
+	}
+	
+	/**
+	 * Returns the retry policy for this request, which decides if and when this request is sent again after
+	 * it has failed.
+	 * <p>Returns <code>null</code> by default.</p>
+	 * @see MyWebApi#setRetryPolicy(MyRetryPolicy)
+	 * @since MyWebApi 1.0
+	 * @return The retry policy for this request, <code>null</code> to use the policy of the MyWebApi instance
+	 */
+	public default MyRetryPolicy getRetryPolicy() {
+		return null;
+	}
+	
+	/**
+	 * Returns the connect timeout, read timeout and deadline for this request.
+	 * <p>Returns <code>null</code> by default.</p>
+	 * @see MyWebApi#setTimeouts(MyTimeouts)
+	 * @since MyWebApi 1.0
+	 * @return The timeouts for this request, <code>null</code> to use the timeouts of the MyWebApi instance
+	 */
+	public default MyTimeouts getTimeouts() {
+		return null;
+	}
+	
 	/**
 	 * Called when this request has been resolved and has failed.
 	 * @since MyWebApi 1.0
@@ -0,0 +1,209 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import it.fahner.mywapi.http.types.HttpRequestMethod;
+import it.fahner.mywapi.http.types.HttpStatusCode;
+import it.fahner.mywapi.http.types.HttpStatusCodeClass;
+
+import java.util.EnumSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Describes when and how often a failed request is sent again.
+ * <p>A request is retried when it fails (due to a timeout or I/O error), or when it receives one of the
+ * retryable status codes (by default <code>429</code>, <code>502</code>, <code>503</code> and <code>504</code>).
+ * A retry never happens before the time the origin asked to wait for (see
+ * {@link MyWebApi#setRateLimit(double, int)}). Between
+ * attempts MyWebApi waits for an exponentially growing delay with "full jitter": a random time between zero
+ * and <code>baseDelay * 2^(attempt - 1)</code>, capped at the maximum delay.</p>
+ * <p>By default only requests with an idempotent request method (see {@link #isIdempotent(HttpRequestMethod)})
+ * are retried, since retrying any other request may cause its operation to happen twice.</p>
+ * <p>All setters return the policy itself, for call chaining:</p>
+ * <p><code>
+ * api.setRetryPolicy(new MyRetryPolicy().setMaxAttempts(4).setBaseDelay(200));
+ * </code></p>
+ * @see MyWebApi#setRetryPolicy(MyRetryPolicy)
+ * @see MyRequest#getRetryPolicy()
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class MyRetryPolicy {
+	
+	/**
+	 * A policy that never retries anything.
+	 * @since MyWebApi 1.0
+	 */
+	public static final MyRetryPolicy NONE = new MyRetryPolicy().setMaxAttempts(1);
+	
+	/** Contains the maximum amount of times a request is sent (including the first time). */
+	private int maxAttempts;
+	
+	/** Contains the delay in milliseconds that is used to calculate the delay before a retry. */
+	private long baseDelay;
+	
+	/** Contains the maximum delay in milliseconds before a retry. */
+	private long maxDelay;
+	
+	/** Contains the status codes that cause a request to be retried. */
+	private EnumSet<HttpStatusCode> retryableStatuses;
+	
+	/** Flag indicating that requests with a non-idempotent request method can be retried as well. */
+	private boolean retryNonIdempotent;
+	
+	/**
+	 * Creates a new retry policy that sends a request at most 3 times, with a base delay of 100 ms, a maximum
+	 * delay of 5 seconds and retries on status codes 429, 502, 503 and 504.
+	 * @since MyWebApi 1.0
+	 */
+	public MyRetryPolicy() {
+		this.maxAttempts = 3;
+		this.baseDelay = 100;
+		this.maxDelay = 5000;
+		this.retryableStatuses = EnumSet.of(HttpStatusCode.TooManyRequests, HttpStatusCode.BadGateway,
+				HttpStatusCode.ServiceUnavailable, HttpStatusCode.GatewayTimeout);
+		this.retryNonIdempotent = false;
+	}
+	
+	@Override
+	public String toString() {
+		return "{MyRetryPolicy: " + maxAttempts + " attempts, " + baseDelay + "-" + maxDelay + " ms }";
+	}
+	
+	/**
+	 * Sets the maximum amount of times a request is sent, including the first time.
+	 * @since MyWebApi 1.0
+	 * @param maxAttempts The maximum amount of attempts, <code>1</code> to never retry
+	 * @return This policy for call chaining
+	 */
+	public MyRetryPolicy setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		return this;
+	}
+	
+	/**
+	 * Sets the delay that the exponential backoff starts with.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The base delay in milliseconds
+	 * @return This policy for call chaining
+	 */
+	public MyRetryPolicy setBaseDelay(long milliseconds) {
+		this.baseDelay = milliseconds;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum delay before a retry.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The maximum delay in milliseconds
+	 * @return This policy for call chaining
+	 */
+	public MyRetryPolicy setMaxDelay(long milliseconds) {
+		this.maxDelay = milliseconds;
+		return this;
+	}
+	
+	/**
+	 * Sets the status codes that cause a request to be retried, replacing the default codes
+	 * ({@link HttpStatusCode#TooManyRequests}, {@link HttpStatusCode#BadGateway},
+	 * {@link HttpStatusCode#ServiceUnavailable} and {@link HttpStatusCode#GatewayTimeout}). Leave out
+	 * {@link HttpStatusCode#TooManyRequests} to fail throttled requests right away instead of retrying them
+	 * once the origin allows it. Only codes in the {@link HttpStatusCodeClass#SERVER_ERROR} class,
+	 * {@link HttpStatusCode#RequestTimeout} and {@link HttpStatusCode#TooManyRequests} are accepted, any other
+	 * code is ignored.
+	 * @since MyWebApi 1.0
+	 * @param statuses The retryable status codes
+	 * @return This policy for call chaining
+	 */
+	public MyRetryPolicy setRetryableStatuses(HttpStatusCode... statuses) {
+		this.retryableStatuses = EnumSet.noneOf(HttpStatusCode.class);
+		for (HttpStatusCode status : statuses) {
+			if (status.getResponseClass() == HttpStatusCodeClass.SERVER_ERROR
+					|| status == HttpStatusCode.RequestTimeout || status == HttpStatusCode.TooManyRequests) {
+				retryableStatuses.add(status);
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Specifies whether requests with a non-idempotent request method (like <code>POST</code>) may be retried.
+	 * <p>Is set to <code>false</code> by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param retryNonIdempotent <code>true</code> to retry requests regardless of their request method
+	 * @return This policy for call chaining
+	 */
+	public MyRetryPolicy setRetryNonIdempotent(boolean retryNonIdempotent) {
+		this.retryNonIdempotent = retryNonIdempotent;
+		return this;
+	}
+	
+	/**
+	 * Returns the maximum amount of times a request is sent, including the first time.
+	 * @since MyWebApi 1.0
+	 * @return The maximum amount of attempts
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+	
+	/**
+	 * Checks if a request may be sent again after the given amount of attempts.
+	 * @since MyWebApi 1.0
+	 * @param method The request method of the request
+	 * @param attempts The amount of times the request has been sent
+	 * @return <code>true</code> if another attempt is allowed, <code>false</code> otherwise
+	 */
+	public boolean allowsRetry(HttpRequestMethod method, int attempts) {
+		if (attempts >= maxAttempts) { return false; }
+		return retryNonIdempotent || isIdempotent(method);
+	}
+	
+	/**
+	 * Checks if a response with the given status code should be retried.
+	 * @since MyWebApi 1.0
+	 * @param status The status code of the response
+	 * @return <code>true</code> if the status code is retryable
+	 */
+	public boolean isRetryable(HttpStatusCode status) {
+		return retryableStatuses.contains(status);
+	}
+	
+	/**
+	 * Returns a randomized delay to wait before the next attempt ("full jitter").
+	 * @since MyWebApi 1.0
+	 * @param attempts The amount of times the request has been sent
+	 * @return The delay in milliseconds
+	 */
+	public long getDelay(int attempts) {
+		long ceiling = baseDelay << Math.min(Math.max(attempts - 1, 0), 30);
+		if (ceiling <= 0 || ceiling > maxDelay) { ceiling = maxDelay; }
+		return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+	}
+	
+	/**
+	 * Checks if a request method is idempotent, meaning that sending the same request twice has the same
+	 * effect as sending it once. <code>POST</code> is the only method that is not.
+	 * @since MyWebApi 1.0
+	 * @param method The request method to check, <code>null</code> for the default (GET)
+	 * @return <code>true</code> if the request method is idempotent
+	 */
+	public static boolean isIdempotent(HttpRequestMethod method) {
+		return method != HttpRequestMethod.POST;
+	}
+	
+}
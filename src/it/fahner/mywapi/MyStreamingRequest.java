@@ -0,0 +1,54 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+import it.fahner.mywapi.http.HttpResponse;
+import it.fahner.mywapi.http.HttpResponseStream;
+
+/**
+ * Defines an interface for requests that read their response body as a stream, instead of having it read
+ * into memory first. Use this for responses that can be very large (like exports or file downloads). A base
+ * implementation for this interface is available as the abstract class MyBaseStreamingRequest.
+ * <p>The stream is read while the response is still arriving, so a slow reader slows down the sender as
+ * well: the connection and the worker of the request stay in use until the stream has been closed.</p>
+ * <p>A streaming request is never combined with an identical request that is already in progress, and its
+ * response is not cached unless {@link #isStreamCacheable()} returns <code>true</code>.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public interface MyStreamingRequest extends MyRequest {
+	
+	/**
+	 * Checks if the response of this request may be taken from, and stored in, the cache.
+	 * <p>When enabled, a body that has been read to its end is kept in memory and cached for
+	 * {@link #getCacheTime()} milliseconds. A cached response is handed over as a stream as well.</p>
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> to use the cache for this request
+	 */
+	public boolean isStreamCacheable();
+	
+	/**
+	 * Called instead of {@link #complete(HttpResponse)} when this request has been resolved and has
+	 * succeeded.
+	 * <p>The stream is only valid until this method returns, after which it is closed. Any part of the body
+	 * that has not been read by then is discarded.</p>
+	 * @since MyWebApi 1.0
+	 * @param stream The response, with a body that has not been read yet
+	 */
+	public void complete(HttpResponseStream stream);
+	
+}
@@ -0,0 +1,125 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi;
+
+/**
+ * Describes how long a request may take.
+ * <ul>
+ * <li>The <b>connect timeout</b> limits the time it takes to set up a connection to the origin.</li>
+ * <li>The <b>read timeout</b> limits the time between two pieces of data received from the origin.</li>
+ * <li>The <b>deadline</b> limits the total time from the moment the request is started until it has been
+ * resolved. It includes waiting for a worker, sending the request body, receiving the response and any
+ * retries. Once the deadline expires, the connection is closed and the request fails.</li>
+ * </ul>
+ * <p>The read timeout alone cannot protect against a server that keeps sending a single byte every few seconds,
+ * the deadline does.</p>
+ * <p>All setters return the timeouts themselves, for call chaining.</p>
+ * @see MyWebApi#setTimeouts(MyTimeouts)
+ * @see MyRequest#getTimeouts()
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class MyTimeouts {
+	
+	/** Contains the connect timeout in milliseconds. */
+	private int connectTimeout;
+	
+	/** Contains the read timeout in milliseconds. */
+	private int readTimeout;
+	
+	/** Contains the deadline in milliseconds, <code>0</code> for none. */
+	private long deadline;
+	
+	/**
+	 * Creates new timeouts that use {@link MyWebApi#DEFAULT_TIMEOUT} as connect and read timeout, and
+	 * {@link MyWebApi#DEFAULT_DEADLINE} as deadline.
+	 * @since MyWebApi 1.0
+	 */
+	public MyTimeouts() {
+		this.connectTimeout = MyWebApi.DEFAULT_TIMEOUT;
+		this.readTimeout = MyWebApi.DEFAULT_TIMEOUT;
+		this.deadline = MyWebApi.DEFAULT_DEADLINE;
+	}
+	
+	@Override
+	public String toString() {
+		return "{MyTimeouts: connect " + connectTimeout + " ms, read " + readTimeout + " ms, deadline "
+				+ deadline + " ms }";
+	}
+	
+	/**
+	 * Sets the maximum time it may take to set up a connection.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The connect timeout in milliseconds, <code>0</code> to wait forever
+	 * @return These timeouts for call chaining
+	 */
+	public MyTimeouts setConnectTimeout(int milliseconds) {
+		this.connectTimeout = Math.max(0, milliseconds);
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum time between two pieces of data received from the origin.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The read timeout in milliseconds, <code>0</code> to wait forever
+	 * @return These timeouts for call chaining
+	 */
+	public MyTimeouts setReadTimeout(int milliseconds) {
+		this.readTimeout = Math.max(0, milliseconds);
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum total time a request may take, including all of its retries.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The deadline in milliseconds after the request has been started, <code>0</code>
+	 *  for no deadline
+	 * @return These timeouts for call chaining
+	 */
+	public MyTimeouts setDeadline(long milliseconds) {
+		this.deadline = Math.max(0, milliseconds);
+		return this;
+	}
+	
+	/**
+	 * Returns the maximum time it may take to set up a connection.
+	 * @since MyWebApi 1.0
+	 * @return The connect timeout in milliseconds, <code>0</code> if there is none
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	/**
+	 * Returns the maximum time between two pieces of data received from the origin.
+	 * @since MyWebApi 1.0
+	 * @return The read timeout in milliseconds, <code>0</code> if there is none
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+	
+	/**
+	 * Returns the maximum total time a request may take, including all of its retries.
+	 * @since MyWebApi 1.0
+	 * @return The deadline in milliseconds, <code>0</code> if there is none
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+	
+}
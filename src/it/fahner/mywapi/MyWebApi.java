@@ -16,17 +16,50 @@
 
 package it.fahner.mywapi;
 
+import it.fahner.mywapi.http.HttpAsyncTransport;
+import it.fahner.mywapi.http.HttpBodySource;
+import it.fahner.mywapi.http.HttpPooledTransport;
 import it.fahner.mywapi.http.HttpRequest;
 import it.fahner.mywapi.http.HttpRequestTimeoutException;
 import it.fahner.mywapi.http.HttpResponse;
+import it.fahner.mywapi.http.HttpResponseStream;
+import it.fahner.mywapi.http.HttpTransport;
+import it.fahner.mywapi.http.HttpURLConnectionTransport;
 import it.fahner.mywapi.http.types.HttpParamList;
+import it.fahner.mywapi.http.types.HttpRequestMethod;
+import it.fahner.mywapi.http.types.HttpStatusCode;
+import it.fahner.mywapi.http.types.HttpStatusCodeClass;
+import it.fahner.mywapi.myutil.MyCircuitBreaker;
 import it.fahner.mywapi.myutil.MyContentListenerCollection;
+import it.fahner.mywapi.myutil.MyLatencyTracker;
 import it.fahner.mywapi.myutil.MyOpenRequestsTracker;
+import it.fahner.mywapi.myutil.MyRateLimiter;
+import it.fahner.mywapi.myutil.MyRecordingInputStream;
 import it.fahner.mywapi.myutil.MyRequestListenerCollection;
+import it.fahner.mywapi.myutil.MyRequestQueue;
+import it.fahner.mywapi.myutil.MyRequestScheduler;
+import it.fahner.mywapi.myutil.MyRetryBudget;
+import it.fahner.mywapi.myutil.MyThreadFactory;
+import it.fahner.mywapi.myutil.MyVirtualThreads;
 import it.fahner.mywapi.myutil.MyWebCache;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 /**
  * The main entry point for the MyWebApi library. All requests, threads, caches and requestListeners
@@ -41,7 +74,8 @@ import java.net.URL;
  * instead of using the actual interface, since that will reduce the chances of your code breaking due to an
  * interface change.</p>
  * <p>When any request is resolved, all requestListeners are notified using their
- * {@link MyRequestListener#onRequestResolved(MyRequest)} method.</p>
+ * {@link MyRequestListener#onRequestResolved(MyRequest)} method. Use {@link #submit(MyRequest)} instead to
+ * receive the response of a single request as a {@link CompletableFuture}, without notifying every listener.</p>
  * <p>Caching is enabled by default, but can only work if {@link MyRequest#getCacheTime()} returns
  * a value greater than zero AND {@link MyRequest#getContentName()} returns a non-<code>null</code> value.</p>
  * <p>If a completed request causes some content to become invalid (as a result of the operation of that request),
@@ -50,6 +84,24 @@ import java.net.URL;
  * <p>Persisting the cache through multiple sessions requires you to serialize the returned value
  * of {@link #getCache()} and store it to disk. Later re-instantiate the cache and apply it to the API using
  * {@link #setCache(MyWebCache)}. A better API will be provided in a future release.</p>
+ * <p>Requests are resolved by a bounded pool of daemon worker threads (see {@link #createWorkerPool(int, int)}).
+ * When more requests are started than can be resolved at the same time, the ones with the highest
+ * {@link MyRequest#getPriority()} are resolved first (see {@link #setSchedulerLimits(int, int)}).
+ * Use {@link #setExecutor(ExecutorService)} to resolve requests somewhere else (for example on virtual threads,
+ * see {@link #setVirtualThreadsEnabled(boolean)}), and {@link #shutdown()} in combination with
+ * {@link #awaitTermination(long)} to drain all outstanding work.</p>
+ * <p>When no connection is available, use {@link #setQueueing(boolean)} to queue all new requests until the
+ * connection is back. Use {@link #setQueueJournal(File)} to keep queued requests across restarts.</p>
+ * <p>Use {@link #setCircuitBreakerPolicy(MyCircuitBreakerPolicy)} to stop sending requests to an endpoint that
+ * keeps failing, instead of waiting for every one of them to time out. Use
+ * {@link #setHedgingPolicy(MyHedgingPolicy)} to send slow <code>GET</code> requests a second time.</p>
+ * <p>Requests to a host that responds with <code>429 Too Many Requests</code> are held back for the time the
+ * host asks for. Use {@link #setRateLimit(double, int)} to limit the rate of requests to every host up front.</p>
+ * <p>Requests are sent over {@link java.net.HttpURLConnection}s by default. Use {@link #setTransport(HttpTransport)}
+ * to send them some other way, for example over HTTP/2 using {@link it.fahner.mywapi.http.HttpClientTransport},
+ * or over explicitly pooled connections using {@link it.fahner.mywapi.http.HttpPooledTransport}.
+ * A transport that implements {@link HttpAsyncTransport} does not hold a worker thread while a request waits for
+ * its response.</p>
  * @since MyWebApi 1.0
  * @author C. Fahner <info@fahnerit.com>
  */
@@ -68,14 +120,78 @@ public final class MyWebApi {
 	 */
 	public static final int DEFAULT_TIMEOUT = 15000;
 	
+	/**
+	 * The maximum total time in milliseconds a request may take (including its retries), when no deadline
+	 * has been set specifically.
+	 * @since MyWebApi 1.0
+	 */
+	public static final long DEFAULT_DEADLINE = 60000;
+	
+	/**
+	 * The maximum amount of worker threads that resolve requests concurrently when no executor has
+	 * been set specifically.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_MAX_THREADS = 8;
+	
+	/**
+	 * The maximum amount of requests that are resolved concurrently after enabling virtual threads.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_MAX_VIRTUAL_THREADS = 1024;
+	
+	/**
+	 * The maximum amount of requests that can wait for a worker thread when no executor has been set
+	 * specifically. Requests that do not fit in the queue fail immediately.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 256;
+	
+	/**
+	 * The maximum amount of queued requests that are replayed at the same time when no amount has been
+	 * set specifically.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_REPLAY_CONCURRENCY = 2;
+	
+	/**
+	 * The time in milliseconds a request has to wait before it is treated as if its priority was one higher,
+	 * when no aging interval has been set specifically.
+	 * @since MyWebApi 1.0
+	 */
+	public static final long DEFAULT_PRIORITY_AGING = 500;
+	
+	/**
+	 * The maximum amount of retries as a fraction of the amount of requests, when no retry budget has been
+	 * set specifically.
+	 * @since MyWebApi 1.0
+	 */
+	public static final double DEFAULT_RETRY_RATIO = 0.1;
+	
+	/**
+	 * The amount of retries per second that are allowed regardless of the retry ratio, when no retry budget
+	 * has been set specifically.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_MIN_RETRIES_PER_SECOND = 5;
+	
+	/** The time in milliseconds that an idle worker thread is kept alive. */
+	private static final long WORKER_KEEP_ALIVE = 30000;
+	
+	/** The amount of most recent request durations that are used to calculate the hedge delay. */
+	private static final int LATENCY_SAMPLES = 512;
+	
+	/** The time in milliseconds requests are held back after a 429 response without a Retry-After header. */
+	private static final long THROTTLE_PAUSE = 1000;
+	
 	/** Contains the base URL of this MyWebApi. */
 	private String baseUrl;
 	
 	/** Contains all URL parameters that need to be included in every request. */
 	private HttpParamList persistentUrlParams;
 	
-	/** Contains the time in milliseconds before a single request is cancelled. */
-	private int timeoutMillis;
+	/** Contains the timeouts for all requests that do not specify their own. */
+	private MyTimeouts timeouts;
 	
 	/** Flag indicating if this class should use a cache. Defaults to <code>true</code>. */
 	private boolean useCache;
@@ -83,6 +199,9 @@ public final class MyWebApi {
 	/** Flag indicating if it's allowed to have duplicate requests in progress. */
 	private boolean allowDuplicates;
 	
+	/** Contains the body size in bytes above which response bodies are kept in a temporary file. */
+	private long spillThreshold;
+	
 	/** Stores all registered {@link MyRequestListener}s. */
 	private MyRequestListenerCollection requestListeners;
 	
@@ -95,6 +214,69 @@ public final class MyWebApi {
 	/** Keeps track of all cached content. */
 	private MyWebCache cache;
 	
+	/** Resolves all requests that could not be completed from the cache. */
+	private ExecutorService executor;
+	
+	/** Sends all requests over the wire. */
+	private HttpTransport transport;
+	
+	/** Decides in which order requests are handed to the executor. */
+	private MyRequestScheduler scheduler;
+	
+	/** Runs delayed tasks, like retries. */
+	private ScheduledExecutorService timer;
+	
+	/** Contains the retry policy for all requests that do not specify their own. */
+	private MyRetryPolicy retryPolicy;
+	
+	/** Limits the amount of retries of all requests together. */
+	private MyRetryBudget retryBudget;
+	
+	/** Contains the circuit breaker policy of all endpoints, <code>null</code> if circuit breaking is disabled. */
+	private MyCircuitBreakerPolicy circuitBreakerPolicy;
+	
+	/** Contains the circuit breaker of every endpoint that has been used (determined by base URL and path). */
+	private HashMap<String, MyCircuitBreaker> circuitBreakers;
+	
+	/** Contains the hedging policy for all <code>GET</code> requests, <code>null</code> if hedging is disabled. */
+	private MyHedgingPolicy hedgingPolicy;
+	
+	/** Limits the amount of hedges to a fraction of the amount of <code>GET</code> requests. */
+	private MyRetryBudget hedgeBudget;
+	
+	/** Keeps the durations of the most recent requests. */
+	private MyLatencyTracker latencies;
+	
+	/** Contains the amount of hedges that have been sent. */
+	private AtomicLong hedgesFired;
+	
+	/** Contains the amount of hedges that received their response before the original request. */
+	private AtomicLong hedgesWon;
+	
+	/** Contains the amount of requests that have been accepted but have not been resolved yet. */
+	private AtomicInteger unresolved;
+	
+	/** Flag indicating that no new requests are accepted, see {@link #shutdown()}. */
+	private volatile boolean shuttingDown;
+	
+	/** Is counted down once all accepted requests have been resolved after a shutdown. */
+	private CountDownLatch terminated;
+	
+	/** Limits the rate at which requests are sent to every host. */
+	private MyRateLimiter rateLimiter;
+	
+	/** Holds all requests that were started while queueing was enabled. */
+	private MyRequestQueue queue;
+	
+	/** Flag indicating that all new requests are queued instead of resolved. */
+	private boolean queueing;
+	
+	/** Contains the maximum amount of queued requests that are replayed at the same time. */
+	private int replayConcurrency;
+	
+	/** Resolves the requests that are replayed from the queue. */
+	private MyRequestQueue.Dispatcher replayDispatcher;
+	
 	/**
 	 * Creates a new access point to a web-based API.
 	 * <p>The cache will start enabled.</p>
@@ -104,13 +286,42 @@ public final class MyWebApi {
 	public MyWebApi(String baseUrl) {
 		this.baseUrl = baseUrl;
 		this.persistentUrlParams = new HttpParamList();
-		this.timeoutMillis = DEFAULT_TIMEOUT;
+		this.timeouts = new MyTimeouts();
 		this.useCache = true;
 		this.allowDuplicates = false;
+		this.spillThreshold = -1;
 		this.requestListeners = new MyRequestListenerCollection();
 		this.contentListeners = new MyContentListenerCollection();
 		this.openRequests = new MyOpenRequestsTracker();
 		this.cache = new MyWebCache();
+		this.executor = createWorkerPool(DEFAULT_MAX_THREADS, DEFAULT_QUEUE_SIZE);
+		this.transport = new HttpURLConnectionTransport();
+		this.scheduler = new MyRequestScheduler(executor, DEFAULT_MAX_THREADS, DEFAULT_QUEUE_SIZE,
+				DEFAULT_PRIORITY_AGING);
+		this.timer = new ScheduledThreadPoolExecutor(1, new MyThreadFactory("MyWebApi-timer"));
+		this.retryPolicy = MyRetryPolicy.NONE;
+		this.retryBudget = new MyRetryBudget(DEFAULT_RETRY_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND);
+		this.circuitBreakerPolicy = null;
+		this.circuitBreakers = new HashMap<String, MyCircuitBreaker>();
+		this.hedgingPolicy = null;
+		this.latencies = new MyLatencyTracker(LATENCY_SAMPLES);
+		this.hedgesFired = new AtomicLong();
+		this.hedgesWon = new AtomicLong();
+		this.unresolved = new AtomicInteger();
+		this.shuttingDown = false;
+		this.terminated = new CountDownLatch(1);
+		this.rateLimiter = new MyRateLimiter(0, 1);
+		this.queue = new MyRequestQueue();
+		this.queueing = false;
+		this.replayConcurrency = DEFAULT_REPLAY_CONCURRENCY;
+		this.replayDispatcher = new MyRequestQueue.Dispatcher() {
+			
+			@Override
+			public CompletableFuture<HttpResponse> dispatch(MyRequest request, boolean broadcast) {
+				return MyWebApi.this.dispatch(request, broadcast, false);
+			}
+			
+		};
 		MyLog.log("New instance for URL '" + baseUrl + "'");
 	}
 	
@@ -140,6 +351,9 @@ public final class MyWebApi {
 				? new HttpRequest(urlToUse, myReq.getRequestMethod())
 				: new HttpRequest(urlToUse);
 		if (myReq.getBody() != null) { out.setBody(myReq.getBody()); }
+		HttpBodySource source = myReq.getBodySource();
+		if (source != null) { out.setBody(source); }
+		out.setSpillThreshold(spillThreshold);
 		MyLog.log(".. with request body: " + out.getBody());
 		return out;
 	}
@@ -171,52 +385,824 @@ public final class MyWebApi {
 	/**
 	 * Starts a single request. Invokes the callback of every listener when the request has finished.
 	 * <p>If MyWebApi is still waiting for another request that points to the same resource (to the same URL
-	 * with the same parameters), no new request will be started.</p>
+	 * with the same parameters), no new request will be started. Instead, this request is resolved with the
+	 * response of the request that is already in progress (unless duplicates are allowed, see
+	 * {@link #setAllowDuplicates(boolean)}).</p>
 	 * <p>If an response is stored in the cache and has not yet expired, that response is returned
 	 * instead of sending a new request (unless the cache is disabled).</p>
 	 * @since MyWebApi 1.0
 	 * @param request An implementation of MyRequest that needs to be resolved
 	 */
-	public void startRequest(final MyRequest request) {
+	public void startRequest(MyRequest request) {
+		dispatch(request, true, true);
+	}
+	
+	/**
+	 * Starts a single request and returns a future that completes with its response. The request itself
+	 * is still resolved (using {@link MyRequest#complete(HttpResponse)} or {@link MyRequest#fail()}), but
+	 * the registered {@link MyRequestListener}s are <b>not</b> notified.
+	 * <p>Caching works exactly like it does for {@link #startRequest(MyRequest)}. A response from the cache
+	 * completes the future before this method returns, any other response completes it on the thread that
+	 * retrieved it.</p>
+	 * <p>The future completes exceptionally with an {@link HttpRequestTimeoutException} if the request failed,
+	 * with a {@link MyCircuitOpenException} if the circuit of its endpoint is open, or with a
+	 * {@link RejectedExecutionException} if no worker could accept the request.</p>
+	 * <p>For a {@link MyStreamingRequest} the future completes after its stream has been closed, with a
+	 * response that only holds the status and headers (unless the response came from, or was stored in, the cache).</p>
+	 * @since MyWebApi 1.0
+	 * @param request An implementation of MyRequest that needs to be resolved
+	 * @return The future that completes once the request has been resolved
+	 */
+	public CompletableFuture<HttpResponse> submit(MyRequest request) {
+		return dispatch(request, false, true);
+	}
+	
+	/**
+	 * Opens connections to the host of the base URL ahead of time, so the first requests do not have to wait
+	 * for DNS, TCP and TLS. Connections are opened in parallel by the worker threads.
+	 * <p>With an {@link HttpPooledTransport} the connections are opened directly and kept in its pool (up to
+	 * the maximum amount of connections of the pool). Any other transport has no way to open a connection
+	 * without sending a request, so a <code>HEAD</code> request to the base URL is sent for every connection
+	 * instead, which leaves the connection in the keep-alive cache of the transport.</p>
+	 * @since MyWebApi 1.0
+	 * @param connections The amount of connections to open
+	 * @return The future that completes with the amount of connections that have been opened
+	 */
+	public CompletableFuture<Integer> prewarm(int connections) {
+		return prewarm(connections, false);
+	}
+	
+	/**
+	 * Opens connections to the host of the base URL ahead of time, optionally by sending a <code>HEAD</code>
+	 * request to the base URL over every connection (which also warms up the origin itself).
+	 * @see #prewarm(int)
+	 * @since MyWebApi 1.0
+	 * @param connections The amount of connections to open
+	 * @param head <code>true</code> to always send a <code>HEAD</code> request over every connection
+	 * @return The future that completes with the amount of connections that have been opened
+	 */
+	public CompletableFuture<Integer> prewarm(int connections, final boolean head) {
+		final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+		final AtomicInteger warmed = new AtomicInteger();
+		final AtomicInteger remaining = new AtomicInteger(connections);
+		if (connections <= 0) {
+			result.complete(0);
+			return result;
+		}
+		final HttpTransport current = transport;
+		final MyTimeouts currentTimeouts = timeouts;
+		MyLog.log("Prewarming " + connections + " connections to '" + baseUrl + "'");
+		Runnable task = new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					HttpRequest http = new HttpRequest(baseUrl, HttpRequestMethod.HEAD);
+					if (!head && current instanceof HttpPooledTransport) {
+						if (((HttpPooledTransport) current).getPool().prewarm(http.getUrl(),
+								currentTimeouts.getConnectTimeout())) {
+							warmed.incrementAndGet();
+						}
+					} else {
+						http.getResponse(current, currentTimeouts.getConnectTimeout(), currentTimeouts.getReadTimeout());
+						warmed.incrementAndGet();
+					}
+				} catch (IOException e) {
+					MyLog.log("Prewarming a connection failed (" + e + ")");
+				} catch (RuntimeException e) {
+					MyLog.error("Prewarming a connection failed (" + e + ")");
+				} finally {
+					if (remaining.decrementAndGet() == 0) {
+						MyLog.log("Prewarmed " + warmed.get() + " connections to '" + baseUrl + "'");
+						result.complete(warmed.get());
+					}
+				}
+			}
+			
+		};
+		for (int i = 0; i < connections; i += 1) {
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				if (remaining.decrementAndGet() == 0) { result.complete(warmed.get()); }
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Resolves a request from the cache, or hands it to the executor if that is not possible.
+	 * @param request The request to resolve
+	 * @param broadcast <code>true</code> to notify all request listeners when the request has been resolved
+	 * @param queueable <code>true</code> if the request has to be queued when queueing is enabled,
+	 *  <code>false</code> if it is being replayed from the queue
+	 * @return The future that completes once the request has been resolved
+	 */
+	private CompletableFuture<HttpResponse> dispatch(final MyRequest request, final boolean broadcast,
+			boolean queueable) {
 		MyLog.log("MyRequest started (" + request + ")");
-		final HttpRequest http = convertToHttpRequest(request);
-		if (!allowDuplicates && openRequests.isOpen(http)) {
-			MyLog.log("MyRequest ignored, already open (" + request + ")");
-			return;
+		final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+		// Count the request before looking for a shutdown, so a shutdown that does not see it never terminates
+		unresolved.incrementAndGet();
+		if (shuttingDown) {
+			MyLog.log("MyRequest rejected, shutting down (" + request + ")");
+			tryFail(request);
+			future.completeExceptionally(new RejectedExecutionException("Shutting down"));
+			if (broadcast) { requestListeners.invokeAll(request); }
+			resolved();
+			return future;
 		}
+		final HttpRequest http = convertToHttpRequest(request);
 		
 		// Check if the cache has a valid response ready now (if it is used)
-		if (useCache && request.getContentName() != null && cache.hasResponse(request.getContentName(), http)) {
-			MyLog.log("MyRequest completed from cache (" + request + ")");
-			request.complete(cache.getResponse(request.getContentName(), http));
-			requestListeners.invokeAll(request);
-			return;
+		if (usesCache(request)) {
+			HttpResponse cached = cache.getResponse(request.getContentName(), http);
+			if (cached != null) {
+				MyLog.log("MyRequest completed from cache (" + request + ")");
+				Throwable thrown = tryDeliver(request, cached);
+				if (thrown == null) {
+					future.complete(cached);
+				} else {
+					future.completeExceptionally(thrown);
+				}
+				if (broadcast) { requestListeners.invokeAll(request); }
+				resolved();
+				return future;
+			}
+		}
+		
+		// Queue the request while queueing is enabled, or while older queued requests are still being replayed
+		// (so requests with the same content name are always resolved in order)
+		if (queueable && (queueing || queue.size() > 0)) {
+			MyLog.log("MyRequest queued (" + request + ")");
+			// A queued request stays accepted until it has been replayed, or failed by a shutdown
+			CompletableFuture<HttpResponse> replayed = new CompletableFuture<HttpResponse>();
+			queue.add(request, replayed, broadcast);
+			replayed.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+				
+				@Override
+				public void accept(HttpResponse response, Throwable error) {
+					if (error == null) { future.complete(response); } else { future.completeExceptionally(error); }
+					resolved();
+				}
+				
+			});
+			if (shuttingDown) { queue.abandon(replayDispatcher); }
+			return future;
 		}
 		
-		// Try to get the response (on a separate thread, so we don't block the main thread)
-		new Thread(new Runnable() {
+		// Fail fast (without occupying a worker) while the circuit of the endpoint is open
+		MyRetryPolicy policy = request.getRetryPolicy() != null ? request.getRetryPolicy() : retryPolicy;
+		MyTimeouts limits = request.getTimeouts() != null ? request.getTimeouts() : timeouts;
+		MyCircuitBreaker breaker = getCircuitBreaker(request);
+		if (breaker != null && breaker.isRejecting()) {
+			reject(new MyCall(request, http, future, null, broadcast, policy, breaker, limits));
+			return future;
+		}
+		
+		// Wait for the response of an identical request if one is already in progress (a streamed response body
+		// can only be read once, and a body source that is not held in memory is never compared, so those requests
+		// always send their own)
+		final CompletableFuture<HttpResponse> shared = allowDuplicates || isStreaming(request)
+				|| !isComparable(http.getBodySource()) ? null : new CompletableFuture<HttpResponse>();
+		if (shared != null) {
+			CompletableFuture<HttpResponse> inProgress = openRequests.storeRequest(http, shared);
+			if (inProgress != null) {
+				MyLog.log("MyRequest attached to identical request in progress (" + request + ")");
+				follow(request, inProgress, future, broadcast);
+				return future;
+			}
+		}
+		
+		// Try to get the response (on a worker thread, so we don't block the main thread)
+		retryBudget.recordRequest();
+		MyCall call = new MyCall(request, http, future, shared, broadcast, policy, breaker, limits);
+		watchDeadline(call);
+		schedule(call);
+		return future;
+	}
+	
+	/**
+	 * Waits for a permit of the rate limiter (without holding a thread), then hands the next attempt of a
+	 * request to the scheduler.
+	 * @param call The request to send
+	 */
+	private void schedule(final MyCall call) {
+		long wait = rateLimiter.reserve(rateLimiter.getKey(call.http));
+		if (wait <= 0) {
+			enqueue(call);
+			return;
+		}
+		if (call.deadline > 0 && System.currentTimeMillis() + wait >= call.deadline) {
+			MyLog.log("MyRequest failed, deadline expires before the rate limit allows it (" + call + ")");
+			fail(call, new HttpRequestTimeoutException());
+			return;
+		}
+		MyLog.log("MyRequest rate limited, sent in " + wait + " ms (" + call + ")");
+		try {
+			timer.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					enqueue(call);
+				}
+				
+			}, wait, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			enqueue(call);
+		}
+	}
+	
+	/**
+	 * Hands the next attempt of a request to the scheduler.
+	 * @param call The request to send
+	 */
+	private void enqueue(final MyCall call) {
+		Runnable rejected = new Runnable() {
 			
 			@Override
 			public void run() {
-				openRequests.storeRequest(http);
-				try {
-					HttpResponse response = http.getResponse(timeoutMillis);
-					request.complete(response);
-					long cacheTime = request.getCacheTime();
-					if (useCache && cacheTime > 0) {
-						MyLog.log("MyRequest response cached for " + cacheTime + " ms (" + request + ")");
-						MyLog.log(".. cached using name '" + request.getContentName() + "'");
-						cache.add(request.getContentName(), response, cacheTime);
+				MyLog.log("MyRequest rejected, no worker available (" + call + ")");
+				fail(call, new RejectedExecutionException("No worker available"));
+			}
+			
+		};
+		try {
+			scheduler.scheduleAsync(call.request.getPriority(), new MyRequestScheduler.AsyncTask() {
+				
+				@Override
+				public void start(Runnable done) {
+					resolve(call, done);
+				}
+				
+			}, rejected);
+		} catch (RejectedExecutionException e) {
+			rejected.run();
+		}
+	}
+	
+	/**
+	 * Resolves a request with the outcome of an identical request that is already in progress.
+	 * @param request The request to resolve
+	 * @param inProgress The future of the identical request that is already in progress
+	 * @param future The future to complete once the request has been resolved
+	 * @param broadcast <code>true</code> to notify all request listeners when the request has been resolved
+	 */
+	private void follow(final MyRequest request, CompletableFuture<HttpResponse> inProgress,
+			final CompletableFuture<HttpResponse> future, final boolean broadcast) {
+		inProgress.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+			
+			@Override
+			public void accept(HttpResponse response, Throwable error) {
+				if (error == null) {
+					Throwable thrown = tryDeliver(request, response);
+					if (thrown == null) {
+						future.complete(response);
+					} else {
+						future.completeExceptionally(thrown);
+					}
+				} else {
+					tryFail(request);
+					future.completeExceptionally(error);
+				}
+				if (broadcast) { requestListeners.invokeAll(request); }
+				resolved();
+			}
+			
+		});
+	}
+	
+	/**
+	 * Sends a request that could not be completed from the cache, and retries it later if it has failed and
+	 * the retry policy allows it. Runs on a worker thread.
+	 * @param call The request to send
+	 * @param done Must be run once the attempt has been handled
+	 */
+	private void resolve(final MyCall call, Runnable done) {
+		if (call.isSettled()) {
+			done.run();
+			return;
+		}
+		if (call.breaker != null && !call.breaker.tryAcquire()) {
+			done.run();
+			reject(call);
+			return;
+		}
+		HttpRequest http = call.attempts == 0 ? call.http : convertToHttpRequest(call.request);
+		call.attempts += 1;
+		if (call.attempts == 1) { hedgeLater(call); }
+		send(call, http, false, done);
+	}
+	
+	/**
+	 * Sends a single attempt of a request and handles its outcome, unless another attempt of the same request
+	 * has already decided the outcome.
+	 * <p>Blocks the worker thread until the response arrives, unless the transport is an
+	 * {@link HttpAsyncTransport}. In that case this returns right away, and the outcome is handled on the event
+	 * loop of the transport. A {@link MyStreamingRequest} always blocks the worker thread, until its stream has
+	 * been read and closed.</p>
+	 * @param call The request to send
+	 * @param http The attempt to send
+	 * @param hedge <code>true</code> if the attempt is a hedge
+	 * @param done Must be run once the attempt has been handled
+	 */
+	private void send(final MyCall call, final HttpRequest http, final boolean hedge, final Runnable done) {
+		if (!call.startAttempt(http)) {
+			if (call.breaker != null && !hedge) { call.breaker.release(); }
+			done.run();
+			return;
+		}
+		final long start = System.currentTimeMillis();
+		HttpTransport current = transport;
+		if (isStreaming(call.request)) {
+			try {
+				stream(call, http, current, start);
+			} finally {
+				done.run();
+			}
+			return;
+		}
+		if (current instanceof HttpAsyncTransport) {
+			http.getResponseAsync((HttpAsyncTransport) current, call.timeouts.getConnectTimeout(),
+					call.timeouts.getReadTimeout()).whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+				
+				@Override
+				public void accept(HttpResponse response, Throwable error) {
+					try {
+						if (error == null) {
+							received(call, http, hedge, response, start);
+						} else {
+							timedOut(call, http, error instanceof HttpRequestTimeoutException
+									? (HttpRequestTimeoutException) error : new HttpRequestTimeoutException(), start);
+						}
+					} finally {
+						done.run();
 					}
-				} catch (HttpRequestTimeoutException e) {
-					request.fail();
-					MyLog.log("MyRequest timed out (" + request + ")");
 				}
-				openRequests.removeRequest(http);
-				requestListeners.invokeAll(request);
+				
+			});
+			return;
+		}
+		try {
+			HttpResponse response;
+			try {
+				response = http.getResponse(current, call.timeouts.getConnectTimeout(), call.timeouts.getReadTimeout());
+			} catch (HttpRequestTimeoutException e) {
+				timedOut(call, http, e, start);
+				return;
+			}
+			received(call, http, hedge, response, start);
+		} finally {
+			done.run();
+		}
+	}
+	
+	/**
+	 * Sends a single attempt of a streaming request, and hands the response stream to the request if the
+	 * attempt decides the outcome.
+	 * @param call The request to send
+	 * @param http The attempt to send
+	 * @param current The transport to send the attempt with
+	 * @param start The time at which the attempt was sent
+	 */
+	private void stream(MyCall call, HttpRequest http, HttpTransport current, long start) {
+		HttpResponseStream stream;
+		try {
+			stream = http.openStream(current, call.timeouts.getConnectTimeout(), call.timeouts.getReadTimeout());
+		} catch (HttpRequestTimeoutException e) {
+			timedOut(call, http, e, start);
+			return;
+		}
+		try {
+			if (accept(call, http, false, stream.getHead(), start)) {
+				// The deadline covers reading the response as well, which aborts the attempt when it expires
+				call.startReading(http);
+				complete(call, stream);
+			}
+		} finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Handles an attempt of a request that has timed out, could not be sent or has been aborted.
+	 * @param call The request the attempt belongs to
+	 * @param http The attempt that has failed
+	 * @param error The reason the attempt has failed
+	 * @param start The time at which the attempt was sent
+	 */
+	private void timedOut(MyCall call, HttpRequest http, HttpRequestTimeoutException error, long start) {
+		// The latency of an aborted attempt is at least the time it took so far; leaving it out would make the
+		// tracker only see the fast attempts that won, and hedge ever earlier
+		if (http.isAborted() && hedgingPolicy != null) { latencies.record(System.currentTimeMillis() - start); }
+		// An aborted attempt has lost from a hedge, which has already resolved the request
+		if (http.isAborted() && call.isSettled()) {
+			if (call.breaker != null) { call.breaker.release(); }
+			return;
+		}
+		MyLog.log(http.isAborted() ? "MyRequest deadline expired (" + call + ")" : "MyRequest timed out (" + call + ")");
+		if (call.breaker != null) { call.breaker.record(true, System.currentTimeMillis() - start); }
+		if (!call.endAttempt(http, false)) { return; }
+		if (retryLater(call)) { return; }
+		fail(call, error);
+	}
+	
+	/**
+	 * Handles the response that an attempt of a request has received.
+	 * @param call The request the attempt belongs to
+	 * @param http The attempt that has received the response
+	 * @param hedge <code>true</code> if the attempt is a hedge
+	 * @param response The response of the attempt
+	 * @param start The time at which the attempt was sent
+	 */
+	private void received(MyCall call, HttpRequest http, boolean hedge, HttpResponse response, long start) {
+		if (accept(call, http, hedge, response, start)) {
+			complete(call, response);
+		} else {
+			response.release();
+		}
+	}
+	
+	/**
+	 * Records the response that an attempt of a request has received, and decides what happens next.
+	 * @param call The request the attempt belongs to
+	 * @param http The attempt that has received the response
+	 * @param hedge <code>true</code> if the attempt is a hedge
+	 * @param response The response of the attempt (its body may not have been read yet)
+	 * @param start The time at which the attempt was sent
+	 * @return <code>true</code> if the request must be completed with the response, <code>false</code> if it
+	 *  is retried or has already been resolved by another attempt
+	 */
+	private boolean accept(MyCall call, HttpRequest http, boolean hedge, HttpResponse response, long start) {
+		long duration = System.currentTimeMillis() - start;
+		if (hedgingPolicy != null) { latencies.record(duration); }
+		String rateLimitKey = rateLimiter.getKey(http);
+		long retryAfter = response.getRetryAfter();
+		if (response.getStatus() == HttpStatusCode.TooManyRequests
+				|| (response.getStatus() == HttpStatusCode.ServiceUnavailable && retryAfter >= 0)) {
+			MyLog.log("MyRequest throttled by origin, holding back '" + rateLimitKey + "' (" + call + ")");
+			long pause = retryAfter >= 0 ? retryAfter : THROTTLE_PAUSE;
+			// Holding the host back any longer than this request may take helps no one
+			if (call.deadline > 0) {
+				pause = Math.min(pause, Math.max(0, call.deadline - System.currentTimeMillis()));
+			}
+			rateLimiter.throttle(rateLimitKey, pause);
+		} else {
+			rateLimiter.recordSuccess(rateLimitKey);
+		}
+		if (call.breaker != null) {
+			call.breaker.record(response.getStatus().getResponseClass() == HttpStatusCodeClass.SERVER_ERROR, duration);
+		}
+		boolean retryable = call.retryPolicy.isRetryable(response.getStatus());
+		if (!call.endAttempt(http, !retryable)) { return false; }
+		if (hedge && !retryable) {
+			hedgesWon.incrementAndGet();
+			MyLog.log("MyRequest resolved by hedge (" + call + ")");
+		}
+		return !(retryable && retryLater(call));
+	}
+	
+	/**
+	 * Schedules a hedge of a <code>GET</code> request, which is sent if the request has not received its
+	 * response after the hedge delay (and the hedge budget allows it).
+	 * @param call The request to hedge
+	 */
+	private void hedgeLater(final MyCall call) {
+		MyHedgingPolicy policy = hedgingPolicy;
+		if (policy == null || isStreaming(call.request) || !isRepeatable(call.request)) { return; }
+		HttpRequestMethod method = call.request.getRequestMethod();
+		if (method != null && method != HttpRequestMethod.GET) { return; }
+		if (call.breaker != null && call.breaker.getState() != MyCircuitBreaker.State.CLOSED) { return; }
+		final MyRetryBudget budget = hedgeBudget;
+		budget.recordRequest();
+		long delay = policy.getDelay();
+		if (delay <= 0) {
+			if (latencies.getSampleCount() < policy.getMinSamples()) { return; }
+			delay = latencies.getPercentile(policy.getPercentile());
+		}
+		final MyRequestScheduler.AsyncTask hedge = new MyRequestScheduler.AsyncTask() {
+			
+			@Override
+			public void start(Runnable done) {
+				send(call, convertToHttpRequest(call.request), true, done);
 			}
 			
-		}).start();
+		};
+		final Runnable rejected = new Runnable() {
+			
+			@Override
+			public void run() {
+				MyLog.log("MyRequest hedge rejected, no worker available (" + call + ")");
+			}
+			
+		};
+		try {
+			timer.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					if (!call.isSending() || !budget.tryRetry()) { return; }
+					if (!rateLimiter.tryAcquire(rateLimiter.getKey(call.http))) { return; }
+					hedgesFired.incrementAndGet();
+					MyLog.log("MyRequest hedged, no response yet (" + call + ")");
+					try {
+						scheduler.scheduleAsync(call.request.getPriority(), hedge, rejected);
+					} catch (RejectedExecutionException e) {
+						rejected.run();
+					}
+				}
+				
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			MyLog.log("MyRequest not hedged, timer stopped (" + call + ")");
+		}
+	}
+	
+	/**
+	 * Schedules another attempt of a request after the delay specified by its retry policy, if the policy and
+	 * the retry budget allow it.
+	 * @param call The request to retry
+	 * @return <code>true</code> if another attempt has been scheduled, <code>false</code> if the request
+	 *  must not be retried
+	 */
+	private boolean retryLater(final MyCall call) {
+		if (!call.retryPolicy.allowsRetry(call.request.getRequestMethod(), call.attempts)) { return false; }
+		if (!isRepeatable(call.request)) {
+			MyLog.log("MyRequest not retried, its body can only be sent once (" + call + ")");
+			return false;
+		}
+		long delay = call.retryPolicy.getDelay(call.attempts);
+		if (call.deadline > 0 && System.currentTimeMillis() + delay >= call.deadline) {
+			MyLog.log("MyRequest not retried, deadline expires first (" + call + ")");
+			return false;
+		}
+		if (!retryBudget.tryRetry()) {
+			MyLog.log("MyRequest not retried, retry budget spent (" + call + ")");
+			return false;
+		}
+		MyLog.log("MyRequest retried in " + delay + " ms, attempt " + (call.attempts + 1) + " (" + call + ")");
+		try {
+			timer.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					schedule(call);
+				}
+				
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Fails a request once its deadline expires, aborting any attempt that is still waiting for its response.
+	 * @param call The request to watch
+	 */
+	private void watchDeadline(final MyCall call) {
+		if (call.deadline <= 0) { return; }
+		try {
+			call.setDeadlineTask(timer.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					if (call.expire()) {
+						MyLog.log("MyRequest deadline expired (" + call + ")");
+						fail(call, new HttpRequestTimeoutException());
+					}
+				}
+				
+			}, call.deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS));
+		} catch (RejectedExecutionException e) {
+			MyLog.log("MyRequest deadline not watched, timer stopped (" + call + ")");
+		}
+	}
+	
+	/**
+	 * Resolves a request with the response it has received, and caches that response if allowed.
+	 * @param call The request that has been resolved
+	 * @param response The response of the request
+	 */
+	private void complete(MyCall call, HttpResponse response) {
+		MyRequest request = call.request;
+		Throwable thrown = tryDeliver(request, response);
+		long cacheTime = request.getCacheTime();
+		if (useCache && cacheTime > 0) {
+			MyLog.log("MyRequest response cached for " + cacheTime + " ms (" + request + ")");
+			MyLog.log(".. cached using name '" + request.getContentName() + "'");
+			cache.add(request.getContentName(), response, cacheTime);
+		}
+		finish(call, response, thrown);
+		if (call.broadcast) { requestListeners.invokeAll(request); }
+	}
+	
+	/**
+	 * Resolves a streaming request with the response stream it has received. Caches the response if the request
+	 * allows it and has read the entire body.
+	 * @param call The request that has been resolved
+	 * @param stream The response stream of the request
+	 */
+	private void complete(MyCall call, HttpResponseStream stream) {
+		MyStreamingRequest request = (MyStreamingRequest) call.request;
+		MyRecordingInputStream recording = null;
+		HttpResponseStream handed = stream;
+		if (usesCache(request)) {
+			recording = new MyRecordingInputStream(stream.getInputStream());
+			handed = new HttpResponseStream(stream.getHead(), recording, stream.getContentLength());
+		}
+		Throwable thrown = null;
+		try {
+			request.complete(handed);
+		} catch (Throwable e) {
+			MyLog.error("MyRequest threw while being resolved (" + request + "): " + e);
+			thrown = e;
+		} finally {
+			handed.close();
+		}
+		if (thrown == null && call.isExpired()) {
+			MyLog.log("MyRequest deadline expired while reading the response (" + call + ")");
+			thrown = new HttpRequestTimeoutException();
+		}
+		long cacheTime = request.getCacheTime();
+		if (thrown == null && recording != null && recording.hasEnded() && cacheTime > 0) {
+			MyLog.log("MyRequest response cached for " + cacheTime + " ms (" + request + ")");
+			MyLog.log(".. cached using name '" + request.getContentName() + "'");
+			HttpResponse response = new HttpResponse(stream.getHead(), recording.toByteArray());
+			cache.add(request.getContentName(), response, cacheTime);
+			finish(call, response, null);
+		} else {
+			finish(call, stream.getHead(), thrown);
+		}
+		if (call.broadcast) { requestListeners.invokeAll(request); }
+	}
+	
+	/**
+	 * Resolves a request that is not sent because the circuit of its endpoint is open. Uses a stale response
+	 * from the cache if one is still kept, fails the request otherwise.
+	 * @param call The request that is not sent
+	 */
+	private void reject(MyCall call) {
+		MyRequest request = call.request;
+		HttpResponse stale = usesCache(request)
+				? cache.getStaleResponse(request.getContentName(), call.http)
+				: null;
+		if (stale == null) {
+			MyLog.log("MyRequest failed, circuit open (" + call + ")");
+			fail(call, new MyCircuitOpenException(getEndpoint(request)));
+			return;
+		}
+		MyLog.log("MyRequest completed from stale cache, circuit open (" + call + ")");
+		finish(call, stale, tryDeliver(request, stale));
+		if (call.broadcast) { requestListeners.invokeAll(request); }
+	}
+	
+	/**
+	 * Hands a complete response to a request, as a stream if the request is a {@link MyStreamingRequest}.
+	 * @param request The request to complete
+	 * @param response The response of the request
+	 */
+	private static void deliver(MyRequest request, HttpResponse response) {
+		if (!isStreaming(request)) {
+			request.complete(response);
+			return;
+		}
+		HttpResponseStream stream = HttpResponseStream.of(response);
+		try {
+			((MyStreamingRequest) request).complete(stream);
+		} finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Hands a complete response to a request, catching anything the request throws while handling it, so the
+	 * request is always finished afterwards.
+	 * @param request The request to complete
+	 * @param response The response of the request
+	 * @return What the request has thrown, <code>null</code> if it has handled the response normally
+	 */
+	private static Throwable tryDeliver(MyRequest request, HttpResponse response) {
+		try {
+			deliver(request, response);
+			return null;
+		} catch (Throwable e) {
+			MyLog.error("MyRequest threw while being resolved (" + request + "): " + e);
+			return e;
+		}
+	}
+	
+	/**
+	 * Resolves a request as failed, catching anything the request throws while handling that.
+	 * @param request The request that has failed
+	 */
+	private static void tryFail(MyRequest request) {
+		try {
+			request.fail();
+		} catch (Throwable e) {
+			MyLog.error("MyRequest threw while being resolved (" + request + "): " + e);
+		}
+	}
+	
+	/**
+	 * Checks if a request reads its response as a stream.
+	 * @param request The request to check
+	 * @return <code>true</code> if the request is a {@link MyStreamingRequest}
+	 */
+	private static boolean isStreaming(MyRequest request) {
+		return request instanceof MyStreamingRequest;
+	}
+	
+	/**
+	 * Checks if requests with a body source can be compared by their body.
+	 * @param source The body source to check, <code>null</code> for no body
+	 * @return <code>true</code> if there is no body source, or it holds its body in memory
+	 */
+	private static boolean isComparable(HttpBodySource source) {
+		return source == null || source.getContent() != null;
+	}
+	
+	/**
+	 * Checks if a request can be sent more than once.
+	 * @param request The request to check
+	 * @return <code>false</code> if the body source of the request can only be sent once
+	 */
+	private static boolean isRepeatable(MyRequest request) {
+		HttpBodySource source = request.getBodySource();
+		return source == null || source.isRepeatable();
+	}
+	
+	/**
+	 * Checks if the response of a request may be taken from, and stored in, the cache.
+	 * @param request The request to check
+	 * @return <code>true</code> if the cache is used for the request
+	 */
+	private boolean usesCache(MyRequest request) {
+		if (!useCache || request.getContentName() == null) { return false; }
+		return !isStreaming(request) || ((MyStreamingRequest) request).isStreamCacheable();
+	}
+	
+	/**
+	 * Returns the circuit breaker of the endpoint of a request, creating it if it does not exist yet.
+	 * @param request The request to get the circuit breaker for
+	 * @return The circuit breaker, <code>null</code> if circuit breaking is disabled
+	 */
+	private MyCircuitBreaker getCircuitBreaker(MyRequest request) {
+		synchronized (circuitBreakers) {
+			if (circuitBreakerPolicy == null) { return null; }
+			String endpoint = getEndpoint(request);
+			MyCircuitBreaker breaker = circuitBreakers.get(endpoint);
+			if (breaker == null) {
+				breaker = new MyCircuitBreaker(circuitBreakerPolicy);
+				circuitBreakers.put(endpoint, breaker);
+			}
+			return breaker;
+		}
+	}
+	
+	/**
+	 * Returns the endpoint of a request, which is its base URL plus its path (without any parameters).
+	 * @param request The request to get the endpoint of
+	 * @return The endpoint of the request
+	 */
+	private String getEndpoint(MyRequest request) {
+		return request.getPath() != null ? baseUrl + request.getPath() : baseUrl;
+	}
+	
+	/**
+	 * Resolves a request as failed.
+	 * @param call The request that has failed
+	 * @param error The reason the request has failed
+	 */
+	private void fail(MyCall call, Throwable error) {
+		tryFail(call.request);
+		finish(call, null, error);
+		if (call.broadcast) { requestListeners.invokeAll(call.request); }
+	}
+	
+	/**
+	 * Marks a request as no longer open and hands its outcome to everyone waiting for it.
+	 * <p>When the request has received a response but threw while handling it, only its own future fails.
+	 * Identical requests that wait for the same response still receive it.</p>
+	 * @param call The request that has been resolved
+	 * @param response The response of the request, <code>null</code> if it has failed
+	 * @param error The reason the request has failed (or what it threw while handling its response),
+	 *  <code>null</code> if it has succeeded
+	 */
+	private void finish(MyCall call, HttpResponse response, Throwable error) {
+		if (call.settle()) { resolved(); }
+		if (call.shared != null) { openRequests.removeRequest(call.http, call.shared); }
+		if (error == null) {
+			call.future.complete(response);
+		} else {
+			call.future.completeExceptionally(error);
+		}
+		if (call.shared == null) { return; }
+		if (response != null) {
+			call.shared.complete(response);
+		} else {
+			call.shared.completeExceptionally(error);
+		}
 	}
 	
 	/**
@@ -250,6 +1236,7 @@ public final class MyWebApi {
 	 */
 	public void setCache(MyWebCache cache) {
 		this.cache = cache;
+		cache.setStaleRetention(circuitBreakerPolicy != null ? circuitBreakerPolicy.getStaleDuration() : 0);
 	}
 	
 	/**
@@ -273,12 +1260,25 @@ public final class MyWebApi {
 	}
 	
 	/**
-	 * Sets the amount of time to wait before a request is cancelled.
+	 * Sets the amount of time to wait for a connection, and for data from the origin, before a request is
+	 * cancelled. Use {@link #setTimeouts(MyTimeouts)} to set these timeouts separately.
 	 * @since MyWebApi 1.0
 	 * @param milliseconds Amount of time to wait in milliseconds
 	 */
 	public void setTimeout(int milliseconds) {
-		this.timeoutMillis = milliseconds;
+		timeouts.setConnectTimeout(milliseconds).setReadTimeout(milliseconds);
+	}
+	
+	/**
+	 * Sets the connect timeout, read timeout and deadline for all requests that do not specify their own (see
+	 * {@link MyRequest#getTimeouts()}).
+	 * <p>Is set to {@link #DEFAULT_TIMEOUT} (connect and read) and {@link #DEFAULT_DEADLINE} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param timeouts The timeouts to use, <code>null</code> to restore the defaults
+	 */
+	public void setTimeouts(MyTimeouts timeouts) {
+		this.timeouts = timeouts != null ? timeouts : new MyTimeouts();
+		MyLog.log("Timeouts have been set (" + this.timeouts + ")");
 	}
 	
 	/**
@@ -293,17 +1293,370 @@ public final class MyWebApi {
 		if (!useCache) { cache.clear(); }
 	}
 	
+	/**
+	 * Specifies whether cached response bodies are kept compressed. A compressed body takes several times less
+	 * memory (JSON typically shrinks by a factor of 5 to 10), but is decompressed every time the response is
+	 * taken from the cache. Only responses that are cached from now on are affected.
+	 * <p>Is set to <code>false</code> by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param enable <code>true</code> to keep cached response bodies compressed
+	 */
+	public void setCacheCompression(boolean enable) {
+		cache.setCompression(enable);
+		MyLog.log("Cache compression has been " + (enable ? "enabled" : "disabled"));
+	}
+	
 	/**
 	 * Specifies the behavior of the API instance when it encounters a new request that is already in
 	 * progress as another instance (based on the URL it points to and it's request body).
-	 * <p>Is set to <code>false</code> by default.</p>
+	 * <p>Is set to <code>false</code> by default, which means that the new request is not sent at all.
+	 * It is resolved with the same response as the request already in progress once that arrives.</p>
 	 * @since MyWebApi 1.0
 	 * @param allowDuplicates <code>true</code> to allow the same request to be "in flight" multiple times,
 	 *   <code>false</code> to prevent duplicate requests from being sent at the same time
 	 */
 	public void setAllowDuplicates(boolean allowDuplicates) {
 		this.allowDuplicates = allowDuplicates;
-		MyLog.log("Request duplication has been " + (allowDuplicates ? "disallowed" : "allowed"));
+		MyLog.log("Request duplication has been " + (allowDuplicates ? "allowed" : "disallowed"));
+	}
+	
+	/**
+	 * Sets the body size above which responses are written to a temporary file and mapped into memory, instead of
+	 * being kept on the Java heap (see {@link HttpResponse#getBodyBuffer()}).
+	 * <p>Such responses are cached like any other response, and their file is deleted once they are evicted from
+	 * the cache. The file of a response that is not cached is deleted by {@link HttpResponse#release()}, or when
+	 * the virtual machine exits.</p>
+	 * <p>Is set to <code>-1</code> (never) by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param bytes The size in bytes, <code>-1</code> to always keep response bodies in memory
+	 */
+	public void setSpillThreshold(long bytes) {
+		this.spillThreshold = bytes;
+		MyLog.log(bytes >= 0 ? "Responses larger than " + bytes + " bytes are kept in temporary files"
+				: "Responses are kept in memory");
+	}
+	
+	/**
+	 * Enables or disables queueing of requests. While queueing is enabled, every new request that cannot
+	 * be completed from the cache is put in a queue instead of being sent. This is useful when there is no
+	 * connection available, for example.
+	 * <p>Once queueing is disabled, the queued requests are replayed in the order they were started. Only a
+	 * limited amount of queued requests is sent at the same time (see {@link #setQueueReplayConcurrency(int)}),
+	 * and requests with the same content name are never sent at the same time. New requests are queued behind
+	 * the remaining queued requests until the queue is empty.</p>
+	 * @since MyWebApi 1.0
+	 * @param enable <code>true</code> to start queueing requests, <code>false</code> to replay the queue
+	 */
+	public void setQueueing(boolean enable) {
+		this.queueing = enable;
+		MyLog.log("Request queueing has been " + (enable ? "enabled" : "disabled"));
+		if (enable) { queue.pause(); } else { queue.replay(replayConcurrency, replayDispatcher); }
+	}
+	
+	/**
+	 * Keeps the request queue in an append-only journal file, so queued requests survive a restart of the
+	 * application.
+	 * <p>Requests that were left in the journal by a previous session are restored as instances of
+	 * {@link MyQueuedRequest} and are resolved before any request that is queued now. If queueing is disabled,
+	 * they are replayed right away.</p>
+	 * @since MyWebApi 1.0
+	 * @param journal The journal file to use, <code>null</code> to only keep the queue in memory
+	 * @throws IOException When the journal could not be read or written
+	 */
+	public void setQueueJournal(File journal) throws IOException {
+		queue.setJournal(journal);
+		if (!queueing) { queue.replay(replayConcurrency, replayDispatcher); }
+	}
+	
+	/**
+	 * Sets the maximum amount of queued requests that are sent at the same time once queueing is disabled,
+	 * so the origin is not flooded the moment the connection comes back.
+	 * <p>Is set to {@link #DEFAULT_REPLAY_CONCURRENCY} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param concurrency The maximum amount of queued requests to send at the same time
+	 */
+	public void setQueueReplayConcurrency(int concurrency) {
+		this.replayConcurrency = concurrency;
+	}
+	
+	/**
+	 * Returns the amount of requests that are queued and have not been resolved yet.
+	 * @since MyWebApi 1.0
+	 * @return The amount of queued requests
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+	
+	/**
+	 * Creates the bounded pool of worker threads that MyWebApi uses by default.
+	 * <p>The pool never runs more than <code>maxThreads</code> requests at the same time. Up to
+	 * <code>queueSize</code> requests wait for a worker, any request beyond that is rejected (and
+	 * fails immediately). Idle workers are stopped after a while, all workers are named daemon
+	 * threads.</p>
+	 * @since MyWebApi 1.0
+	 * @param maxThreads The maximum amount of requests to resolve concurrently
+	 * @param queueSize The maximum amount of requests that can wait for a worker
+	 * @return A new executor that can be passed to {@link #setExecutor(ExecutorService)}
+	 */
+	public static ExecutorService createWorkerPool(int maxThreads, int queueSize) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads,
+				WORKER_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize),
+				new MyThreadFactory("MyWebApi-worker"),
+				new ThreadPoolExecutor.AbortPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	
+	/**
+	 * Sets the executor that resolves all requests that cannot be completed from the cache.
+	 * <p>Requests that are rejected by the executor fail immediately. Use an executor with a
+	 * different {@link java.util.concurrent.RejectedExecutionHandler} (for example one that runs
+	 * the request on the calling thread) if rejected requests should not fail.</p>
+	 * <p>The previous executor is not shut down, requests it has already accepted will still be
+	 * resolved.</p>
+	 * @since MyWebApi 1.0
+	 * @param executor The executor to use from now on
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		this.scheduler.setExecutor(executor);
+		MyLog.log("Executor has been replaced (" + executor + ")");
+	}
+	
+	/**
+	 * Sets the transport that sends all requests over the wire.
+	 * <p>Is set to an {@link HttpURLConnectionTransport} by default.</p>
+	 * <p>An {@link HttpAsyncTransport} only uses a worker thread to start each request, and resolves the request
+	 * on its own event loop once the response arrives. The request still counts against the scheduler limits
+	 * until then, so raise them (see {@link #setSchedulerLimits(int, int)}) to have many requests in flight at
+	 * the same time. Listeners and callbacks of such requests run on the event loop, and must not block.</p>
+	 * @since MyWebApi 1.0
+	 * @param transport The transport to use from now on, <code>null</code> to restore the default
+	 */
+	public void setTransport(HttpTransport transport) {
+		this.transport = transport != null ? transport : new HttpURLConnectionTransport();
+		MyLog.log("Transport has been replaced (" + this.transport + ")");
+	}
+	
+	/**
+	 * Sets the retry policy for all requests that do not specify their own (see
+	 * {@link MyRequest#getRetryPolicy()}).
+	 * <p>Is set to {@link MyRetryPolicy#NONE} by default, which means failed requests are not retried.</p>
+	 * @since MyWebApi 1.0
+	 * @param policy The retry policy to use, <code>null</code> to never retry
+	 */
+	public void setRetryPolicy(MyRetryPolicy policy) {
+		this.retryPolicy = policy != null ? policy : MyRetryPolicy.NONE;
+		MyLog.log("Retry policy has been set (" + retryPolicy + ")");
+	}
+	
+	/**
+	 * Limits the amount of retries of all requests together, so retries cannot turn an outage of the origin
+	 * into a storm of requests.
+	 * <p>Every request that is sent for the first time adds <code>ratio</code> retries to the budget, every
+	 * retry takes one. On top of that, <code>minPerSecond</code> retries per second are always allowed.
+	 * Is set to {@link #DEFAULT_RETRY_RATIO} and {@link #DEFAULT_MIN_RETRIES_PER_SECOND} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param ratio The maximum amount of retries as a fraction of the amount of requests (e.g. <code>0.1</code>)
+	 * @param minPerSecond The amount of retries per second that are always allowed
+	 */
+	public void setRetryBudget(double ratio, int minPerSecond) {
+		this.retryBudget = new MyRetryBudget(ratio, minPerSecond);
+	}
+	
+	/**
+	 * Enables circuit breaking for every endpoint (the base URL plus the path of a request). When too many
+	 * requests to an endpoint fail or are slow, the circuit of that endpoint opens and new requests to it fail
+	 * immediately with a {@link MyCircuitOpenException}, instead of occupying a worker until they time out.
+	 * After a while a few probe requests are let through to find out if the endpoint has recovered.
+	 * <p>While the circuit is open, a request is completed with its expired cached response instead, if that
+	 * response expired less than {@link MyCircuitBreakerPolicy#getStaleDuration()} ago.</p>
+	 * <p>Circuit breaking is disabled by default. Setting a policy resets the circuits of all endpoints.</p>
+	 * @since MyWebApi 1.0
+	 * @param policy The circuit breaker policy to use, <code>null</code> to disable circuit breaking
+	 */
+	public void setCircuitBreakerPolicy(MyCircuitBreakerPolicy policy) {
+		synchronized (circuitBreakers) {
+			this.circuitBreakerPolicy = policy;
+			circuitBreakers.clear();
+		}
+		cache.setStaleRetention(policy != null ? policy.getStaleDuration() : 0);
+		MyLog.log("Circuit breaker policy has been set (" + policy + ")");
+	}
+	
+	/**
+	 * Enables hedging of <code>GET</code> requests: a request that has not received its response after the
+	 * hedge delay is sent a second time, and whichever attempt receives its response first resolves the
+	 * request. The other attempt is aborted.
+	 * <p>Hedging is disabled by default. Use {@link #getHedgesFired()} and {@link #getHedgesWon()} to find out
+	 * how often hedges are sent, and how often they actually help.</p>
+	 * @since MyWebApi 1.0
+	 * @param policy The hedging policy to use, <code>null</code> to disable hedging
+	 */
+	public void setHedgingPolicy(MyHedgingPolicy policy) {
+		if (policy != null) { this.hedgeBudget = new MyRetryBudget(policy.getMaxRatio(), 0); }
+		this.hedgingPolicy = policy;
+		MyLog.log("Hedging policy has been set (" + policy + ")");
+	}
+	
+	/**
+	 * Returns the amount of hedges that have been sent (see {@link #setHedgingPolicy(MyHedgingPolicy)}).
+	 * @since MyWebApi 1.0
+	 * @return The amount of hedges sent since this instance was created
+	 */
+	public long getHedgesFired() {
+		return hedgesFired.get();
+	}
+	
+	/**
+	 * Returns the amount of hedges that received their response before the request they were hedging.
+	 * @since MyWebApi 1.0
+	 * @return The amount of hedges that resolved their request since this instance was created
+	 */
+	public long getHedgesWon() {
+		return hedgesWon.get();
+	}
+	
+	/**
+	 * Limits the rate at which requests are sent to every host (or to every key chosen by
+	 * {@link #setRateLimitKeySelector(MyRateLimiter.KeySelector)}). Requests above the rate wait for their turn
+	 * without holding a thread. A request that cannot be sent before its deadline fails right away.
+	 * <p>Regardless of the rate, requests to a host that responds with <code>429 Too Many Requests</code> (or with
+	 * <code>503 Service Unavailable</code> and a <code>Retry-After</code> header) are held back for as long as the
+	 * host asks for (up to the deadline of the request, and at most the time set by {@link #setMaxThrottle(long)}),
+	 * and the rate for that host is halved until requests succeed again.</p>
+	 * <p>There is no limit by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param permitsPerSecond The maximum amount of requests per second to a single host, <code>0</code> for no limit
+	 * @param burst The maximum amount of requests that can be sent at once after a quiet period
+	 */
+	public void setRateLimit(double permitsPerSecond, int burst) {
+		rateLimiter.setRate(permitsPerSecond, burst);
+		MyLog.log("Rate limit has been set to " + permitsPerSecond + " requests per second");
+	}
+	
+	/**
+	 * Sets the maximum time that requests to a host are held back when the host asks for it with a
+	 * <code>Retry-After</code> header, no matter how long it asks to wait.
+	 * <p>Is set to {@link MyRateLimiter#DEFAULT_MAX_PAUSE} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The maximum time in milliseconds
+	 */
+	public void setMaxThrottle(long milliseconds) {
+		rateLimiter.setMaxPause(milliseconds);
+	}
+	
+	/**
+	 * Sets what decides which requests share a rate limit. Requests to the same host share a rate limit by
+	 * default (see {@link MyRateLimiter#PER_HOST}).
+	 * @since MyWebApi 1.0
+	 * @param selector The key selector to use, <code>null</code> to limit the rate of every host
+	 */
+	public void setRateLimitKeySelector(MyRateLimiter.KeySelector selector) {
+		rateLimiter.setKeySelector(selector);
+	}
+	
+	/**
+	 * Sets how many requests are resolved at the same time, and how many requests can wait for their turn.
+	 * Waiting requests are resolved in order of their {@link MyRequest#getPriority()}. Requests that do not fit
+	 * in the waiting list fail immediately.
+	 * <p>Is set to {@link #DEFAULT_MAX_THREADS} and {@link #DEFAULT_QUEUE_SIZE} by default. Raise the amount of
+	 * concurrent requests when using an executor that is not limited to a small amount of threads (for
+	 * example when using virtual threads, or an {@link HttpAsyncTransport}).</p>
+	 * @since MyWebApi 1.0
+	 * @param maxConcurrent The maximum amount of requests to resolve at the same time
+	 * @param maxWaiting The maximum amount of requests that can wait for their turn
+	 */
+	public void setSchedulerLimits(int maxConcurrent, int maxWaiting) {
+		scheduler.setLimits(maxConcurrent, maxWaiting);
+	}
+	
+	/**
+	 * Sets the time a waiting request has to wait before it is treated as if its priority was one higher.
+	 * This prevents requests with a low priority from waiting forever while requests with a higher priority
+	 * keep coming in.
+	 * <p>Is set to {@link #DEFAULT_PRIORITY_AGING} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The aging interval in milliseconds, <code>0</code> to disable aging
+	 */
+	public void setPriorityAging(long milliseconds) {
+		scheduler.setAging(milliseconds);
+	}
+	
+	/**
+	 * Switches between resolving every request on its own virtual thread and resolving requests on
+	 * the default pool of worker threads.
+	 * <p>Resolving a request mostly consists of waiting on the network, so virtual threads allow a
+	 * very large amount of requests to be in flight without reserving a platform thread (and its stack)
+	 * for each of them. Enabling virtual threads raises the amount of requests that are resolved at the same
+	 * time to {@link #DEFAULT_MAX_VIRTUAL_THREADS}, use {@link #setSchedulerLimits(int, int)} afterwards to change
+	 * it.</p>
+	 * <p>Disabling virtual threads restores a new default worker pool (see {@link #createWorkerPool(int, int)})
+	 * and lowers the amount of requests that are resolved at the same time to {@link #DEFAULT_MAX_THREADS}.</p>
+	 * @since MyWebApi 1.0
+	 * @param enable <code>true</code> to resolve requests on virtual threads, <code>false</code> to use the
+	 *  default worker pool
+	 * @throws UnsupportedOperationException When enabling virtual threads on a platform that does not
+	 *  support them (see {@link MyVirtualThreads#isSupported()})
+	 */
+	public void setVirtualThreadsEnabled(boolean enable) {
+		setExecutor(enable
+				? MyVirtualThreads.newExecutor("MyWebApi-virtual")
+				: createWorkerPool(DEFAULT_MAX_THREADS, DEFAULT_QUEUE_SIZE));
+		scheduler.setLimits(enable ? DEFAULT_MAX_VIRTUAL_THREADS : DEFAULT_MAX_THREADS, scheduler.getMaxWaiting());
+	}
+	
+	/**
+	 * Stops accepting new requests. Requests that have already been accepted will still be resolved, including
+	 * the requests that are waiting in the scheduler and any retries or hedges they still need. The executor is
+	 * shut down once the last of them has been resolved.
+	 * <p>Requests that are still queued (see {@link #setQueueing(boolean)}) are not replayed anymore, and fail
+	 * with a {@link RejectedExecutionException}. Those that are kept in the queue journal stay in it, and are
+	 * replayed by the next session that opens the journal (see {@link #setQueueJournal(File)}).</p>
+	 * <p>Any request started after this call fails immediately.</p>
+	 * @since MyWebApi 1.0
+	 */
+	public void shutdown() {
+		shuttingDown = true;
+		MyLog.log("Shutting down, no longer accepting requests");
+		queue.abandon(replayDispatcher);
+		if (unresolved.get() == 0) { terminate(); }
+	}
+	
+	/**
+	 * Blocks until all accepted requests have been resolved after a {@link #shutdown()}, or until the
+	 * timeout expires (whichever happens first).
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The maximum amount of time to wait in milliseconds
+	 * @return <code>true</code> if all requests have been resolved, <code>false</code> if the timeout expired
+	 * @throws InterruptedException When the current thread was interrupted while waiting
+	 */
+	public boolean awaitTermination(long milliseconds) throws InterruptedException {
+		long end = System.currentTimeMillis() + milliseconds;
+		if (!terminated.await(milliseconds, TimeUnit.MILLISECONDS)) { return false; }
+		return executor.awaitTermination(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Counts an accepted request as resolved, and terminates if it was the last one after a shutdown.
+	 */
+	private void resolved() {
+		if (unresolved.decrementAndGet() == 0 && shuttingDown) { terminate(); }
+	}
+	
+	/**
+	 * Shuts down the executor and the timer once all accepted requests have been resolved after a shutdown.
+	 */
+	private void terminate() {
+		synchronized (terminated) {
+			if (terminated.getCount() == 0) { return; }
+			terminated.countDown();
+		}
+		executor.shutdown();
+		timer.shutdown();
+		MyLog.log("Shut down, all accepted requests have been resolved");
 	}
 	
 }
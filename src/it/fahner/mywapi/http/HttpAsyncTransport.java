@@ -0,0 +1,43 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link HttpTransport} that can send requests without blocking a thread while waiting for the response.
+ * <p>The returned futures are completed by the threads of the transport itself (its event loop). Code that
+ * runs when such a future completes should therefore never block, or it holds up every other request that is
+ * sent by the same transport.</p>
+ * @see HttpClientTransport
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public interface HttpAsyncTransport extends HttpTransport {
+	
+	/**
+	 * Starts sending a request, and returns right away.
+	 * @since MyWebApi 1.0
+	 * @param request The request to send
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @return The future that completes with the response, or completes exceptionally with an
+	 *  {@link HttpRequestTimeoutException} when the request took too long, could not be sent or has been aborted
+	 */
+	public CompletableFuture<HttpResponse> sendAsync(HttpRequest request, int connectTimeout, int readTimeout);
+	
+}
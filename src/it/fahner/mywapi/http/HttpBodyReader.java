@@ -0,0 +1,458 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads response bodies as raw bytes, for the transports that read from a stream.
+ * <p>A body of known length is read straight into an array of exactly that length. A body of unknown length is
+ * read into a buffer, and copied once into an array of the right length. Buffers are kept for the next body in a
+ * small pool that all threads share, so the memory they hold stays bounded however many threads read bodies.</p>
+ * <p>A body that is larger than the spill threshold of its request (see {@link HttpRequest#setSpillThreshold(long)})
+ * is written to a temporary file instead, which is mapped into memory outside of the Java heap. Where the
+ * platform allows it, the file is deleted as soon as it has been mapped, so it takes no disk space once the
+ * response is garbage collected.</p>
+ * <p>Bodies that the origin has compressed (see {@link #ACCEPT_ENCODING}) are decompressed while they are read.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+final class HttpBodyReader {
+	
+	/** The value of the <code>'Accept-Encoding'</code> header, with the content codings that can be decompressed. */
+	static final String ACCEPT_ENCODING = "gzip, deflate";
+	
+	/** The size of a new buffer for bodies of unknown length. */
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+	
+	/** The size up to which a buffer is kept for the next body. */
+	private static final int MAX_POOLED_BUFFER_SIZE = 65536;
+	
+	/** The amount of buffers that are kept for the next bodies. */
+	private static final int MAX_POOLED_BUFFERS = 16;
+	
+	/** The maximum length of an array (some virtual machines reserve a few header words in an array). */
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+	
+	/** The maximum length of a status line, header line or chunk size line. */
+	private static final int MAX_LINE_LENGTH = 65536;
+	
+	/** Contains the buffers that are kept for the next bodies of unknown length. */
+	private static final ArrayBlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(MAX_POOLED_BUFFERS);
+	
+	/**
+	 * This class only has static methods.
+	 */
+	private HttpBodyReader() {}
+	
+	/**
+	 * Reads a body until the stream ends, or until the amount of bytes specified has been read.
+	 * @param in The stream to read from
+	 * @param length The length of the body (the <code>'Content-Length'</code>), <code>-1</code> if unknown
+	 * @return The body
+	 * @throws IOException When the body could not be read, the stream ended before the specified length or the
+	 *  body is too large to fit in an array
+	 */
+	static byte[] read(InputStream in, long length) throws IOException {
+		if (length > MAX_ARRAY_LENGTH) { throw new IOException("Body of " + length + " bytes is too large"); }
+		if (length >= 0) {
+			byte[] content = new byte[(int) length];
+			int read = 0;
+			while (read < length) {
+				int n = in.read(content, read, content.length - read);
+				if (n == -1) { throw new EOFException("Stream ended after " + read + " of " + length + " bytes"); }
+				read += n;
+			}
+			return content;
+		}
+		return readAtMost(in, MAX_ARRAY_LENGTH);
+	}
+	
+	/**
+	 * Creates the stream of a response, which decompresses the body if the origin has compressed it (as specified
+	 * by the <code>'Content-Encoding'</code> header of the response).
+	 * @param head The response without its body
+	 * @param body The stream to read the body from, as it is received
+	 * @param length The length of the body as it is received, <code>-1</code> if unknown
+	 * @return The response stream, with an unknown content length if the body is decompressed
+	 */
+	static HttpResponseStream open(HttpResponse head, InputStream body, long length) {
+		String coding = getCoding(head);
+		if (length == 0 || coding == null) { return new HttpResponseStream(head, body, length); }
+		return new HttpResponseStream(head, new DecodingInputStream(body, coding.equals("gzip")), -1);
+	}
+	
+	/**
+	 * Returns the content coding the origin has compressed the body of a response with.
+	 * @param head The response
+	 * @return <code>"gzip"</code> or <code>"deflate"</code>, <code>null</code> if the body is not compressed (or
+	 *  compressed with a coding that cannot be decompressed)
+	 */
+	private static String getCoding(HttpResponse head) {
+		String encoding = head.getHeader("Content-Encoding");
+		if (encoding == null) { return null; }
+		encoding = encoding.trim().toLowerCase(Locale.ENGLISH);
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) { return "gzip"; }
+		return encoding.equals("deflate") ? encoding : null;
+	}
+	
+	/**
+	 * Reads the body of a response stream completely, into memory or into a temporary file depending on the spill
+	 * threshold of the request.
+	 * @param stream The response stream, which is not closed
+	 * @return The complete response
+	 * @throws IOException When the body could not be read, the stream ended before its specified length or the
+	 *  body could not be written to a temporary file
+	 */
+	static HttpResponse read(HttpResponseStream stream) throws IOException {
+		HttpResponse head = stream.getHead();
+		long threshold = head.getOriginRequest().getSpillThreshold();
+		long length = stream.getContentLength();
+		InputStream in = stream.getInputStream();
+		if (threshold < 0 || (length >= 0 && length <= threshold)) { return new HttpResponse(head, read(in, length)); }
+		if (length >= 0) { return spill(head, null, in, length); }
+		// The length is unknown, so only start writing to a file once the body turns out to be too large
+		byte[] start = readAtMost(in, (int) Math.min(threshold + 1, MAX_ARRAY_LENGTH));
+		if (start.length <= threshold) { return new HttpResponse(head, start); }
+		return spill(head, start, in, -1);
+	}
+	
+	/**
+	 * Completes a response with a body that has already been received into memory. Decompresses the body if the
+	 * origin has compressed it, and writes it to a temporary file if it is larger than the spill threshold of the
+	 * request.
+	 * @param head The response without its body
+	 * @param content The response body as it was received
+	 * @return The complete response
+	 * @throws IOException When the body could not be decompressed or written to a temporary file
+	 */
+	static HttpResponse keep(HttpResponse head, byte[] content) throws IOException {
+		if (content.length > 0 && getCoding(head) != null) {
+			return read(open(head, new ByteArrayInputStream(content), content.length));
+		}
+		long threshold = head.getOriginRequest().getSpillThreshold();
+		if (threshold < 0 || content.length <= threshold) { return new HttpResponse(head, content); }
+		return spill(head, content, null, 0);
+	}
+	
+	/**
+	 * Creates a new temporary file to write a body to. The caller must delete the file if it is not mapped.
+	 * @return The file
+	 * @throws IOException When the file could not be created
+	 */
+	static File createSpillFile() throws IOException {
+		return File.createTempFile("mywapi-", ".body");
+	}
+	
+	/**
+	 * Completes a response with a body that has been received into a temporary file. Decompresses the body into
+	 * memory or into another file if the origin has compressed it (deleting the received file), maps the file
+	 * into memory otherwise.
+	 * @param head The response without its body
+	 * @param file The temporary file that holds the response body as it was received
+	 * @return The complete response
+	 * @throws IOException When the body could not be decompressed, or the file could not be mapped
+	 */
+	static HttpResponse keep(HttpResponse head, File file) throws IOException {
+		if (getCoding(head) == null) { return map(head, file); }
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				return read(open(head, in, file.length()));
+			} finally {
+				in.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Completes a response with a body that has been written to a temporary file, by mapping that file into
+	 * memory. Deletes the file right after mapping it if the platform allows it (the mapping keeps the body
+	 * readable), or else when the response is released or the virtual machine exits. Deletes the file if it
+	 * cannot be mapped.
+	 * @param head The response without its body
+	 * @param file The temporary file that holds the raw response body
+	 * @return The complete response
+	 * @throws IOException When the file could not be mapped
+	 */
+	static HttpResponse map(HttpResponse head, File file) throws IOException {
+		boolean mapped = false;
+		try {
+			RandomAccessFile access = new RandomAccessFile(file, "r");
+			try {
+				long size = access.length();
+				if (size > Integer.MAX_VALUE) { throw new IOException("Body of " + size + " bytes is too large"); }
+				MappedByteBuffer buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+				mapped = true;
+				if (file.delete()) { return new HttpResponse(head, null, buffer); }
+				// The platform cannot delete a mapped file, so it has to wait for a release
+				file.deleteOnExit();
+				return new HttpResponse(head, file, buffer);
+			} finally {
+				access.close();
+			}
+		} finally {
+			if (!mapped) { file.delete(); }
+		}
+	}
+	
+	/**
+	 * Writes a body to a temporary file, and completes a response with it.
+	 * @param head The response without its body
+	 * @param start The part of the body that has already been read, <code>null</code> if none
+	 * @param in The stream to read the rest of the body from, <code>null</code> if there is none
+	 * @param length The length of the rest of the body, <code>-1</code> to read until the stream ends
+	 * @return The complete response
+	 * @throws IOException When the body could not be read or written, or the stream ended before the
+	 *  specified length
+	 */
+	private static HttpResponse spill(HttpResponse head, byte[] start, InputStream in, long length)
+			throws IOException {
+		File file = createSpillFile();
+		boolean written = false;
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				if (start != null) { out.write(start); }
+				if (in != null) { copy(in, out, length); }
+			} finally {
+				out.close();
+			}
+			written = true;
+		} finally {
+			if (!written) { file.delete(); }
+		}
+		return map(head, file);
+	}
+	
+	/**
+	 * Copies a body from a stream to another stream.
+	 * @param in The stream to read from
+	 * @param out The stream to write to
+	 * @param length The amount of bytes to copy, <code>-1</code> to copy until the stream ends
+	 * @throws IOException When the body could not be copied, or the stream ended before the specified length
+	 */
+	private static void copy(InputStream in, OutputStream out, long length) throws IOException {
+		byte[] buffer = take();
+		try {
+			long copied = 0;
+			while (length < 0 || copied < length) {
+				int n = in.read(buffer, 0, (int) (length < 0 ? buffer.length : Math.min(buffer.length, length - copied)));
+				if (n == -1) {
+					if (length < 0) { break; }
+					throw new EOFException("Stream ended after " + copied + " of " + length + " bytes");
+				}
+				out.write(buffer, 0, n);
+				copied += n;
+			}
+		} finally {
+			give(buffer);
+		}
+	}
+	
+	/**
+	 * Reads a body until the stream ends, or until the amount of bytes specified has been read.
+	 * @param in The stream to read from
+	 * @param limit The maximum amount of bytes to read
+	 * @return The bytes that have been read
+	 * @throws IOException When the body could not be read
+	 */
+	private static byte[] readAtMost(InputStream in, int limit) throws IOException {
+		byte[] buffer = take();
+		int read = 0;
+		int n;
+		while (read < limit) {
+			if (read == buffer.length) { buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, limit)); }
+			if ((n = in.read(buffer, read, Math.min(buffer.length, limit) - read)) == -1) { break; }
+			read += n;
+		}
+		byte[] content = Arrays.copyOf(buffer, read);
+		give(buffer);
+		return content;
+	}
+	
+	/**
+	 * Reads a single line (in ISO-8859-1), without its line ending.
+	 * @param in The stream to read from
+	 * @return The line, <code>null</code> if the stream ended before any character was read
+	 * @throws IOException When the line could not be read, or is too long
+	 */
+	static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				int end = line.length();
+				if (end > 0 && line.charAt(end - 1) == '\r') { line.setLength(end - 1); }
+				return line.toString();
+			}
+			if (line.length() >= MAX_LINE_LENGTH) { throw new IOException("Line too long"); }
+			line.append((char) c);
+		}
+		if (line.length() == 0) { return null; }
+		throw new EOFException("Stream ended in the middle of a line");
+	}
+	
+	/**
+	 * Decompresses a body while it is read. The decompressor is only created once the first byte is read, so a
+	 * compressed response without any body is read as an empty body.
+	 * <p>Once the decompressed body ends, the rest of the body as it is received is read as well, so the
+	 * connection it was received over can be reused.</p>
+	 */
+	private static final class DecodingInputStream extends FilterInputStream {
+		
+		/** Contains the body as it is received. */
+		private final PushbackInputStream raw;
+		
+		/** Flag indicating that the body is compressed with gzip, instead of deflate. */
+		private final boolean gzip;
+		
+		/** Contains the decompressor for a raw deflate body, <code>null</code> if there is none. */
+		private Inflater inflater;
+		
+		/**
+		 * Creates a new decompressing stream.
+		 * @param body The body as it is received
+		 * @param gzip <code>true</code> if the body is compressed with gzip, <code>false</code> for deflate
+		 */
+		DecodingInputStream(InputStream body, boolean gzip) {
+			super(null);
+			this.raw = new PushbackInputStream(body, 2);
+			this.gzip = gzip;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int offset, int length) throws IOException {
+			if (in == null && !start()) { return -1; }
+			int n = in.read(b, offset, length);
+			if (n == -1) { drain(); }
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+			long skipped = 0;
+			while (skipped < n) {
+				int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (count == -1) { break; }
+				skipped += count;
+			}
+			return skipped;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return in != null ? in.available() : 0;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				if (in != null) {
+					in.close();
+				} else {
+					raw.close();
+				}
+			} finally {
+				if (inflater != null) { inflater.end(); }
+			}
+		}
+		
+		/**
+		 * Creates the decompressor, unless the body is empty.
+		 * @return <code>true</code> if the decompressor has been created, <code>false</code> if the body is empty
+		 * @throws IOException When the start of the body could not be read, or is not compressed properly
+		 */
+		private boolean start() throws IOException {
+			int first = raw.read();
+			if (first == -1) { return false; }
+			int second = raw.read();
+			if (second != -1) { raw.unread(second); }
+			raw.unread(first);
+			if (gzip) {
+				in = new GZIPInputStream(raw);
+			} else if (second != -1 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0) {
+				in = new InflaterInputStream(raw);
+			} else {
+				// Some origins send a raw deflate stream, without the zlib wrapper the standard asks for
+				inflater = new Inflater(true);
+				in = new InflaterInputStream(raw, inflater);
+			}
+			return true;
+		}
+		
+		/**
+		 * Reads the rest of the body as it is received, after the decompressed body has ended.
+		 * @throws IOException When the body could not be read
+		 */
+		private void drain() throws IOException {
+			byte[] buffer = new byte[512];
+			while (raw.read(buffer) != -1) { continue; }
+		}
+		
+	}
+	
+	/**
+	 * Takes a buffer from the pool, or creates a new one if the pool is empty.
+	 * @return The buffer
+	 */
+	private static byte[] take() {
+		byte[] buffer = buffers.poll();
+		return buffer != null ? buffer : new byte[INITIAL_BUFFER_SIZE];
+	}
+	
+	/**
+	 * Keeps a buffer in the pool for the next body, unless it has grown too large or the pool is full.
+	 * @param buffer The buffer
+	 */
+	private static void give(byte[] buffer) {
+		if (buffer.length <= MAX_POOLED_BUFFER_SIZE) { buffers.offer(buffer); }
+	}
+	
+}
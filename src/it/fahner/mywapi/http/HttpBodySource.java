@@ -0,0 +1,280 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * The body of a request, which is written to the connection while the request is sent instead of being held
+ * in memory as a string first.
+ * <p>A body of known length is sent with a <code>'Content-Length'</code> header. A body of unknown length is sent
+ * with chunked transfer encoding, so it can be produced while it is being sent. To produce a body while it is
+ * being sent, implement {@link #writeTo(OutputStream)}. Use one of the <code>of(...)</code> methods to send a
+ * string, an array of bytes, a stream or a file.</p>
+ * @see HttpRequest#setBody(HttpBodySource)
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public abstract class HttpBodySource {
+	
+	/** Contains the content type of the body, <code>null</code> for the default content type. */
+	private String contentType;
+	
+	/**
+	 * Creates a new body source.
+	 * @since MyWebApi 1.0
+	 * @param contentType The content type of the body, <code>null</code> for {@link HttpRequest#CONTENT_TYPE}
+	 */
+	protected HttpBodySource(String contentType) {
+		this.contentType = contentType;
+	}
+	
+	/**
+	 * Returns the length of the body.
+	 * @since MyWebApi 1.0
+	 * @return The length in bytes, <code>-1</code> if unknown (the body is then sent in chunks)
+	 */
+	public abstract long getLength();
+	
+	/**
+	 * Writes the entire body. Called once every time the request is sent.
+	 * @since MyWebApi 1.0
+	 * @param out The stream to write the body to, which must not be closed
+	 * @throws IOException When the body could not be written
+	 */
+	public abstract void writeTo(OutputStream out) throws IOException;
+	
+	/**
+	 * Opens a stream to read the body from, for transports that read the body instead of having it written.
+	 * Transports fall back to {@link #writeTo(OutputStream)} if this returns <code>null</code>, which is the
+	 * default.
+	 * @since MyWebApi 1.0
+	 * @return The stream to read the body from, <code>null</code> if the body can only be written
+	 * @throws IOException When the stream could not be opened
+	 */
+	public InputStream openStream() throws IOException {
+		return null;
+	}
+	
+	/**
+	 * Checks if the body can be sent more than once. A request with a body that can only be sent once is never
+	 * retried or hedged, and is not sent again after a redirect that keeps the body.
+	 * <p>Returns <code>true</code> by default.</p>
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if the body can be sent again
+	 */
+	public boolean isRepeatable() {
+		return true;
+	}
+	
+	/**
+	 * Returns the entire body, if it is held in memory. A body that is held in memory is compared by its content,
+	 * so requests that send the same body can share a response, and can be written to the journal of a
+	 * {@link it.fahner.mywapi.MyRequestQueue}.
+	 * <p>Returns <code>null</code> by default.</p>
+	 * @since MyWebApi 1.0
+	 * @return The body, which must not be changed, <code>null</code> if the body is not held in memory
+	 */
+	public byte[] getContent() {
+		return null;
+	}
+	
+	/**
+	 * Returns the content type of the body.
+	 * @since MyWebApi 1.0
+	 * @return The value of the <code>'Content-Type'</code> header, <code>null</code> for
+	 *  {@link HttpRequest#CONTENT_TYPE} in {@link HttpRequest#CHARSET}
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+	
+	/**
+	 * Creates a body from a string, which is encoded in {@link HttpRequest#CHARSET}.
+	 * @since MyWebApi 1.0
+	 * @param body The body
+	 * @param contentType The content type of the body, <code>null</code> for {@link HttpRequest#CONTENT_TYPE}
+	 * @return The body source
+	 */
+	public static HttpBodySource of(String body, String contentType) {
+		return of(body.getBytes(Charset.forName(HttpRequest.CHARSET)), contentType);
+	}
+	
+	/**
+	 * Creates a body from an array of bytes.
+	 * @since MyWebApi 1.0
+	 * @param body The body, which must not be changed afterwards
+	 * @param contentType The content type of the body, <code>null</code> for {@link HttpRequest#CONTENT_TYPE}
+	 * @return The body source
+	 */
+	public static HttpBodySource of(final byte[] body, String contentType) {
+		return new HttpBodySource(contentType) {
+			
+			@Override
+			public long getLength() {
+				return body.length;
+			}
+			
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				out.write(body);
+			}
+			
+			@Override
+			public InputStream openStream() {
+				return new ByteArrayInputStream(body);
+			}
+			
+			@Override
+			public byte[] getContent() {
+				return body;
+			}
+			
+		};
+	}
+	
+	/**
+	 * Creates a body that is read from a stream. The body can only be sent once, and the stream is closed once
+	 * it has been sent.
+	 * @since MyWebApi 1.0
+	 * @param in The stream to read the body from
+	 * @param length The length of the body in bytes, <code>-1</code> if unknown
+	 * @param contentType The content type of the body, <code>null</code> for {@link HttpRequest#CONTENT_TYPE}
+	 * @return The body source
+	 */
+	public static HttpBodySource of(final InputStream in, final long length, String contentType) {
+		return new HttpBodySource(contentType) {
+			
+			@Override
+			public long getLength() {
+				return length;
+			}
+			
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				try {
+					byte[] buffer = new byte[8192];
+					int n;
+					while ((n = in.read(buffer)) != -1) {
+						out.write(buffer, 0, n);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			
+			@Override
+			public InputStream openStream() {
+				return in;
+			}
+			
+			@Override
+			public boolean isRepeatable() {
+				return false;
+			}
+			
+		};
+	}
+	
+	/**
+	 * Creates a body that is read from a file. The file is opened again every time the body is sent.
+	 * @since MyWebApi 1.0
+	 * @param file The file to send
+	 * @param contentType The content type of the body, <code>null</code> for {@link HttpRequest#CONTENT_TYPE}
+	 * @return The body source
+	 */
+	public static HttpBodySource of(final File file, String contentType) {
+		return new HttpBodySource(contentType) {
+			
+			@Override
+			public long getLength() {
+				return file.length();
+			}
+			
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				FileInputStream in = new FileInputStream(file);
+				try {
+					transfer(in.getChannel(), out);
+				} finally {
+					in.close();
+				}
+			}
+			
+			@Override
+			public InputStream openStream() throws IOException {
+				return new FileInputStream(file);
+			}
+			
+		};
+	}
+	
+	/**
+	 * Creates a body that is read from a file channel, from the start of the file up to its size at the time the
+	 * body is sent. The channel is not closed.
+	 * @since MyWebApi 1.0
+	 * @param channel The channel to read the body from
+	 * @param contentType The content type of the body, <code>null</code> for {@link HttpRequest#CONTENT_TYPE}
+	 * @return The body source
+	 */
+	public static HttpBodySource of(final FileChannel channel, String contentType) {
+		return new HttpBodySource(contentType) {
+			
+			@Override
+			public long getLength() {
+				try {
+					return channel.size();
+				} catch (IOException e) {
+					return -1;
+				}
+			}
+			
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				transfer(channel, out);
+			}
+			
+		};
+	}
+	
+	/**
+	 * Writes the entire contents of a file channel to a stream, without changing the position of the channel.
+	 * @param channel The channel to read from
+	 * @param out The stream to write to
+	 * @throws IOException When the contents could not be transferred
+	 */
+	private static void transfer(FileChannel channel, OutputStream out) throws IOException {
+		WritableByteChannel target = Channels.newChannel(out);
+		long size = channel.size();
+		long position = 0;
+		while (position < size) {
+			long n = channel.transferTo(position, size - position, target);
+			if (n <= 0) { break; }
+			position += n;
+		}
+	}
+	
+}
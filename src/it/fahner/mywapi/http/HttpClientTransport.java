@@ -0,0 +1,597 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import it.fahner.mywapi.http.types.HttpContentType;
+import it.fahner.mywapi.http.types.HttpRequestMethod;
+import it.fahner.mywapi.http.types.HttpStatusCode;
+import it.fahner.mywapi.myutil.MyThreadFactory;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * An {@link HttpTransport} that sends requests using a single {@link HttpClient} (available since Java 11).
+ * <p>All requests share the connection pool of the client. Origins that support HTTP/2 receive all concurrent
+ * requests as streams over a single connection, instead of over a connection per request.</p>
+ * <p>Requests can be sent without blocking a thread (see {@link #sendAsync(HttpRequest, int, int)}). The client
+ * then waits for all responses using a single selector thread, and completes them on a small pool of event
+ * loop threads. Thousands of requests can be in flight at the same time, without a thread per request.</p>
+ * <p>The connect timeout is a setting of the client itself (see {@link HttpClient.Builder#connectTimeout(Duration)}),
+ * so the connect timeout of a request only adds to the time the request may take to receive its response
+ * headers. The read timeout limits that time as well, and after the headers it limits the time to wait for
+ * the next part of the body.</p>
+ * <p>Bodies that can only be written to a stream, and the read timeouts, are handled by the executor of the
+ * transport, which reuses its threads instead of starting a thread for every request.</p>
+ * <p>A body that is larger than the spill threshold of its request is written straight to a temporary file when
+ * the response announces its length. A body of unknown length is received in memory first, and only then
+ * written to a temporary file if it turns out to be too large.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class HttpClientTransport implements HttpAsyncTransport, HttpStreamingTransport {
+	
+	/**
+	 * The amount of event loop threads that complete responses when none has been specified.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_LOOP_THREADS = 2;
+	
+	/** The client that sends all requests. */
+	private final HttpClient client;
+	
+	/** Writes the bodies that can only be written to a stream, and expires read timeouts. */
+	private final Executor executor;
+	
+	/**
+	 * Creates a new transport with a client that prefers HTTP/2, follows redirects and completes responses on
+	 * {@link #DEFAULT_LOOP_THREADS} event loop threads.
+	 * @since MyWebApi 1.0
+	 */
+	public HttpClientTransport() {
+		this(DEFAULT_LOOP_THREADS);
+	}
+	
+	/**
+	 * Creates a new transport with a client that prefers HTTP/2, follows redirects and completes responses on
+	 * the amount of event loop threads specified.
+	 * @since MyWebApi 1.0
+	 * @param loopThreads The amount of event loop threads
+	 */
+	public HttpClientTransport(int loopThreads) {
+		this(HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.executor(Executors.newFixedThreadPool(Math.max(1, loopThreads),
+						new MyThreadFactory("HttpClientTransport-loop")))
+				.build());
+	}
+	
+	/**
+	 * Creates a new transport that sends all requests using the client specified, with an executor that reuses
+	 * idle daemon threads.
+	 * @since MyWebApi 1.0
+	 * @param client The client to use
+	 */
+	public HttpClientTransport(HttpClient client) {
+		this(client, Executors.newCachedThreadPool(new MyThreadFactory("HttpClientTransport-worker")));
+	}
+	
+	/**
+	 * Creates a new transport that sends all requests using the client and executor specified.
+	 * @since MyWebApi 1.0
+	 * @param client The client to use
+	 * @param executor The executor that writes bodies that can only be written to a stream (taking a thread for
+	 *  as long as the body is sent), and expires read timeouts
+	 */
+	public HttpClientTransport(HttpClient client, Executor executor) {
+		this.client = client;
+		this.executor = executor;
+	}
+	
+	@Override
+	public HttpResponse send(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
+		final CompletableFuture<java.net.http.HttpResponse<HttpResponse>> exchange =
+				exchange(request, connectTimeout, readTimeout, timed(toResponses(request), readTimeout));
+		try {
+			return exchange.get().body();
+		} catch (InterruptedException e) {
+			exchange.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new HttpRequestTimeoutException();
+		} catch (ExecutionException e) {
+			throw new HttpRequestTimeoutException();
+		} catch (CancellationException e) {
+			throw new HttpRequestTimeoutException();
+		} finally {
+			request.setAbortHandler(null);
+		}
+	}
+	
+	@Override
+	public CompletableFuture<HttpResponse> sendAsync(final HttpRequest request, int connectTimeout,
+			int readTimeout) {
+		final CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+		exchange(request, connectTimeout, readTimeout, timed(toResponses(request), readTimeout)).whenComplete(
+				new BiConsumer<java.net.http.HttpResponse<HttpResponse>, Throwable>() {
+			
+			@Override
+			public void accept(java.net.http.HttpResponse<HttpResponse> response, Throwable error) {
+				request.setAbortHandler(null);
+				if (error == null) {
+					result.complete(response.body());
+				} else {
+					result.completeExceptionally(new HttpRequestTimeoutException());
+				}
+			}
+			
+		});
+		return result;
+	}
+	
+	@Override
+	public HttpResponseStream open(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
+		final CompletableFuture<java.net.http.HttpResponse<InputStream>> exchange =
+				exchange(request, connectTimeout, readTimeout, BodyHandlers.ofInputStream());
+		boolean opened = false;
+		try {
+			java.net.http.HttpResponse<InputStream> response = exchange.get();
+			final InputStream body = readTimeout > 0
+					? new TimedInputStream(response.body(), readTimeout) : response.body();
+			// Once the headers have arrived, aborting the request closes the body instead
+			request.setAbortHandler(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						body.close();
+					} catch (IOException e) {
+						// the exchange is gone either way
+					}
+				}
+				
+			});
+			int code = response.statusCode();
+			boolean bodiless = request.getMethod() == HttpRequestMethod.HEAD || code == 204 || code == 304;
+			opened = true;
+			HttpResponse head = toResponse(request, code, response.headers(), new byte[0]);
+			return HttpBodyReader.open(head, body,
+					bodiless ? 0 : response.headers().firstValueAsLong("Content-Length").orElse(-1));
+		} catch (InterruptedException e) {
+			exchange.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new HttpRequestTimeoutException();
+		} catch (ExecutionException e) {
+			throw new HttpRequestTimeoutException();
+		} catch (CancellationException e) {
+			throw new HttpRequestTimeoutException();
+		} finally {
+			if (!opened) { request.setAbortHandler(null); }
+		}
+	}
+	
+	/**
+	 * Starts the exchange of a request with the client, and registers an abort handler that cancels it.
+	 * @param request The request to send
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @param handler Decides how the body of the response is received
+	 * @return The exchange, which fails right away if the URL of the request is not a valid URI
+	 */
+	private <T> CompletableFuture<java.net.http.HttpResponse<T>> exchange(HttpRequest request,
+			int connectTimeout, int readTimeout, java.net.http.HttpResponse.BodyHandler<T> handler) {
+		java.net.http.HttpRequest.Builder builder;
+		try {
+			builder = java.net.http.HttpRequest.newBuilder(request.getUrl().toURI());
+		} catch (URISyntaxException e) {
+			CompletableFuture<java.net.http.HttpResponse<T>> failed =
+					new CompletableFuture<java.net.http.HttpResponse<T>>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		builder.header("Accept-Charset", HttpRequest.CHARSET);
+		builder.header("Accept-Encoding", HttpBodyReader.ACCEPT_ENCODING);
+		builder.header("Content-Type", request.getContentType());
+		builder.method(request.getMethod().name(), toPublisher(request.getBodySource()));
+		if (connectTimeout > 0 || readTimeout > 0) {
+			builder.timeout(Duration.ofMillis(Math.max(0, connectTimeout) + Math.max(0, readTimeout)));
+		}
+		
+		final CompletableFuture<java.net.http.HttpResponse<T>> exchange = client.sendAsync(builder.build(), handler);
+		request.setAbortHandler(new Runnable() {
+			
+			@Override
+			public void run() {
+				exchange.cancel(true);
+			}
+			
+		});
+		return exchange;
+	}
+	
+	/**
+	 * Creates the publisher that sends the body of a request. The body is read from the stream of its source, or
+	 * written to a pipe by the executor if its source can only be written.
+	 * @param body The body to send, <code>null</code> if the request has no body
+	 * @return The body publisher
+	 */
+	private BodyPublisher toPublisher(final HttpBodySource body) {
+		if (body == null || body.getLength() == 0) { return BodyPublishers.noBody(); }
+		BodyPublisher publisher = BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+			
+			@Override
+			public InputStream get() {
+				try {
+					InputStream in = body.openStream();
+					return in != null ? in : pipe(body);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			
+		});
+		long length = body.getLength();
+		return length > 0 ? BodyPublishers.fromPublisher(publisher, length) : publisher;
+	}
+	
+	/**
+	 * Lets the executor write a body to a pipe. If writing fails, the pipe is closed so that the request fails
+	 * while it reads the body.
+	 * @param body The body to write
+	 * @return The end of the pipe the body can be read from
+	 * @throws IOException When the pipe could not be created
+	 */
+	private InputStream pipe(final HttpBodySource body) throws IOException {
+		final PipedInputStream in = new PipedInputStream(8192);
+		final PipedOutputStream out = new PipedOutputStream(in);
+		executor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					body.writeTo(out);
+					out.close();
+				} catch (IOException e) {
+					try {
+						in.close();
+					} catch (IOException closing) {
+						// closing a pipe never fails
+					}
+				}
+			}
+			
+		});
+		return in;
+	}
+	
+	/**
+	 * Returns a body handler that fails the exchange when no part of the body has arrived for longer than the
+	 * read timeout.
+	 * @param handler The body handler that receives the body
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @return The body handler
+	 */
+	private <T> BodyHandler<T> timed(final BodyHandler<T> handler, final int readTimeout) {
+		if (readTimeout <= 0) { return handler; }
+		return new BodyHandler<T>() {
+			
+			@Override
+			public BodySubscriber<T> apply(ResponseInfo info) {
+				return new TimedSubscriber<T>(handler.apply(info), readTimeout);
+			}
+			
+		};
+	}
+	
+	/**
+	 * Returns a body handler that receives the body of a response, and converts the response into a simplified
+	 * HTTP response. Keeps the body in a temporary file if it is larger than the spill threshold of the request.
+	 * @param request The request the responses belong to
+	 * @return The body handler
+	 */
+	private static BodyHandler<HttpResponse> toResponses(final HttpRequest request) {
+		return new BodyHandler<HttpResponse>() {
+			
+			@Override
+			public BodySubscriber<HttpResponse> apply(final ResponseInfo info) {
+				long threshold = request.getSpillThreshold();
+				if (threshold >= 0 && request.getMethod() != HttpRequestMethod.HEAD
+						&& info.headers().firstValueAsLong("Content-Length").orElse(-1) > threshold) {
+					final File file;
+					try {
+						file = HttpBodyReader.createSpillFile();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					BodySubscriber<Path> received = BodySubscribers.ofFile(file.toPath());
+					// A body that is not received completely is never mapped, so nothing else deletes its file
+					received.getBody().whenComplete(new BiConsumer<Path, Throwable>() {
+						
+						@Override
+						public void accept(Path path, Throwable error) {
+							if (error != null) { file.delete(); }
+						}
+						
+					});
+					return BodySubscribers.mapping(received, new Function<Path, HttpResponse>() {
+						
+						@Override
+						public HttpResponse apply(Path path) {
+							try {
+								HttpResponse head = toResponse(request, info.statusCode(), info.headers(), new byte[0]);
+								return HttpBodyReader.keep(head, file);
+							} catch (IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						}
+						
+					});
+				}
+				return BodySubscribers.mapping(BodySubscribers.ofByteArray(), new Function<byte[], HttpResponse>() {
+					
+					@Override
+					public HttpResponse apply(byte[] content) {
+						try {
+							HttpResponse head = toResponse(request, info.statusCode(), info.headers(), new byte[0]);
+							return HttpBodyReader.keep(head, content);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+					
+				});
+			}
+			
+		};
+	}
+	
+	/**
+	 * Converts a response of the client into a simplified HTTP response.
+	 * @param request The request the response belongs to
+	 * @param statusCode The status code of the response
+	 * @param headers The headers of the response
+	 * @param content The raw body of the response
+	 * @return The simplified HTTP response
+	 */
+	private static HttpResponse toResponse(HttpRequest request, int statusCode, HttpHeaders headers, byte[] content) {
+		String contentType = headers.firstValue("Content-Type").orElse("text/plain");
+		String expires = headers.firstValue("Expires").orElse(null);
+		return new HttpResponse(
+				request,
+				HttpStatusCode.fromCode(statusCode),
+				content,
+				new HttpContentType(contentType, HttpResponse.parseCharset(contentType)),
+				expires != null ? Math.max(0, HttpResponse.parseDate(expires)) : 0,
+				headers.map()
+		);
+	}
+	
+	/**
+	 * Keeps an eye on a body while it is being received, and expires it once it has waited for data for longer
+	 * than the read timeout. Checks the body on the executor of the transport, once per read timeout at most.
+	 */
+	private abstract class Watchdog implements Runnable {
+		
+		/** Contains the time in milliseconds to wait for data at most. */
+		private final long timeout;
+		
+		/** Contains the time at which the body started waiting for data, <code>0</code> if it is not waiting. */
+		protected volatile long waitingSince;
+		
+		/** Flag indicating that the body no longer has to be watched. */
+		protected volatile boolean stopped;
+		
+		/**
+		 * Creates a new watchdog.
+		 * @param timeout The time in milliseconds to wait for data at most
+		 */
+		private Watchdog(long timeout) {
+			this.timeout = timeout;
+		}
+		
+		/**
+		 * Checks the body again after the delay specified.
+		 * @param delay The delay in milliseconds
+		 */
+		protected final void watch(long delay) {
+			CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor).execute(this);
+		}
+		
+		@Override
+		public final void run() {
+			if (stopped) { return; }
+			long since = waitingSince;
+			long waited = since > 0 ? System.currentTimeMillis() - since : 0;
+			if (waited < timeout) {
+				watch(timeout - waited);
+				return;
+			}
+			stopped = true;
+			expire();
+		}
+		
+		/**
+		 * Gives up on the body, because it has waited for data for too long.
+		 */
+		protected abstract void expire();
+		
+	}
+	
+	/**
+	 * Receives a body into another subscriber, and fails it when no data arrives for longer than the read timeout.
+	 */
+	private final class TimedSubscriber<T> extends Watchdog implements BodySubscriber<T> {
+		
+		/** The subscriber that receives the body. */
+		private final BodySubscriber<T> delegate;
+		
+		/** The subscription of the body. */
+		private Flow.Subscription subscription;
+		
+		/**
+		 * Creates a new subscriber.
+		 * @param delegate The subscriber that receives the body
+		 * @param timeout The time in milliseconds to wait for data at most
+		 */
+		private TimedSubscriber(BodySubscriber<T> delegate, long timeout) {
+			super(timeout);
+			this.delegate = delegate;
+		}
+		
+		@Override
+		public CompletionStage<T> getBody() {
+			return delegate.getBody();
+		}
+		
+		@Override
+		public synchronized void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			waitingSince = System.currentTimeMillis();
+			delegate.onSubscribe(subscription);
+			watch(0);
+		}
+		
+		@Override
+		public synchronized void onNext(List<ByteBuffer> item) {
+			if (stopped) { return; }
+			waitingSince = System.currentTimeMillis();
+			delegate.onNext(item);
+		}
+		
+		@Override
+		public synchronized void onError(Throwable throwable) {
+			if (stopped) { return; }
+			stopped = true;
+			delegate.onError(throwable);
+		}
+		
+		@Override
+		public synchronized void onComplete() {
+			if (stopped) { return; }
+			stopped = true;
+			delegate.onComplete();
+		}
+		
+		@Override
+		protected synchronized void expire() {
+			subscription.cancel();
+			delegate.onError(new HttpTimeoutException("No data received for too long"));
+		}
+		
+	}
+	
+	/**
+	 * Reads a body that is closed when a read waits for data for longer than the read timeout.
+	 */
+	private final class TimedInputStream extends FilterInputStream {
+		
+		/** The watchdog that closes the body. */
+		private final Watchdog watchdog;
+		
+		/** Flag indicating that the body has been closed because a read took too long. */
+		private volatile boolean expired;
+		
+		/**
+		 * Creates a new body.
+		 * @param in The body to read
+		 * @param timeout The time in milliseconds a read may wait for data at most
+		 */
+		private TimedInputStream(InputStream in, long timeout) {
+			super(in);
+			this.watchdog = new Watchdog(timeout) {
+				
+				@Override
+				protected void expire() {
+					expired = true;
+					try {
+						TimedInputStream.this.in.close();
+					} catch (IOException e) {
+						// the body is gone either way
+					}
+				}
+				
+			};
+			watchdog.watch(timeout);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			watchdog.waitingSince = System.currentTimeMillis();
+			try {
+				return super.read();
+			} catch (IOException e) {
+				throw expired ? new SocketTimeoutException("Read timed out") : e;
+			} finally {
+				watchdog.waitingSince = 0;
+			}
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			watchdog.waitingSince = System.currentTimeMillis();
+			try {
+				return super.read(buffer, offset, length);
+			} catch (IOException e) {
+				throw expired ? new SocketTimeoutException("Read timed out") : e;
+			} finally {
+				watchdog.waitingSince = 0;
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			watchdog.stopped = true;
+			super.close();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,517 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Keeps connections to origins open, so they can be reused by the {@link HttpPooledTransport}.
+ * <p>Every origin (the scheme, host and port of a URL) has its own pool. A pool never holds more than the
+ * maximum amount of connections; a request that needs a connection while all of them are in use waits until
+ * one is released. Connections that have been idle for too long are closed, and connections that have been
+ * open for longer than the maximum lifetime are closed instead of being reused (so traffic moves to new
+ * servers after, for example, a DNS change).</p>
+ * <p>Expired idle connections are closed by a daemon thread that runs only while the pool holds idle
+ * connections, so their sockets do not stay open when no more requests are sent to an origin.</p>
+ * <p>All setters return the pool itself, for call chaining. The pool keeps track of how often a connection
+ * could be reused (a hit), how often a new connection had to be opened (a miss) and how long requests have
+ * waited for a connection.</p>
+ * @see HttpPooledTransport
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class HttpConnectionPool {
+	
+	/**
+	 * The maximum amount of connections to a single origin when none has been specified.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 8;
+	
+	/**
+	 * The time in milliseconds after which an idle connection is closed when none has been specified.
+	 * @since MyWebApi 1.0
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+	
+	/**
+	 * The time in milliseconds after which a connection is no longer reused when none has been specified.
+	 * @since MyWebApi 1.0
+	 */
+	public static final long DEFAULT_MAX_LIFETIME = 300000;
+	
+	/** Contains the maximum amount of connections to a single origin. */
+	private int maxConnections;
+	
+	/** Contains the time in milliseconds after which an idle connection is closed. */
+	private long idleTimeout;
+	
+	/** Contains the time in milliseconds after which a connection is no longer reused. */
+	private long maxLifetime;
+	
+	/** Contains the pool of every origin, by the origin. */
+	private HashMap<String, Origin> origins;
+	
+	/** Contains the amount of times a connection has been reused. */
+	private long hits;
+	
+	/** Contains the amount of times a new connection has been opened. */
+	private long misses;
+	
+	/** Contains the amount of times a request had to wait for a connection to be released. */
+	private long waits;
+	
+	/** Contains the total time in milliseconds that requests have waited for a connection to be released. */
+	private long waitTime;
+	
+	/** Contains the thread that closes expired idle connections, <code>null</code> if it is not running. */
+	private Thread reaper;
+	
+	/**
+	 * Creates a new, empty, pool with at most {@link #DEFAULT_MAX_CONNECTIONS} connections per origin, that
+	 * closes connections after {@link #DEFAULT_IDLE_TIMEOUT} of idle time and stops reusing them after
+	 * {@link #DEFAULT_MAX_LIFETIME}.
+	 * @since MyWebApi 1.0
+	 */
+	public HttpConnectionPool() {
+		this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+		this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		this.maxLifetime = DEFAULT_MAX_LIFETIME;
+		this.origins = new HashMap<String, Origin>();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "{HttpConnectionPool: " + hits + " hits, " + misses + " misses, " + waits + " waits ("
+				+ waitTime + " ms) }";
+	}
+	
+	/**
+	 * Sets the maximum amount of connections (idle or in use) to a single origin.
+	 * @since MyWebApi 1.0
+	 * @param maxConnections The maximum amount of connections
+	 * @return This pool for call chaining
+	 */
+	public synchronized HttpConnectionPool setMaxConnections(int maxConnections) {
+		this.maxConnections = Math.max(1, maxConnections);
+		notifyAll();
+		return this;
+	}
+	
+	/**
+	 * Sets the time after which a connection that has not been used is closed.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The time in milliseconds, <code>0</code> to never reuse connections
+	 * @return This pool for call chaining
+	 */
+	public synchronized HttpConnectionPool setIdleTimeout(long milliseconds) {
+		this.idleTimeout = milliseconds;
+		return this;
+	}
+	
+	/**
+	 * Sets the time after which a connection is no longer reused, no matter how often it is used.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The time in milliseconds since the connection was opened
+	 * @return This pool for call chaining
+	 */
+	public synchronized HttpConnectionPool setMaxLifetime(long milliseconds) {
+		this.maxLifetime = milliseconds;
+		return this;
+	}
+	
+	/**
+	 * Returns the amount of times an idle connection has been reused.
+	 * @since MyWebApi 1.0
+	 * @return The amount of pool hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the amount of times a new connection had to be opened.
+	 * @since MyWebApi 1.0
+	 * @return The amount of pool misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the amount of times a request had to wait for a connection, because the maximum amount of
+	 * connections to its origin was in use.
+	 * @since MyWebApi 1.0
+	 * @return The amount of waits
+	 */
+	public synchronized long getWaits() {
+		return waits;
+	}
+	
+	/**
+	 * Returns the total time requests have waited for a connection.
+	 * @since MyWebApi 1.0
+	 * @return The total wait time in milliseconds
+	 */
+	public synchronized long getWaitTime() {
+		return waitTime;
+	}
+	
+	/**
+	 * Returns the amount of connections (idle or in use) to the origin of a URL.
+	 * @since MyWebApi 1.0
+	 * @param url Any URL of the origin
+	 * @return The amount of open connections
+	 */
+	public synchronized int getOpenConnections(URL url) {
+		Origin origin = origins.get(getOrigin(url));
+		return origin != null ? origin.open : 0;
+	}
+	
+	/**
+	 * Returns the amount of idle connections to the origin of a URL.
+	 * @since MyWebApi 1.0
+	 * @param url Any URL of the origin
+	 * @return The amount of idle connections
+	 */
+	public synchronized int getIdleConnections(URL url) {
+		Origin origin = origins.get(getOrigin(url));
+		return origin != null ? origin.idle.size() : 0;
+	}
+	
+	/**
+	 * Closes all connections that have been idle for longer than the idle timeout, or have been open for
+	 * longer than the maximum lifetime. This also happens every time a connection is taken from or returned
+	 * to the pool, and in the background while the pool holds idle connections.
+	 * @since MyWebApi 1.0
+	 */
+	public synchronized void evictExpired() {
+		long now = System.currentTimeMillis();
+		for (Origin origin : origins.values()) { evictExpired(origin, now); }
+	}
+	
+	/**
+	 * Closes all idle connections.
+	 * @since MyWebApi 1.0
+	 */
+	public synchronized void evictAll() {
+		for (Origin origin : origins.values()) {
+			for (Connection connection : origin.idle) { connection.close(); }
+			origin.open -= origin.idle.size();
+			origin.idle.clear();
+		}
+		notifyAll();
+	}
+	
+	/**
+	 * Opens a new connection to the origin of a URL and keeps it in the pool as an idle connection, so the
+	 * first request to that origin does not have to wait for DNS, TCP and TLS. Does not count as a miss.
+	 * <p>Blocks until the connection has been made. The connection is closed after the idle timeout like any
+	 * other idle connection.</p>
+	 * @since MyWebApi 1.0
+	 * @param url Any URL of the origin
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @return <code>true</code> if a connection was opened, <code>false</code> if the origin already has the
+	 *  maximum amount of connections
+	 * @throws IOException When the connection could not be made
+	 */
+	public boolean prewarm(URL url, int connectTimeout) throws IOException {
+		String key = getOrigin(url);
+		Origin origin;
+		synchronized (this) {
+			origin = origins.get(key);
+			if (origin == null) {
+				origin = new Origin();
+				origins.put(key, origin);
+			}
+			if (origin.open >= maxConnections) { return false; }
+			origin.open += 1;
+		}
+		Connection connection;
+		try {
+			connection = new Connection(key, url, connectTimeout);
+		} catch (IOException e) {
+			synchronized (this) {
+				origin.open -= 1;
+				notifyAll();
+			}
+			throw e;
+		}
+		release(connection, true);
+		return true;
+	}
+	
+	/**
+	 * Takes an idle connection to the origin of a URL from the pool, or opens a new one if there is none.
+	 * Waits for a connection to be released if the maximum amount of connections is in use.
+	 * <p>Every connection that is acquired must be returned using {@link #release(Connection, boolean)}.</p>
+	 * @param url The URL to connect to
+	 * @param connectTimeout The time in milliseconds that waiting and connecting can each last at most,
+	 *  <code>0</code> for none
+	 * @return The connection
+	 * @throws IOException When no connection could be made in time
+	 */
+	Connection acquire(URL url, int connectTimeout) throws IOException {
+		String key = getOrigin(url);
+		Origin origin;
+		synchronized (this) {
+			long start = System.currentTimeMillis();
+			boolean waited = false;
+			while (true) {
+				origin = origins.get(key);
+				if (origin == null) {
+					origin = new Origin();
+					origins.put(key, origin);
+				}
+				long now = System.currentTimeMillis();
+				evictExpired(origin, now);
+				Connection idle = origin.idle.pollLast();
+				if (idle != null || origin.open < maxConnections) {
+					if (waited) {
+						waits += 1;
+						waitTime += now - start;
+					}
+					if (idle != null) {
+						hits += 1;
+						idle.reused = true;
+						return idle;
+					}
+					misses += 1;
+					origin.open += 1;
+					break;
+				}
+				long remaining = connectTimeout > 0 ? start + connectTimeout - now : 0;
+				if (connectTimeout > 0 && remaining <= 0) {
+					waits += 1;
+					waitTime += now - start;
+					throw new IOException("No connection to " + key + " available");
+				}
+				waited = true;
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for a connection to " + key);
+				}
+			}
+		}
+		try {
+			return new Connection(key, url, connectTimeout);
+		} catch (IOException e) {
+			synchronized (this) {
+				origin.open -= 1;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns a connection to the pool.
+	 * @param connection The connection that was acquired
+	 * @param reusable <code>true</code> if the connection can be used for another request, <code>false</code>
+	 *  if it must be closed
+	 */
+	synchronized void release(Connection connection, boolean reusable) {
+		Origin origin = origins.get(connection.origin);
+		long now = System.currentTimeMillis();
+		if (reusable && now - connection.opened < maxLifetime && idleTimeout > 0) {
+			connection.lastUsed = now;
+			origin.idle.addLast(connection);
+			if (reaper == null) { startReaper(); }
+		} else {
+			connection.close();
+			origin.open -= 1;
+		}
+		evictExpired(origin, now);
+		notifyAll();
+	}
+	
+	/**
+	 * Starts the thread that closes idle connections once they expire. It stops by itself when the pool no
+	 * longer holds any idle connection.
+	 */
+	private void startReaper() {
+		reaper = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				reap();
+			}
+			
+		}, "MyWebApi-pool-reaper");
+		reaper.setDaemon(true);
+		reaper.start();
+	}
+	
+	/**
+	 * Closes idle connections as they expire, until there are no idle connections left.
+	 */
+	private synchronized void reap() {
+		try {
+			while (true) {
+				long now = System.currentTimeMillis();
+				long next = Long.MAX_VALUE;
+				for (Origin origin : origins.values()) {
+					evictExpired(origin, now);
+					for (Connection connection : origin.idle) {
+						next = Math.min(next, Math.min(connection.lastUsed + idleTimeout,
+								connection.opened + maxLifetime));
+					}
+				}
+				if (next == Long.MAX_VALUE) { return; }
+				wait(Math.max(1, next - now));
+			}
+		} catch (InterruptedException e) {
+			// Stop reaping, idle connections are still evicted when the pool is used
+		} finally {
+			reaper = null;
+		}
+	}
+	
+	/**
+	 * Closes all idle connections of an origin that have expired.
+	 * @param origin The pool of the origin
+	 * @param now The current time
+	 */
+	private void evictExpired(Origin origin, long now) {
+		Iterator<Connection> idle = origin.idle.iterator();
+		while (idle.hasNext()) {
+			Connection connection = idle.next();
+			if (now - connection.lastUsed >= idleTimeout || now - connection.opened >= maxLifetime) {
+				connection.close();
+				idle.remove();
+				origin.open -= 1;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the origin of a URL, which identifies the pool its connections are kept in.
+	 * @param url The URL
+	 * @return The scheme, host and port of the URL
+	 */
+	private static String getOrigin(URL url) {
+		return url.getProtocol().toLowerCase(Locale.ENGLISH) + "://" + url.getHost().toLowerCase(Locale.ENGLISH)
+				+ ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+	}
+	
+	/**
+	 * The connections of a single origin.
+	 */
+	private static final class Origin {
+		
+		/** Contains the idle connections, the most recently used one last. */
+		private final ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+		
+		/** Contains the amount of connections (idle or in use). */
+		private int open;
+		
+	}
+	
+	/**
+	 * A connection to an origin.
+	 */
+	static final class Connection {
+		
+		/** The origin of this connection. */
+		final String origin;
+		
+		/** The socket of this connection. */
+		final Socket socket;
+		
+		/** Reads from the socket. */
+		final InputStream in;
+		
+		/** Writes to the socket. */
+		final OutputStream out;
+		
+		/** The time at which this connection was opened. */
+		final long opened;
+		
+		/** The time at which this connection was last returned to the pool. */
+		long lastUsed;
+		
+		/** Flag indicating that this connection has been used before. */
+		boolean reused;
+		
+		/**
+		 * Opens a new connection.
+		 * @param origin The origin of the connection
+		 * @param url Any URL of the origin
+		 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+		 * @throws IOException When the connection could not be made
+		 */
+		private Connection(String origin, URL url, int connectTimeout) throws IOException {
+			String host = url.getHost();
+			int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+			Socket plain = new Socket();
+			try {
+				plain.connect(new InetSocketAddress(host, port), connectTimeout);
+				plain.setTcpNoDelay(true);
+				if ("https".equalsIgnoreCase(url.getProtocol())) {
+					SSLSocket secure = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+							.createSocket(plain, host, port, true);
+					SSLParameters parameters = secure.getSSLParameters();
+					parameters.setEndpointIdentificationAlgorithm("HTTPS");
+					secure.setSSLParameters(parameters);
+					secure.setSoTimeout(connectTimeout);
+					secure.startHandshake();
+					this.socket = secure;
+				} else {
+					this.socket = plain;
+				}
+			} catch (IOException e) {
+				plain.close();
+				throw e;
+			}
+			this.origin = origin;
+			this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+			this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+			this.opened = System.currentTimeMillis();
+			this.lastUsed = opened;
+		}
+		
+		/**
+		 * Closes this connection, ignoring any error.
+		 */
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// the connection is gone either way
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,509 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import it.fahner.mywapi.MyRetryPolicy;
+import it.fahner.mywapi.http.types.HttpContentType;
+import it.fahner.mywapi.http.types.HttpRequestMethod;
+import it.fahner.mywapi.http.types.HttpStatusCode;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link HttpTransport} that speaks HTTP/1.1 over connections it takes from an {@link HttpConnectionPool}.
+ * <p>Unlike the {@link HttpURLConnectionTransport}, which leaves connection reuse to the platform, this
+ * transport decides itself which connections are reused: the body of every response (including error
+ * responses) is read completely, after which the connection goes back to the pool unless the origin asked to
+ * close it. A request with an idempotent method (see {@link MyRetryPolicy#isIdempotent(HttpRequestMethod)})
+ * that fails on a reused connection before any response has arrived (because the origin has closed the
+ * connection in the meantime) is sent once more on a new connection. Any other request fails, since the
+ * origin may have processed it even though it did not answer.</p>
+ * <p>Redirects to the same scheme are followed, like the {@link HttpURLConnectionTransport} does.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class HttpPooledTransport implements HttpStreamingTransport {
+	
+	/** The maximum amount of redirects that are followed for a single request. */
+	private static final int MAX_REDIRECTS = 5;
+	
+	/** The line ending that ends a chunk of a request body. */
+	private static final byte[] CRLF = { '\r', '\n' };
+	
+	/** The last (empty) chunk of a request body, which ends the body. */
+	private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+	
+	/** The pool that all connections are taken from. */
+	private final HttpConnectionPool pool;
+	
+	/**
+	 * Creates a new transport with a pool that uses the default limits.
+	 * @since MyWebApi 1.0
+	 */
+	public HttpPooledTransport() {
+		this(new HttpConnectionPool());
+	}
+	
+	/**
+	 * Creates a new transport that takes its connections from the pool specified.
+	 * @since MyWebApi 1.0
+	 * @param pool The pool to use
+	 */
+	public HttpPooledTransport(HttpConnectionPool pool) {
+		this.pool = pool;
+	}
+	
+	@Override
+	public String toString() {
+		return "{HttpPooledTransport: " + pool + " }";
+	}
+	
+	/**
+	 * Returns the pool that all connections are taken from, for example to read its metrics.
+	 * @since MyWebApi 1.0
+	 * @return The connection pool
+	 */
+	public HttpConnectionPool getPool() {
+		return pool;
+	}
+	
+	@Override
+	public HttpResponse send(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
+		HttpResponseStream stream = open(request, connectTimeout, readTimeout);
+		try {
+			// Read the body completely, so the connection can be reused
+			return HttpBodyReader.read(stream);
+		} catch (IOException e) {
+			throw new HttpRequestTimeoutException();
+		} finally {
+			stream.close();
+		}
+	}
+	
+	@Override
+	public HttpResponseStream open(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
+		URL url = request.getUrl();
+		String method = request.getMethod().name();
+		HttpBodySource body = request.getBodySource();
+		for (int redirects = 0; ; redirects += 1) {
+			HttpResponseStream stream = exchange(request, url, method, body, connectTimeout, readTimeout);
+			String location = stream.getHeader("Location");
+			int code = stream.getStatus().getCode();
+			if (location == null || redirects >= MAX_REDIRECTS || code < 301 || code > 308 || code == 304
+					|| code == 305 || code == 306) {
+				return stream;
+			}
+			URL target;
+			try {
+				target = new URL(url, location);
+			} catch (MalformedURLException e) {
+				return stream;
+			}
+			if (!target.getProtocol().equalsIgnoreCase(url.getProtocol())) { return stream; }
+			// Only 307 and 308 keep the request method and body of the original request
+			boolean keepBody = code == 307 || code == 308;
+			if (keepBody && body != null && !body.isRepeatable()) { return stream; }
+			// Read the body of the redirect, so its connection can be reused for the next request
+			try {
+				HttpBodyReader.read(stream.getInputStream(), stream.getContentLength());
+			} catch (IOException e) {
+				// the connection is closed instead of reused
+			} finally {
+				stream.close();
+			}
+			url = target;
+			if (!keepBody && !method.equals(HttpRequestMethod.HEAD.name())) {
+				method = HttpRequestMethod.GET.name();
+				body = null;
+			}
+		}
+	}
+	
+	/**
+	 * Sends a single request over a pooled connection and reads the status and headers of its response. The
+	 * connection returns to the pool once the body has been read and closed.
+	 * @param request The request to send
+	 * @param url The URL to send the request to
+	 * @param method The request method
+	 * @param body The request body, <code>null</code> if there is none
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @return The response
+	 * @throws HttpRequestTimeoutException When the request took too long, could not be sent or has been aborted
+	 */
+	private HttpResponseStream exchange(HttpRequest request, URL url, String method, HttpBodySource body,
+			int connectTimeout, int readTimeout) throws HttpRequestTimeoutException {
+		for (int attempt = 1; ; attempt += 1) {
+			final HttpConnectionPool.Connection connection;
+			try {
+				connection = pool.acquire(url, connectTimeout);
+			} catch (IOException e) {
+				throw new HttpRequestTimeoutException();
+			}
+			// Whoever sets this first owns the connection: an abort closes it, a closed body hands it back
+			final AtomicBoolean released = new AtomicBoolean();
+			request.setAbortHandler(new Runnable() {
+				
+				@Override
+				public void run() {
+					if (released.compareAndSet(false, true)) { connection.close(); }
+				}
+				
+			});
+			boolean opened = false;
+			boolean answered = false;
+			try {
+				connection.socket.setSoTimeout(readTimeout);
+				long bodyLength = body != null ? body.getLength() : 0;
+				writeHead(connection, url, method, request.getContentType(), bodyLength);
+				if (body != null) {
+					BodyOutputStream out = new BodyOutputStream(connection.out, bodyLength);
+					body.writeTo(out);
+					out.finish();
+				}
+				connection.out.flush();
+				
+				// Read the status line and headers, skipping any informational (1xx) response
+				String statusLine;
+				Map<String, List<String>> headers;
+				int code;
+				do {
+					statusLine = HttpBodyReader.readLine(connection.in);
+					if (statusLine == null) { throw new EOFException("Connection closed by origin"); }
+					answered = true;
+					String[] parts = statusLine.split(" ", 3);
+					if (parts.length < 2) { throw new IOException("Malformed status line: " + statusLine); }
+					code = Integer.parseInt(parts[1].trim());
+					headers = readHeaders(connection.in);
+				} while (code >= 100 && code < 200);
+				
+				// Find out where the body ends, so the connection can be reused after it
+				boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+						&& !"close".equalsIgnoreCase(getFirst(headers, "connection"));
+				String length = getFirst(headers, "content-length");
+				Body content;
+				if (method.equals(HttpRequestMethod.HEAD.name()) || code == 204 || code == 304) {
+					content = new Body(pool, connection, released, false, 0, keepAlive);
+				} else if ("chunked".equalsIgnoreCase(getFirst(headers, "transfer-encoding"))) {
+					content = new Body(pool, connection, released, true, 0, keepAlive);
+				} else if (length != null) {
+					content = new Body(pool, connection, released, false, Long.parseLong(length.trim()), keepAlive);
+				} else {
+					content = new Body(pool, connection, released, false, -1, false);
+				}
+				
+				// Build the response and return it
+				String contentType = getFirst(headers, "content-type");
+				if (contentType == null) { contentType = "text/plain"; }
+				String expires = getFirst(headers, "expires");
+				HttpResponse head = new HttpResponse(
+						request,
+						HttpStatusCode.fromCode(code),
+						new byte[0],
+						new HttpContentType(contentType, HttpResponse.parseCharset(contentType)),
+						expires != null ? Math.max(0, HttpResponse.parseDate(expires)) : 0,
+						headers
+				);
+				opened = true;
+				return HttpBodyReader.open(head, content, content.chunked ? -1 : content.remaining);
+			} catch (IOException e) {
+				if (request.isAborted()) { throw new HttpRequestTimeoutException(); }
+				// The origin may have closed a reused connection while it was idle, try a fresh one if sending the
+				// request twice cannot apply it twice
+				if (connection.reused && !answered && attempt == 1 && !(e instanceof SocketTimeoutException)
+						&& MyRetryPolicy.isIdempotent(HttpRequestMethod.valueOf(method))
+						&& (body == null || body.isRepeatable())) {
+					continue;
+				}
+				throw new HttpRequestTimeoutException();
+			} catch (NumberFormatException e) {
+				throw new HttpRequestTimeoutException();
+			} finally {
+				if (!opened) {
+					released.set(true);
+					request.setAbortHandler(null);
+					pool.release(connection, false);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes the request line and headers of a request.
+	 * @param connection The connection to write to
+	 * @param url The URL of the request
+	 * @param method The request method
+	 * @param contentType The content type of the request body
+	 * @param contentLength The length of the request body in bytes, <code>-1</code> to send it in chunks
+	 * @throws IOException When the head could not be written
+	 */
+	private static void writeHead(HttpConnectionPool.Connection connection, URL url, String method,
+			String contentType, long contentLength) throws IOException {
+		String path = url.getFile().length() > 0 ? url.getFile() : "/";
+		StringBuilder head = new StringBuilder(256);
+		head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+		head.append("Host: ").append(url.getHost());
+		if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) { head.append(':').append(url.getPort()); }
+		head.append("\r\n");
+		head.append("Accept-Charset: ").append(HttpRequest.CHARSET).append("\r\n");
+		head.append("Accept-Encoding: ").append(HttpBodyReader.ACCEPT_ENCODING).append("\r\n");
+		head.append("Content-Type: ").append(contentType).append("\r\n");
+		if (contentLength >= 0) {
+			head.append("Content-Length: ").append(contentLength).append("\r\n");
+		} else {
+			head.append("Transfer-Encoding: chunked\r\n");
+		}
+		head.append("Connection: keep-alive\r\n");
+		head.append("\r\n");
+		connection.out.write(head.toString().getBytes(Charset.forName("ISO-8859-1")));
+	}
+	
+	/**
+	 * Reads the header lines of a response, up to and including the empty line that ends them.
+	 * @param in The stream to read from
+	 * @return The headers, by their name in lower case
+	 * @throws IOException When the headers could not be read
+	 */
+	private static Map<String, List<String>> readHeaders(InputStream in) throws IOException {
+		Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		String line;
+		while ((line = HttpBodyReader.readLine(in)) != null && line.length() > 0) {
+			int colon = line.indexOf(':');
+			if (colon <= 0) { continue; }
+			String name = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+			List<String> values = headers.get(name);
+			if (values == null) {
+				values = new ArrayList<String>(1);
+				headers.put(name, values);
+			}
+			values.add(line.substring(colon + 1).trim());
+		}
+		if (line == null) { throw new EOFException("Connection closed while reading headers"); }
+		return headers;
+	}
+	
+	/**
+	 * Returns the first value of a header.
+	 * @param headers The headers, by their name in lower case
+	 * @param name The name of the header in lower case
+	 * @return The value, <code>null</code> if there is no such header
+	 */
+	private static String getFirst(Map<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values != null && values.size() > 0 ? values.get(0) : null;
+	}
+	
+	/**
+	 * The body of a response, read from a pooled connection. Returns the connection to the pool when it is
+	 * closed, or closes the connection if the body has not been read to the end.
+	 */
+	private static final class Body extends InputStream {
+		
+		/** The pool the connection belongs to. */
+		private final HttpConnectionPool pool;
+		
+		/** The connection the body is read from. */
+		private final HttpConnectionPool.Connection connection;
+		
+		/** Flag shared with the abort handler, set by whichever of the two gives up the connection first. */
+		private final AtomicBoolean released;
+		
+		/** Flag indicating that the body is in the chunked transfer encoding. */
+		private final boolean chunked;
+		
+		/** Flag indicating that the connection can be reused once the body has been read to the end. */
+		private final boolean keepAlive;
+		
+		/** Contains the amount of bytes left in the body (or current chunk), <code>-1</code> if unknown. */
+		private long remaining;
+		
+		/** Flag indicating that at least one chunk has been read. */
+		private boolean chunkRead;
+		
+		/** Flag indicating that the body has been read to the end. */
+		private boolean ended;
+		
+		/** Flag indicating that the body has been closed. */
+		private boolean closed;
+		
+		/**
+		 * Creates a new body.
+		 * @param pool The pool the connection belongs to
+		 * @param connection The connection to read from
+		 * @param released The flag shared with the abort handler of the request
+		 * @param chunked <code>true</code> if the body is in the chunked transfer encoding
+		 * @param length The length of the body, <code>-1</code> if the body ends when the connection closes
+		 * @param keepAlive <code>true</code> if the connection can be reused after the body
+		 */
+		private Body(HttpConnectionPool pool, HttpConnectionPool.Connection connection, AtomicBoolean released,
+				boolean chunked, long length, boolean keepAlive) {
+			this.pool = pool;
+			this.connection = connection;
+			this.released = released;
+			this.chunked = chunked;
+			this.remaining = length;
+			this.keepAlive = keepAlive;
+			this.ended = !chunked && length == 0;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+		}
+		
+		@Override
+		public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+			if (closed) { throw new IOException("Stream closed"); }
+			if (ended) { return -1; }
+			if (length == 0) { return 0; }
+			if (remaining == 0) {
+				if (!chunked || !nextChunk()) {
+					ended = true;
+					return -1;
+				}
+			}
+			int n = connection.in.read(buffer, offset, remaining > 0 ? (int) Math.min(length, remaining) : length);
+			if (n == -1) {
+				if (remaining > 0) { throw new EOFException("Connection closed before the end of the body"); }
+				ended = true;
+				return -1;
+			}
+			if (remaining > 0) { remaining -= n; }
+			if (remaining == 0 && !chunked) { ended = true; }
+			return n;
+		}
+		
+		@Override
+		public synchronized int available() throws IOException {
+			if (closed || ended) { return 0; }
+			int available = connection.in.available();
+			return remaining >= 0 ? (int) Math.min(available, remaining) : available;
+		}
+		
+		@Override
+		public void close() {
+			synchronized (this) {
+				if (closed) { return; }
+				closed = true;
+			}
+			// An abort that comes in after this point must not close a connection that serves another request
+			boolean reusable = released.compareAndSet(false, true) && ended && keepAlive;
+			pool.release(connection, reusable);
+		}
+		
+		/**
+		 * Reads the size of the next chunk.
+		 * @return <code>true</code> if there is another chunk, <code>false</code> if the last chunk has been read
+		 * @throws IOException When the chunk size could not be read
+		 */
+		private boolean nextChunk() throws IOException {
+			if (chunkRead) { HttpBodyReader.readLine(connection.in); }
+			chunkRead = true;
+			String line = HttpBodyReader.readLine(connection.in);
+			if (line == null) { throw new EOFException("Connection closed before the last chunk"); }
+			int extension = line.indexOf(';');
+			try {
+				remaining = Long.parseLong((extension >= 0 ? line.substring(0, extension) : line).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed chunk size: " + line);
+			}
+			if (remaining > 0) { return true; }
+			// Skip the trailer
+			String trailer;
+			while ((trailer = HttpBodyReader.readLine(connection.in)) != null && trailer.length() > 0) { continue; }
+			return false;
+		}
+		
+	}
+	
+	/**
+	 * Writes the body of a request to a pooled connection, either in chunks or as a body of fixed length. Is never
+	 * closed, so the connection can be reused.
+	 */
+	private static final class BodyOutputStream extends OutputStream {
+		
+		/** Contains the stream of the connection. */
+		private final OutputStream out;
+		
+		/** Flag indicating that the body is sent in chunks. */
+		private final boolean chunked;
+		
+		/** Contains the amount of bytes of a body of fixed length that still have to be written. */
+		private long remaining;
+		
+		/**
+		 * Creates a new body stream.
+		 * @param out The stream of the connection
+		 * @param length The length of the body in bytes, <code>-1</code> to send it in chunks
+		 */
+		BodyOutputStream(OutputStream out, long length) {
+			this.out = out;
+			this.chunked = length < 0;
+			this.remaining = length;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int offset, int length) throws IOException {
+			if (length == 0) { return; }
+			if (chunked) {
+				out.write((Integer.toHexString(length) + "\r\n").getBytes(Charset.forName("ISO-8859-1")));
+				out.write(b, offset, length);
+				out.write(CRLF);
+				return;
+			}
+			if (length > remaining) { throw new IOException("Request body is longer than its specified length"); }
+			out.write(b, offset, length);
+			remaining -= length;
+		}
+		
+		/**
+		 * Ends the body, writing the last chunk if it is sent in chunks.
+		 * @throws IOException When the last chunk could not be written, or the body is shorter than its
+		 *  specified length
+		 */
+		void finish() throws IOException {
+			if (chunked) {
+				out.write(LAST_CHUNK);
+			} else if (remaining > 0) {
+				throw new IOException("Request body is " + remaining + " bytes shorter than its specified length");
+			}
+		}
+		
+	}
+	
+}
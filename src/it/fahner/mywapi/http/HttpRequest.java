@@ -16,21 +16,22 @@
 
 package it.fahner.mywapi.http;
 
-import it.fahner.mywapi.http.types.HttpContentType;
 import it.fahner.mywapi.http.types.HttpRequestMethod;
-import it.fahner.mywapi.http.types.HttpStatusCode;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 /**
  * Represents a simplified HTTP request, that can be resolved.
+ * <p>The request only describes what to send. An {@link HttpTransport} does the actual sending, by default the
+ * {@link HttpURLConnectionTransport}.</p>
  * @since MyWebApi 1.0
  * @author C. Fahner <info@fahnerit.com>
  */
@@ -48,18 +49,42 @@ public final class HttpRequest {
 	 */
 	public static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
 	
-	/** The internal connection used to resolve this request. */
-	private HttpURLConnection connection;
+	/** The transport that is used when no transport is specified. */
+	private static final HttpTransport DEFAULT_TRANSPORT = new HttpURLConnectionTransport();
+	
+	/** Contains the last number that was given to a request with a body source, to tell such requests apart. */
+	private static final AtomicLong SOURCE_SEQUENCE = new AtomicLong();
+	
+	/** The URL of the remote resource. */
+	private URL url;
+	
+	/** The request method to use. */
+	private HttpRequestMethod method;
 	
 	/** Stores the request body. */
 	private String body;
 	
+	/** Contains the source of the request body, <code>null</code> if the body is a string. */
+	private HttpBodySource bodySource;
+	
+	/** Contains the body size in bytes above which the response body is kept in a temporary file. */
+	private long spillThreshold;
+	
 	/** The timestamp of when this request was created. */
 	private long created;
 	
 	/** Contains the response. */
 	private HttpResponse response;
 	
+	/** Flag indicating that this request has been aborted. */
+	private boolean aborted;
+	
+	/** Aborts the exchange of the transport that is sending this request, <code>null</code> if there is none. */
+	private Runnable abortHandler;
+	
+	/** Contains the resource identity of this request, <code>null</code> until it is first needed. */
+	private String identity;
+	
 	/**
 	 * Creates a new (unresolved) HTTP-GET request.
 	 * @param url The URL that points to the remote resource to retrieve
@@ -76,37 +101,46 @@ public final class HttpRequest {
 	 */
 	public HttpRequest(String url, HttpRequestMethod method) {
 		this.body = "";
+		this.spillThreshold = -1;
 		this.created = System.currentTimeMillis();
+		this.method = method;
 		try {
-			this.connection = (HttpURLConnection) new URL(url).openConnection();
-			// Set the connection's request properties
-			connection.setRequestProperty("Accept-Charset", CHARSET);
-			connection.setRequestProperty("Content-Type", CONTENT_TYPE + "; charset="
-					+ CHARSET.toLowerCase(Locale.ENGLISH));
-			connection.setRequestMethod(method.name());
-			connection.setDoInput(true); // get data FROM the URL, should always be TRUE
-			HttpURLConnection.setFollowRedirects(true);
-			// we will implement our own caching since this is not reliable on every platform
-			connection.setUseCaches(false);
-		} catch (IOException e) {
+			this.url = new URL(url);
+		} catch (MalformedURLException e) {
 			throw new RuntimeException("HttpRequest: " + e.getMessage());
 		}
 	}
 	
 	@Override
 	public String toString() {
-		return "{HttpRequest => URL('" + connection.getURL().toString() + "') }";
+		return "{HttpRequest => URL('" + url.toString() + "') }";
 	}
 	
 	/**
 	 * Returns a string that uniquely represents the remote resource being resolved by this HTTP request.
 	 * <p>Requests with the same resource identity value are likely the same requests.</p>
-	 * <p>Only the hashCode of the body is used, since the body may contain large amounts of binary data.</p>
+	 * <p>A string body is represented by its SHA-256 digest, since the body may contain large amounts of data. So
+	 * is a body source that holds its body in memory (see {@link HttpBodySource#getContent()}), together with its
+	 * content type. Any other body source is never read for this, so a request with such a body source has an
+	 * identity of its own that no other request shares.</p>
 	 * @since MyWebApi 1.0
 	 * @return A string that uniquely identifies the remote resource
 	 */
 	public String getResourceIdentity() {
-		return connection.getRequestMethod() + connection.getURL().toExternalForm() + System.identityHashCode(body);
+		String result = identity;
+		if (result == null) {
+			result = method.name() + url.toExternalForm();
+			byte[] content = bodySource != null ? bodySource.getContent() : null;
+			if (content != null) {
+				result += "@" + digest(content) + ";" + bodySource.getContentType();
+			} else if (bodySource != null) {
+				result += "#" + SOURCE_SEQUENCE.incrementAndGet();
+			} else if (body != null && !body.isEmpty()) {
+				result += "@" + digest(body);
+			}
+			identity = result;
+		}
+		return result;
 	}
 	
 	/**
@@ -117,17 +151,92 @@ public final class HttpRequest {
 	public void setBody(String body) {
 		ensureUnresolved();
 		this.body = body;
+		this.bodySource = null;
+		this.identity = null;
+	}
+	
+	/**
+	 * Sets the body of this HTTP request to a source that is written to the connection while the request is
+	 * sent, instead of a string.
+	 * @since MyWebApi 1.0
+	 * @param source The source of the body of this HTTP request
+	 */
+	public void setBody(HttpBodySource source) {
+		ensureUnresolved();
+		this.body = "";
+		this.bodySource = source;
+		this.identity = null;
+	}
+	
+	/**
+	 * Sets the body size above which the response body is written to a temporary file and mapped into memory,
+	 * instead of being kept on the Java heap (see {@link HttpResponse#getBodyBuffer()}).
+	 * <p>Is set to <code>-1</code> (never) by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param bytes The size in bytes, <code>-1</code> to always keep the body in memory
+	 */
+	public void setSpillThreshold(long bytes) {
+		ensureUnresolved();
+		this.spillThreshold = bytes;
+	}
+	
+	/**
+	 * Returns the body size above which the response body is kept in a temporary file.
+	 * @since MyWebApi 1.0
+	 * @return The size in bytes, <code>-1</code> if the body is always kept in memory
+	 */
+	public long getSpillThreshold() {
+		return spillThreshold;
+	}
+	
+	/**
+	 * Returns the URL this request points to.
+	 * @since MyWebApi 1.0
+	 * @return The URL of the remote resource
+	 */
+	public URL getUrl() {
+		return url;
+	}
+	
+	/**
+	 * Returns the request method of this request.
+	 * @since MyWebApi 1.0
+	 * @return The {@link HttpRequestMethod} to use
+	 */
+	public HttpRequestMethod getMethod() {
+		return method;
 	}
 	
 	/**
 	 * Returns the current body set for this request.
 	 * @since MyWebApi 1.0
-	 * @return The current body (if set), <code>null</code> otherwise
+	 * @return The current body (if set), an empty string if the body is set as a {@link HttpBodySource}
 	 */
 	public String getBody() {
 		return this.body;
 	}
 	
+	/**
+	 * Returns the content type of the body of this request.
+	 * @since MyWebApi 1.0
+	 * @return The value of the <code>'Content-Type'</code> header
+	 */
+	public String getContentType() {
+		String type = bodySource != null ? bodySource.getContentType() : null;
+		return type != null ? type : CONTENT_TYPE + "; charset=" + CHARSET.toLowerCase(Locale.ENGLISH);
+	}
+	
+	/**
+	 * Returns the source to send the body of this request from. A body that was set as a string is sent as
+	 * {@link #CONTENT_TYPE} in {@link #CHARSET}.
+	 * @since MyWebApi 1.0
+	 * @return The source of the body, <code>null</code> if this request has no body
+	 */
+	public HttpBodySource getBodySource() {
+		if (bodySource != null) { return bodySource; }
+		return body.length() > 0 ? HttpBodySource.of(body, null) : null;
+	}
+	
 	/**
 	 * Returns the time when this request was created.
 	 * @since MyWebApi 1.0
@@ -138,58 +247,148 @@ public final class HttpRequest {
 	}
 	
 	/**
-	 * Tries to retrieve the remote resource that this HTTP request points to.
+	 * Tries to retrieve the remote resource that this HTTP request points to, using the same value for the
+	 * connect timeout and the read timeout.
 	 * <p>Note: This is a synchronous operation (and blocks the current thread).</p>
 	 * <p>This object will become immutable after it's response has been retrieved.</p>
 	 * @since MyWebApi 1.0
-	 * @param timeout The time in milliseconds this method can last at most
+	 * @param timeout The time in milliseconds that connecting, and waiting for data, can last at most
 	 * @throws HttpRequestTimeoutException When the request took longer than the timeout value specified
 	 * @return The simplified HTTP response to this HTTP request
 	 */
 	public HttpResponse getResponse(int timeout) throws HttpRequestTimeoutException {
+		return getResponse(timeout, timeout);
+	}
+	
+	/**
+	 * Tries to retrieve the remote resource that this HTTP request points to, using the default transport.
+	 * <p>Note: This is a synchronous operation (and blocks the current thread).</p>
+	 * <p>The read timeout only limits the time between two pieces of data, use {@link #abort()} to limit the
+	 * total time.</p>
+	 * @since MyWebApi 1.0
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @throws HttpRequestTimeoutException When the request took longer than a timeout value specified, or has
+	 *  been aborted
+	 * @return The simplified HTTP response to this HTTP request
+	 */
+	public HttpResponse getResponse(int connectTimeout, int readTimeout) throws HttpRequestTimeoutException {
+		return getResponse(DEFAULT_TRANSPORT, connectTimeout, readTimeout);
+	}
+	
+	/**
+	 * Tries to retrieve the remote resource that this HTTP request points to.
+	 * <p>Note: This is a synchronous operation (and blocks the current thread).</p>
+	 * @since MyWebApi 1.0
+	 * @param transport The transport that sends the request
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @throws HttpRequestTimeoutException When the request took longer than a timeout value specified, or has
+	 *  been aborted
+	 * @return The simplified HTTP response to this HTTP request
+	 */
+	public HttpResponse getResponse(HttpTransport transport, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
 		if (response != null) { return response; }
-		
-		connection.setRequestProperty("Content-Length", "" + Integer.toString(body.getBytes().length));
-		connection.setConnectTimeout(timeout);
-		try {
-			// Send the request body (if a body content was specified)
-			if (body.length() > 0) {
-				connection.setDoOutput(true); // send data TO the URL
-				DataOutputStream writer = new DataOutputStream(connection.getOutputStream());
-				writer.writeBytes(body);
-				writer.flush();
-				writer.close();
-			}
+		if (isAborted()) { throw new HttpRequestTimeoutException(); }
+		response = transport.send(this, connectTimeout, readTimeout);
+		return response;
+	}
+	
+	/**
+	 * Tries to retrieve the remote resource that this HTTP request points to, handing over its body as a
+	 * stream. Transports that do not implement {@link HttpStreamingTransport} read the body completely, and
+	 * return a stream over the bytes that have been read.
+	 * <p>Note: This is a synchronous operation (and blocks the current thread until the headers have arrived).</p>
+	 * @since MyWebApi 1.0
+	 * @param transport The transport that sends the request
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @throws HttpRequestTimeoutException When the request took longer than a timeout value specified, or has
+	 *  been aborted
+	 * @return The response, which must be closed
+	 */
+	public HttpResponseStream openStream(HttpTransport transport, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
+		if (isAborted()) { throw new HttpRequestTimeoutException(); }
+		if (transport instanceof HttpStreamingTransport) {
+			return ((HttpStreamingTransport) transport).open(this, connectTimeout, readTimeout);
+		}
+		return HttpResponseStream.of(getResponse(transport, connectTimeout, readTimeout));
+	}
+	
+	/**
+	 * Starts retrieving the remote resource that this HTTP request points to, without blocking the current
+	 * thread.
+	 * @since MyWebApi 1.0
+	 * @param transport The transport that sends the request
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @return The future that completes with the simplified HTTP response to this HTTP request, or completes
+	 *  exceptionally with an {@link HttpRequestTimeoutException}
+	 */
+	public CompletableFuture<HttpResponse> getResponseAsync(HttpAsyncTransport transport, int connectTimeout,
+			int readTimeout) {
+		if (response != null) { return CompletableFuture.completedFuture(response); }
+		final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+		if (isAborted()) {
+			future.completeExceptionally(new HttpRequestTimeoutException());
+			return future;
+		}
+		transport.sendAsync(this, connectTimeout, readTimeout).whenComplete(new BiConsumer<HttpResponse, Throwable>() {
 			
-			// Get response
-			connection.connect(); // call connect just to be sure, will be ignored if already called anyways
-			String responseEnctype = connection.getContentEncoding();
-			if (responseEnctype == null) { responseEnctype = CHARSET; }
-			BufferedReader reader = new BufferedReader(
-				new InputStreamReader(connection.getInputStream(), responseEnctype), 8192
-			);
-			String line;
-			StringBuilder responseBody = connection.getContentLength() > 0
-					? new StringBuilder(connection.getContentLength()) : new StringBuilder();
-			while ((line = reader.readLine()) != null) {
-				responseBody.append(line);
-				responseBody.append('\r').append('\n');
+			@Override
+			public void accept(HttpResponse result, Throwable error) {
+				if (error == null) {
+					response = result;
+					future.complete(result);
+				} else {
+					future.completeExceptionally(error);
+				}
 			}
-			reader.close();
 			
-			// Build the response and return it
-			return new HttpResponse(
-					this,
-					HttpStatusCode.fromCode(connection.getResponseCode()),
-					responseBody.toString(),
-					new HttpContentType(
-							connection.getContentType() != null ? connection.getContentType() : "text/plain",
-							responseEnctype
-					), connection.getExpiration()
-			);
-		} catch (FileNotFoundException fnfe) {
-			return new HttpResponse(this, HttpStatusCode.NotFound);
-		} catch (IOException ioe) { throw new HttpRequestTimeoutException(); }
+		});
+		return future;
+	}
+	
+	/**
+	 * Aborts this request. A thread that is blocked in {@link #getResponse(int)} is released with an
+	 * {@link HttpRequestTimeoutException}, and a request that has not been sent yet will never be sent.
+	 * <p>Can be called from any thread.</p>
+	 * @since MyWebApi 1.0
+	 */
+	public void abort() {
+		Runnable handler;
+		synchronized (this) {
+			aborted = true;
+			handler = abortHandler;
+		}
+		if (handler != null) { handler.run(); }
+	}
+	
+	/**
+	 * Checks if this HTTP request has been aborted.
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if {@link #abort()} has been called, <code>false</code> otherwise
+	 */
+	public synchronized boolean isAborted() {
+		return aborted;
+	}
+	
+	/**
+	 * Sets the callback that aborts the exchange of the transport that is sending this request. It runs right
+	 * away if this request has already been aborted.
+	 * <p>For use by {@link HttpTransport} implementations.</p>
+	 * @since MyWebApi 1.0
+	 * @param handler The callback that aborts the exchange, <code>null</code> once the exchange has finished
+	 */
+	public void setAbortHandler(Runnable handler) {
+		boolean abortNow;
+		synchronized (this) {
+			abortHandler = handler;
+			abortNow = aborted;
+		}
+		if (abortNow && handler != null) { handler.run(); }
 	}
 	
 	/**
@@ -210,4 +409,36 @@ public final class HttpRequest {
 		if (isResolved()) { throw new HttpConsistencyException(); }
 	}
 	
+	/**
+	 * Calculates the SHA-256 digest of a body.
+	 * @param body The body
+	 * @return The digest as a hexadecimal string
+	 */
+	private static String digest(String body) {
+		try {
+			return digest(body.getBytes(CHARSET));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Calculates the SHA-256 digest of a body.
+	 * @param body The body
+	 * @return The digest as a hexadecimal string
+	 */
+	private static String digest(byte[] body) {
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(body);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+	
 }
@@ -18,9 +18,36 @@ package it.fahner.mywapi.http;
 
 import it.fahner.mywapi.http.types.HttpContentType;
 import it.fahner.mywapi.http.types.HttpStatusCode;
+import it.fahner.mywapi.json.JsonDocument;
+import it.fahner.mywapi.json.JsonParseException;
+import it.fahner.mywapi.json.JsonPullParser;
+import it.fahner.mywapi.json.JsonQuery;
+import it.fahner.mywapi.json.JsonQueryResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * Represents a simplified HTTP response. Instances of this class are immutable.
+ * <p>The body is kept as the raw bytes that were received. It is only decoded into a string (using the charset of
+ * the content type) when {@link #getBody()} is first called.</p>
+ * <p>A body that is larger than the spill threshold of its request (see {@link HttpRequest#setSpillThreshold(long)})
+ * is kept in a temporary file instead, which is mapped into memory outside of the Java heap. Read such a body with
+ * {@link #getBodyBuffer()}, and call {@link #release()} once it is no longer needed.</p>
  * @since MyWebApi 1.0
  * @author C. Fahner <info@fahnerit.com>
  */
@@ -32,8 +59,23 @@ public final class HttpResponse {
 	/** Contains the HTTP status code of the response. */
 	private HttpStatusCode status;
 	
-	/** Contains the raw response body. */
-	private String body;
+	/** Contains the raw response body, <code>null</code> until it is first needed if the body was given as a string. */
+	private byte[] content;
+	
+	/** Contains the temporary file that holds the raw response body, <code>null</code> if it is kept in memory. */
+	private File file;
+	
+	/** Contains the raw response body mapped from its temporary file, <code>null</code> if it is kept in memory. */
+	private MappedByteBuffer mapped;
+	
+	/** Flag indicating that the raw response body has been compressed, to keep it in a cache. */
+	private boolean compressed;
+	
+	/** Contains the decoded response body, <code>null</code> until it is first needed. */
+	private volatile String body;
+	
+	/** Contains the indexed JSON document of the response body, <code>null</code> until it is first needed. */
+	private volatile JsonDocument json;
 	
 	/** Contains the content type of this response. */
 	private HttpContentType contentType;
@@ -44,6 +86,25 @@ public final class HttpResponse {
 	/** Contains the timestamp at which this response was instantiated. */
 	private long created;
 	
+	/** Contains all response headers, by their name in lower case. */
+	private Map<String, List<String>> headers;
+	
+	/**
+	 * Creates a new simple HTTP response representation with a body of raw bytes, which is decoded using the
+	 * charset of the content type when it is first needed as a string.
+	 * @since MyWebApi 1.0
+	 * @param request The request that was made to get this response
+	 * @param status The status code of this response
+	 * @param content The raw response body, which must not be changed afterwards
+	 * @param contentType The HTTP content type of this response
+	 * @param expires The timestamp for when this response is supposed to expire (in millis since 1970)
+	 * @param headers The response headers (the key <code>null</code> is ignored)
+	 */
+	public HttpResponse(HttpRequest request, HttpStatusCode status, byte[] content, HttpContentType contentType,
+			long expires, Map<String, List<String>> headers) {
+		this(request, status, content, null, contentType, expires, headers);
+	}
+	
 	/**
 	 * Creates a new simple HTTP response representation.
 	 * @since MyWebApi 1.0
@@ -52,14 +113,76 @@ public final class HttpResponse {
 	 * @param body The response body
 	 * @param contentType The HTTP content type of this response
 	 * @param expires The timestamp for when this response is supposed to expire (in millis since 1970)
+	 * @param headers The response headers (the key <code>null</code> is ignored)
 	 */
-	public HttpResponse(HttpRequest request, HttpStatusCode status, String body, HttpContentType contentType, long expires) {
+	public HttpResponse(HttpRequest request, HttpStatusCode status, String body, HttpContentType contentType,
+			long expires, Map<String, List<String>> headers) {
+		this(request, status, null, body, contentType, expires, headers);
+	}
+	
+	/**
+	 * Creates a complete response from the head of a streamed response and its body.
+	 * @since MyWebApi 1.0
+	 * @param head The response without its body
+	 * @param content The raw response body
+	 */
+	public HttpResponse(HttpResponse head, byte[] content) {
+		this(head.request, head.status, content, null, head.contentType, head.expires, head.headers);
+	}
+	
+	/**
+	 * Creates a complete response from the head of a streamed response and a body that has been written to a
+	 * temporary file.
+	 * @param head The response without its body
+	 * @param file The temporary file that holds the raw response body
+	 * @param mapped The contents of the file, mapped into memory
+	 */
+	HttpResponse(HttpResponse head, File file, MappedByteBuffer mapped) {
+		this(head.request, head.status, null, null, head.contentType, head.expires, head.headers);
+		this.file = file;
+		this.mapped = mapped;
+	}
+	
+	/**
+	 * Creates a new simple HTTP response representation from either a raw or a decoded body.
+	 * @param request The request that was made to get this response
+	 * @param status The status code of this response
+	 * @param content The raw response body, <code>null</code> if the decoded body is given
+	 * @param body The decoded response body, <code>null</code> if the raw body is given
+	 * @param contentType The HTTP content type of this response
+	 * @param expires The timestamp for when this response is supposed to expire (in millis since 1970)
+	 * @param headers The response headers (the key <code>null</code> is ignored)
+	 */
+	private HttpResponse(HttpRequest request, HttpStatusCode status, byte[] content, String body,
+			HttpContentType contentType, long expires, Map<String, List<String>> headers) {
 		this.request = request;
 		this.status = status;
+		this.content = content;
 		this.body = body;
 		this.contentType = contentType;
 		this.expires = expires;
 		this.created = System.currentTimeMillis();
+		this.headers = new HashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if (header.getKey() == null) { continue; }
+			this.headers.put(header.getKey().toLowerCase(Locale.ENGLISH), header.getValue());
+		}
+	}
+	
+	/**
+	 * Creates a copy of a response with another raw body, which keeps the time of creation of the original.
+	 * @param origin The response to copy
+	 * @param content The raw response body of the copy
+	 * @param compressed <code>true</code> if the raw response body of the copy has been compressed
+	 */
+	private HttpResponse(HttpResponse origin, byte[] content, boolean compressed) {
+		this(origin.request, origin.status, content, null, origin.contentType, origin.expires, origin.headers);
+		this.created = origin.created;
+		this.compressed = compressed;
+	}
+	
+	public HttpResponse(HttpRequest request, HttpStatusCode status, String body, HttpContentType contentType, long expires) {
+		this(request, status, body, contentType, expires, Collections.<String, List<String>>emptyMap());
 	}
 	
 	public HttpResponse(HttpRequest request, HttpStatusCode status, String body, HttpContentType contentType) {
@@ -90,12 +213,236 @@ public final class HttpResponse {
 	}
 	
 	/**
-	 * Returns the response body.
+	 * Returns the response body, decoded using the charset of its content type.
+	 * <p>The body is decoded the first time this is called, and kept for later calls. Note that this brings a body
+	 * that is kept in a temporary file onto the Java heap.</p>
 	 * @since MyWebApi 1.0
 	 * @return The response body
 	 */
 	public String getBody() {
-		return body;
+		String decoded = body;
+		if (decoded == null) {
+			decoded = mapped != null
+					? toCharset(contentType.getCharset()).decode(mapped.duplicate()).toString()
+					: new String(content, toCharset(contentType.getCharset()));
+			body = decoded;
+		}
+		return decoded;
+	}
+	
+	/**
+	 * Returns the raw response body as a read-only buffer, without copying it. For a body that is kept in a
+	 * temporary file, this is a buffer over the memory mapped file.
+	 * @since MyWebApi 1.0
+	 * @return The raw response body
+	 */
+	public ByteBuffer getBodyBuffer() {
+		if (mapped != null) { return mapped.asReadOnlyBuffer(); }
+		return ByteBuffer.wrap(getContent()).asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Returns a copy of the raw response body. Use {@link #getBodyBuffer()} to read the body without copying it.
+	 * @since MyWebApi 1.0
+	 * @return The raw response body
+	 */
+	public byte[] getBodyBytes() {
+		if (mapped != null) {
+			byte[] copy = new byte[mapped.capacity()];
+			mapped.duplicate().get(copy);
+			return copy;
+		}
+		return getContent().clone();
+	}
+	
+	/**
+	 * Returns the length of the raw response body.
+	 * @since MyWebApi 1.0
+	 * @return The length in bytes
+	 */
+	public int getBodyLength() {
+		if (mapped != null) { return mapped.capacity(); }
+		return getContent().length;
+	}
+	
+	/**
+	 * Returns a parser that reads the response body as a JSON document, straight from its raw bytes and without
+	 * decoding it into a string first. A body that is kept in a temporary file is parsed from its mapped buffer.
+	 * <p>JSON is always encoded in UTF-8. Only a body that was decoded from another charset is encoded as UTF-8
+	 * before it is parsed.</p>
+	 * @since MyWebApi 1.0
+	 * @return A new parser, positioned before the first token
+	 */
+	public JsonPullParser getJsonParser() {
+		return new JsonPullParser(getJsonBuffer());
+	}
+	
+	/**
+	 * Returns the response body as a JSON document of which only the structure has been read, so single values
+	 * can be read from it without decoding the entire body.
+	 * <p>The body is indexed the first time this is called, and the index is kept for later calls. The index
+	 * refers to the raw bytes of the body (or its mapped buffer), so neither the body nor its values are copied
+	 * until they are accessed.</p>
+	 * @since MyWebApi 1.0
+	 * @see JsonDocument
+	 * @return The indexed document
+	 * @throws JsonParseException When the structure of the body is not valid JSON
+	 */
+	public JsonDocument getJson() throws JsonParseException {
+		JsonDocument indexed = json;
+		if (indexed == null) {
+			indexed = JsonDocument.parse(getJsonBuffer());
+			json = indexed;
+		}
+		return indexed;
+	}
+	
+	/**
+	 * Reads the values that a query selects from the response body, in a single pass over the body that skips
+	 * everything the query does not lead into.
+	 * @since MyWebApi 1.0
+	 * @see JsonQuery
+	 * @param query The query to execute
+	 * @return The selected values
+	 * @throws JsonParseException When the body is not valid JSON
+	 */
+	public JsonQueryResult query(JsonQuery query) throws JsonParseException {
+		try {
+			return query.execute(getJsonParser());
+		} catch (JsonParseException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Returns the response body encoded as UTF-8, which is the raw body itself unless it has another charset.
+	 * @return A buffer over the body
+	 */
+	private ByteBuffer getJsonBuffer() {
+		String charset = toCharset(contentType.getCharset()).name();
+		if (!charset.equals("UTF-8") && !charset.equals("US-ASCII")) {
+			return ByteBuffer.wrap(getBody().getBytes(toCharset("UTF-8")));
+		}
+		if (mapped != null) { return mapped.duplicate(); }
+		return ByteBuffer.wrap(getContent());
+	}
+	
+	/**
+	 * Returns the temporary file that holds the raw response body.
+	 * @since MyWebApi 1.0
+	 * @return The file, <code>null</code> if the body is kept in memory, the file has been released or it has
+	 *  been deleted right after mapping it
+	 */
+	public synchronized File getBodyFile() {
+		return file;
+	}
+	
+	/**
+	 * Deletes the temporary file that holds the raw response body. Does nothing if the body is kept in memory.
+	 * <p>Where the platform allows deleting a mapped file (like Linux and macOS), the file has already been
+	 * deleted when the body was mapped, and the body remains readable until this response is garbage collected.
+	 * Elsewhere a cached response is released by the cache once it is evicted, and any other file is deleted
+	 * when the virtual machine exits.</p>
+	 * @since MyWebApi 1.0
+	 */
+	public synchronized void release() {
+		if (file == null) { return; }
+		file.delete();
+		file = null;
+	}
+	
+	/**
+	 * Returns a copy of this response with a compressed raw body, to keep in a cache. The copy must be expanded
+	 * using {@link #expand()} before it is handed out. Returns this response itself if its body is kept in a
+	 * temporary file, or does not become smaller by compressing it.
+	 * @return The compressed response
+	 */
+	HttpResponse compress() {
+		if (compressed || mapped != null) { return this; }
+		byte[] raw = getContent();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+				if (out.size() >= raw.length) { return this; }
+			}
+			return new HttpResponse(this, out.toByteArray(), true);
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	/**
+	 * Returns a copy of this response with the original raw body, if this response has been compressed using
+	 * {@link #compress()}. Returns this response itself otherwise.
+	 * @return The expanded response
+	 */
+	HttpResponse expand() {
+		if (!compressed) { return this; }
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(content);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 4);
+			byte[] buffer = new byte[8192];
+			while (!inflater.finished()) {
+				int n = inflater.inflate(buffer);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalStateException("Compressed response body is incomplete");
+				}
+				out.write(buffer, 0, n);
+			}
+			return new HttpResponse(this, out.toByteArray(), false);
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Compressed response body is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Returns the raw response body, encoding the decoded body if this response was created with a string.
+	 * @return The raw response body
+	 */
+	private synchronized byte[] getContent() {
+		if (content == null) { content = body.getBytes(toCharset(contentType.getCharset())); }
+		return content;
+	}
+	
+	/**
+	 * Returns the first value of a response header.
+	 * @since MyWebApi 1.0
+	 * @param name The name of the header (case insensitive)
+	 * @return The value of the header, <code>null</code> if the response does not have that header
+	 */
+	public String getHeader(String name) {
+		List<String> values = headers.get(name.toLowerCase(Locale.ENGLISH));
+		return values != null && values.size() > 0 ? values.get(0) : null;
+	}
+	
+	/**
+	 * Returns the time the origin asks to wait before sending another request, based on the
+	 * <code>'Retry-After'</code> header (either a number of seconds or a date).
+	 * @since MyWebApi 1.0
+	 * @return The time to wait in milliseconds, <code>-1</code> if the response has no (valid) Retry-After header
+	 */
+	public long getRetryAfter() {
+		String value = getHeader("Retry-After");
+		if (value == null) { return -1; }
+		value = value.trim();
+		try {
+			long seconds = Long.parseLong(value);
+			return seconds >= Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : Math.max(0, seconds * 1000);
+		} catch (NumberFormatException e) {
+			// not a number of seconds, so it should be an HTTP date
+		}
+		long date = parseDate(value);
+		return date >= 0 ? Math.max(0, date - System.currentTimeMillis()) : -1;
 	}
 	
 	/**
@@ -142,6 +489,48 @@ public final class HttpResponse {
 		return timeLeft > 0 ? timeLeft : 0;
 	}
 	
+	/**
+	 * Parses a date in the format used by HTTP headers (like <code>'Expires'</code>).
+	 * @param value The value of the header
+	 * @return The date in milliseconds since January 1, 1970 GMT, <code>-1</code> if the value is not a date
+	 */
+	static long parseDate(String value) {
+		try {
+			SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			return format.parse(value.trim()).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Returns the charset parameter of a content type.
+	 * @param contentType The value of the <code>'Content-Type'</code> header
+	 * @return The charset, or {@link HttpRequest#CHARSET} if the content type does not specify one
+	 */
+	static String parseCharset(String contentType) {
+		for (String parameter : contentType.split(";")) {
+			String[] pair = parameter.trim().split("=", 2);
+			if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+				return pair[1].trim().replace("\"", "");
+			}
+		}
+		return HttpRequest.CHARSET;
+	}
+	
+	/**
+	 * Returns a charset by its name.
+	 * @param name The name of the charset
+	 * @return The charset, or the charset of {@link HttpRequest#CHARSET} if the name is not supported
+	 */
+	static Charset toCharset(String name) {
+		try {
+			return Charset.forName(name);
+		} catch (IllegalArgumentException e) {
+			return Charset.forName(HttpRequest.CHARSET);
+		}
+	}
+	
 	/**
 	 * Returns the request that was made to get this response.
 	 * @since MyWebApi 1.0
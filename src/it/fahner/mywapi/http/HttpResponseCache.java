@@ -22,6 +22,8 @@ import java.util.HashMap;
 /**
  * A basic cache that links {@link HttpRequest}s to {@link HttpResponse}s and automatically
  * ensures that cached content expires when it needs to.
+ * <p>A response is released (see {@link HttpResponse#release()}) once it is removed from the cache, which
+ * deletes the temporary file that holds its body, if it has one.</p>
  * @since MyWebApi 1.0
  * @author C. Fahner <info@fahnerit.com>
  */
@@ -33,6 +35,12 @@ public final class HttpResponseCache {
 	/** Stores the times when content expires (determined by key). */
 	private HashMap<String, Long> expireTimes;
 	
+	/** Contains the time in milliseconds that expired content is kept as a stale response. */
+	private long staleRetention;
+	
+	/** Flag indicating that response bodies are kept compressed. */
+	private boolean compression;
+	
 	/**
 	 * Creates a new empty HTTP response caching structure.
 	 * @since MyWebApi 1.0
@@ -40,6 +48,31 @@ public final class HttpResponseCache {
 	public HttpResponseCache() {
 		this.cache = new HashMap<String, HttpResponse>();
 		this.expireTimes = new HashMap<String, Long>();
+		this.staleRetention = 0;
+	}
+	
+	/**
+	 * Sets how long responses are kept after they have expired. Expired responses are never returned by
+	 * {@link #getResponseFor(HttpRequest)}, only by {@link #getStaleResponseFor(HttpRequest)}.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The time to keep expired responses (in milliseconds), <code>0</code> to remove them
+	 *  as soon as they expire
+	 */
+	public synchronized void setStaleRetention(long milliseconds) {
+		this.staleRetention = Math.max(0, milliseconds);
+	}
+	
+	/**
+	 * Specifies whether the bodies of responses that are stored from now on are kept compressed. A compressed
+	 * body takes several times less memory (JSON typically shrinks by a factor of 5 to 10), but is decompressed
+	 * every time the response is returned from the cache.
+	 * <p>Bodies that are kept in a temporary file are never compressed. Is set to <code>false</code> by
+	 * default.</p>
+	 * @since MyWebApi 1.0
+	 * @param compression <code>true</code> to keep response bodies compressed
+	 */
+	public synchronized void setCompression(boolean compression) {
+		this.compression = compression;
 	}
 	
 	/**
@@ -49,7 +82,9 @@ public final class HttpResponseCache {
 	 * @param expireAfter The amount of time to store the response (in milliseconds)
 	 */
 	public synchronized void store(HttpResponse response, long expireAfter) {
-		cache.put(response.getOriginRequest().getResourceIdentity(), response);
+		if (compression) { response = response.compress(); }
+		HttpResponse replaced = cache.put(response.getOriginRequest().getResourceIdentity(), response);
+		if (replaced != null && replaced != response) { replaced.release(); }
 		expireTimes.put(response.getOriginRequest().getResourceIdentity(), System.currentTimeMillis() + expireAfter);
 	}
 	
@@ -60,8 +95,7 @@ public final class HttpResponseCache {
 	 * @return <code>true</code> if a response is contained in this cache, <code>false</code> otherwise
 	 */
 	public synchronized boolean hasResponseFor(HttpRequest request) {
-		clean();
-		return cache.containsKey(request.getResourceIdentity());
+		return getResponseFor(request) != null;
 	}
 	
 	/**
@@ -73,11 +107,28 @@ public final class HttpResponseCache {
 	 */
 	public synchronized HttpResponse getResponseFor(HttpRequest request) {
 		clean();
-		return cache.get(request.getResourceIdentity());
+		Long expireTime = expireTimes.get(request.getResourceIdentity());
+		if (expireTime == null || expireTime.longValue() < System.currentTimeMillis()) { return null; }
+		HttpResponse response = cache.get(request.getResourceIdentity());
+		return response != null ? response.expand() : null;
 	}
 	
 	/**
-	 * Returns the amount of HTTP responses currently in the cache.
+	 * Returns the cached response for the specified request, even if it has expired (as long as it is still
+	 * kept, see {@link #setStaleRetention(long)}).
+	 * @since MyWebApi 1.0
+	 * @param request The request to get the cached response for
+	 * @return The cached {@link HttpResponse} or <code>null</code> when no response is kept for the request
+	 */
+	public synchronized HttpResponse getStaleResponseFor(HttpRequest request) {
+		clean();
+		HttpResponse response = cache.get(request.getResourceIdentity());
+		return response != null ? response.expand() : null;
+	}
+	
+	/**
+	 * Returns the amount of HTTP responses currently in the cache, including expired responses that are
+	 * still kept.
 	 * @since MyWebApi 1.0
 	 * @return Amount of cached responses
 	 */
@@ -86,18 +137,31 @@ public final class HttpResponseCache {
 	}
 	
 	/**
-	 * Cleans all cached elements that have expired.
+	 * Cleans all cached elements that have expired longer ago than the stale retention time.
 	 */
 	private synchronized void clean() {
 		if (expireTimes.size() <= 0) { return; } // prevent instantiation of objects below
 		ArrayList<String> toClean = new ArrayList<String>();
+		long removeBefore = System.currentTimeMillis() - staleRetention;
 		for (String key : expireTimes.keySet()) {
-			if (expireTimes.get(key).longValue() < System.currentTimeMillis()) { toClean.add(key); }
+			if (expireTimes.get(key).longValue() < removeBefore) { toClean.add(key); }
 		}
 		for (String removeResId : toClean) {
-			cache.remove(removeResId);
+			cache.remove(removeResId).release();
 			expireTimes.remove(removeResId);
 		}
 	}
 	
+	/**
+	 * Removes all cached responses.
+	 * @since MyWebApi 1.0
+	 */
+	public synchronized void clear() {
+		for (HttpResponse response : cache.values()) {
+			response.release();
+		}
+		cache.clear();
+		expireTimes.clear();
+	}
+	
 }
@@ -0,0 +1,221 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import it.fahner.mywapi.http.types.HttpContentType;
+import it.fahner.mywapi.http.types.HttpStatusCode;
+import it.fahner.mywapi.json.JsonPullParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Represents an HTTP response of which the body is read as a stream, so a body of any size can be processed
+ * without holding it in memory.
+ * <p>The body is read from the connection at the pace of the reader; while the reader does not read, the
+ * origin is held back by the flow control of the connection. The connection is only released once the stream
+ * is closed, so a stream must always be closed (a stream that has not been read to the end closes its
+ * connection instead of reusing it).</p>
+ * @see HttpStreamingTransport
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class HttpResponseStream implements Closeable {
+	
+	/** Contains the status, content type and headers of the response. */
+	private final HttpResponse head;
+	
+	/** Contains the body of the response. */
+	private final InputStream body;
+	
+	/** Contains the length of the body in bytes, <code>-1</code> if unknown. */
+	private final long contentLength;
+	
+	/** Flag indicating that this stream has been closed. */
+	private boolean closed;
+	
+	/**
+	 * Creates a new response stream.
+	 * @since MyWebApi 1.0
+	 * @param head The response without its body, which provides the status, content type and headers
+	 * @param body The stream to read the body from
+	 * @param contentLength The length of the body in bytes, <code>-1</code> if unknown
+	 */
+	public HttpResponseStream(HttpResponse head, InputStream body, long contentLength) {
+		this.head = head;
+		this.body = body;
+		this.contentLength = contentLength;
+	}
+	
+	/**
+	 * Creates a stream over the body of a response that has already been read completely (for example a
+	 * response from the cache).
+	 * @since MyWebApi 1.0
+	 * @param response The complete response
+	 * @return The stream
+	 */
+	public static HttpResponseStream of(HttpResponse response) {
+		ByteBuffer content = response.getBodyBuffer();
+		return new HttpResponseStream(response, new BufferInputStream(content), content.remaining());
+	}
+	
+	@Override
+	public String toString() {
+		return "{HttpResponseStream: '" + head.getStatus().getCode() + "-" + head.getStatus().name() + "' }";
+	}
+	
+	/**
+	 * Returns the response without its body (unless this stream was created from a complete response).
+	 * @since MyWebApi 1.0
+	 * @return The response that provides the status, content type and headers
+	 */
+	public HttpResponse getHead() {
+		return head;
+	}
+	
+	/**
+	 * Returns the HTTP status code of this response.
+	 * @since MyWebApi 1.0
+	 * @return The HTTP status code
+	 */
+	public HttpStatusCode getStatus() {
+		return head.getStatus();
+	}
+	
+	/**
+	 * Returns the content type of this response.
+	 * @since MyWebApi 1.0
+	 * @return The content type of the body
+	 */
+	public HttpContentType getContentType() {
+		return head.getContentType();
+	}
+	
+	/**
+	 * Returns the first value of a response header.
+	 * @since MyWebApi 1.0
+	 * @param name The name of the header (case insensitive)
+	 * @return The value of the header, <code>null</code> if the response does not have that header
+	 */
+	public String getHeader(String name) {
+		return head.getHeader(name);
+	}
+	
+	/**
+	 * Returns the length of the body.
+	 * @since MyWebApi 1.0
+	 * @return The length in bytes, <code>-1</code> if the origin did not specify it
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+	
+	/**
+	 * Returns the stream to read the body from.
+	 * @since MyWebApi 1.0
+	 * @return The body
+	 */
+	public InputStream getInputStream() {
+		return body;
+	}
+	
+	/**
+	 * Returns a channel to read the body from.
+	 * @since MyWebApi 1.0
+	 * @return The body
+	 */
+	public ReadableByteChannel getChannel() {
+		return Channels.newChannel(body);
+	}
+	
+	/**
+	 * Returns a parser that reads the body as a JSON document while it is being received.
+	 * <p>Closing the parser closes the body as well.</p>
+	 * @since MyWebApi 1.0
+	 * @return A new parser, positioned before the first token
+	 */
+	public JsonPullParser getJsonParser() {
+		return new JsonPullParser(body);
+	}
+	
+	/**
+	 * Closes the body and releases its connection. Does nothing if this stream is already closed.
+	 * @since MyWebApi 1.0
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) { return; }
+			closed = true;
+		}
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the connection is not reused, but nothing else depends on it
+		}
+		if (head.getOriginRequest() != null) { head.getOriginRequest().setAbortHandler(null); }
+	}
+	
+	/**
+	 * Reads the body of a complete response from its buffer, without copying it first.
+	 */
+	private static final class BufferInputStream extends InputStream {
+		
+		/** Contains the part of the body that has not been read yet. */
+		private final ByteBuffer buffer;
+		
+		/**
+		 * Creates a new stream over a buffer.
+		 * @param buffer The buffer to read, from its position up to its limit
+		 */
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int offset, int length) {
+			if (length == 0) { return 0; }
+			if (!buffer.hasRemaining()) { return -1; }
+			int n = Math.min(length, buffer.remaining());
+			buffer.get(b, offset, n);
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+		
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,44 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+/**
+ * An {@link HttpTransport} that can hand over the body of a response as a stream, instead of reading it
+ * completely before returning.
+ * @see HttpResponseStream
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public interface HttpStreamingTransport extends HttpTransport {
+	
+	/**
+	 * Sends a request and waits for the status and headers of its response. The body is read from the
+	 * returned stream, at the pace of the reader.
+	 * <p>The connection of the response is in use until the stream is closed. The abort handler of the request
+	 * stays registered until then as well, so aborting the request also stops the stream.</p>
+	 * @since MyWebApi 1.0
+	 * @param request The request to send
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @return The response, which must be closed
+	 * @throws HttpRequestTimeoutException When the request took longer than a timeout value specified, could not
+	 *  be sent or has been aborted
+	 */
+	public HttpResponseStream open(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException;
+	
+}
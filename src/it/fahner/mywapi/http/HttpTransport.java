@@ -0,0 +1,45 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+/**
+ * Sends {@link HttpRequest}s over the wire. Implementations decide how connections are made and reused.
+ * <p>Implementations must be safe to use from multiple threads at the same time, and must register an abort
+ * handler (see {@link HttpRequest#setAbortHandler(Runnable)}) that releases the sending thread when the request
+ * is aborted.</p>
+ * <p>Transports that can wait for responses without blocking a thread implement {@link HttpAsyncTransport}.</p>
+ * @see HttpURLConnectionTransport
+ * @see HttpClientTransport
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public interface HttpTransport {
+	
+	/**
+	 * Sends a request and waits for its response.
+	 * @since MyWebApi 1.0
+	 * @param request The request to send
+	 * @param connectTimeout The time in milliseconds that connecting can last at most, <code>0</code> for none
+	 * @param readTimeout The time in milliseconds to wait for data at most, <code>0</code> for none
+	 * @return The response to the request
+	 * @throws HttpRequestTimeoutException When the request took longer than a timeout value specified, could not
+	 *  be sent or has been aborted
+	 */
+	public HttpResponse send(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException;
+	
+}
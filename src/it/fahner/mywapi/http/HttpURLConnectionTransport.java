@@ -0,0 +1,149 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.http;
+
+import it.fahner.mywapi.http.types.HttpContentType;
+import it.fahner.mywapi.http.types.HttpRequestMethod;
+import it.fahner.mywapi.http.types.HttpStatusCode;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * The default {@link HttpTransport}, which sends every request over an {@link HttpURLConnection}.
+ * <p>Connections are kept alive and reused by the platform, but every request occupies a connection (and the
+ * thread that sends it) until its response has been read completely. The platform only reuses a connection
+ * once the body of its response (or error response) has been read to the end and closed, which this transport
+ * always does. Use the {@link HttpPooledTransport} to control connection reuse explicitly.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class HttpURLConnectionTransport implements HttpStreamingTransport {
+	
+	/**
+	 * Creates a new transport that uses {@link HttpURLConnection}s.
+	 * @since MyWebApi 1.0
+	 */
+	public HttpURLConnectionTransport() {
+		HttpURLConnection.setFollowRedirects(true);
+	}
+	
+	@Override
+	public HttpResponse send(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
+		HttpResponseStream stream = open(request, connectTimeout, readTimeout);
+		try {
+			// The body is kept as raw bytes, it is only decoded (using the charset of the content type) when needed
+			return HttpBodyReader.read(stream);
+		} catch (IOException ioe) {
+			throw new HttpRequestTimeoutException();
+		} catch (RuntimeException re) {
+			// Closing the connection from another thread may leave it in a state it cannot recover from
+			if (request.isAborted()) { throw new HttpRequestTimeoutException(); }
+			throw re;
+		} finally {
+			// A stream that is not closed (or not read to the end) keeps its connection from being reused
+			stream.close();
+		}
+	}
+	
+	@Override
+	public HttpResponseStream open(HttpRequest request, int connectTimeout, int readTimeout)
+			throws HttpRequestTimeoutException {
+		final HttpURLConnection connection;
+		try {
+			connection = (HttpURLConnection) request.getUrl().openConnection();
+			// Set the connection's request properties
+			connection.setRequestProperty("Accept-Charset", HttpRequest.CHARSET);
+			connection.setRequestProperty("Accept-Encoding", HttpBodyReader.ACCEPT_ENCODING);
+			connection.setRequestProperty("Content-Type", request.getContentType());
+			connection.setRequestMethod(request.getMethod().name());
+			connection.setDoInput(true); // get data FROM the URL, should always be TRUE
+			// we will implement our own caching since this is not reliable on every platform
+			connection.setUseCaches(false);
+		} catch (IOException e) {
+			throw new HttpRequestTimeoutException();
+		}
+		HttpBodySource body = request.getBodySource();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		request.setAbortHandler(new Runnable() {
+			
+			@Override
+			public void run() {
+				connection.disconnect();
+			}
+			
+		});
+		boolean opened = false;
+		try {
+			// Send the request body (if a body content was specified) while it is written, in chunks if its
+			// length is unknown
+			if (body != null) {
+				connection.setDoOutput(true); // send data TO the URL
+				long length = body.getLength();
+				if (length >= 0) {
+					connection.setFixedLengthStreamingMode(length);
+				} else {
+					connection.setChunkedStreamingMode(0);
+				}
+				OutputStream writer = connection.getOutputStream();
+				try {
+					body.writeTo(writer);
+				} finally {
+					writer.close();
+				}
+			}
+			
+			// Get response
+			connection.connect(); // call connect just to be sure, will be ignored if already called anyways
+			String contentType = connection.getContentType() != null ? connection.getContentType() : "text/plain";
+			// Error responses (4xx and 5xx) can only be read through the error stream, which has no body at all
+			// if the server did not send one
+			int code = connection.getResponseCode();
+			InputStream stream = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			boolean bodiless = stream == null || request.getMethod() == HttpRequestMethod.HEAD
+					|| code == 204 || code == 304;
+			HttpResponse head = new HttpResponse(
+					request,
+					HttpStatusCode.fromCode(code),
+					new byte[0],
+					new HttpContentType(contentType, HttpResponse.parseCharset(contentType)),
+					connection.getExpiration(),
+					connection.getHeaderFields()
+			);
+			opened = true;
+			return HttpBodyReader.open(head, stream != null ? stream : new ByteArrayInputStream(new byte[0]),
+					bodiless ? 0 : connection.getContentLengthLong());
+		} catch (FileNotFoundException fnfe) {
+			return HttpResponseStream.of(new HttpResponse(request, HttpStatusCode.NotFound));
+		} catch (IOException ioe) {
+			throw new HttpRequestTimeoutException();
+		} catch (RuntimeException re) {
+			// Closing the connection from another thread may leave it in a state it cannot recover from
+			if (request.isAborted()) { throw new HttpRequestTimeoutException(); }
+			throw re;
+		} finally {
+			if (!opened) { request.setAbortHandler(null); }
+		}
+	}
+	
+}
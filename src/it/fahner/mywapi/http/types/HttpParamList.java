@@ -16,6 +16,8 @@
 
 package it.fahner.mywapi.http.types;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.HashMap;
 
 /**
@@ -164,4 +166,24 @@ public final class HttpParamList {
 		return out.toString();
 	}
 	
+	/**
+	 * Parses an URL encoded string (as returned by {@link #toUrlEncodedString()}) into a parameter list.
+	 * @since MyWebApi 1.0
+	 * @param encoded The parameters as <code>"one=valOne&two=valTwo"</code>
+	 * @return The parsed parameter list, empty when UTF-8 encoding is not supported on this platform
+	 */
+	public static HttpParamList fromUrlEncodedString(String encoded) {
+		HttpParamList out = new HttpParamList();
+		if (encoded == null || encoded.length() == 0) { return out; }
+		try {
+			for (String pair : encoded.split("&")) {
+				int split = pair.indexOf('=');
+				if (split < 0) { out.set(URLDecoder.decode(pair, "UTF-8"), ""); continue; }
+				out.set(URLDecoder.decode(pair.substring(0, split), "UTF-8"),
+						URLDecoder.decode(pair.substring(split + 1), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) { return new HttpParamList(); }
+		return out;
+	}
+	
 }
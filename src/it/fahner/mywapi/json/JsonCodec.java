@@ -0,0 +1,129 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Converts between JSON and objects of a single type.
+ * <p>Use {@link #of(Class)} to get the codec of a type. The codec of a type is built once, the first time it is
+ * asked for, and then reused: the fields of a class are looked up a single time and kept in a table of bindings,
+ * so reading or writing an object never looks anything up by reflection again.</p>
+ * <p>Built-in codecs exist for strings, numbers, booleans, enums (by name), arrays, collections, maps with string
+ * keys and <code>Object</code> (which is read as a map, list, string, <code>Long</code>, <code>Double</code>,
+ * <code>Boolean</code> or <code>null</code>). Any other class is read and written as an object with a member
+ * for each of its fields, except for static and transient fields. To be read, such a class needs a constructor
+ * without parameters, which may be private. Fields that hold <code>null</code> are left out when writing, and
+ * members that have no field are skipped when reading.</p>
+ * @param <T> The type of the objects
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public abstract class JsonCodec<T> {
+	
+	/**
+	 * Reads a value. The parser must be positioned at the first token of the value, and is left at its last token.
+	 * @since MyWebApi 1.0
+	 * @param parser The parser to read the value from
+	 * @return The value that was read
+	 * @throws JsonParseException When the document is malformed, or the value does not match the type
+	 * @throws IOException When the document could not be read
+	 */
+	public abstract T read(JsonPullParser parser) throws IOException;
+	
+	/**
+	 * Writes a value.
+	 * @since MyWebApi 1.0
+	 * @param writer The writer to write the value to
+	 * @param value The value to write, may be <code>null</code>
+	 * @throws IOException When the document could not be written
+	 */
+	public abstract void write(JsonWriter writer, T value) throws IOException;
+	
+	/**
+	 * Reads a whole document that consists of a single value.
+	 * @since MyWebApi 1.0
+	 * @param parser The parser to read the document from, positioned before its first token
+	 * @return The value that was read
+	 * @throws JsonParseException When the document is malformed, or the value does not match the type
+	 * @throws IOException When the document could not be read
+	 */
+	public final T readDocument(JsonPullParser parser) throws IOException {
+		parser.next();
+		T value = read(parser);
+		if (parser.next() != JsonToken.END_DOCUMENT) {
+			throw new JsonParseException("Unexpected data after the document", parser.getOffset());
+		}
+		return value;
+	}
+	
+	/**
+	 * Writes a value as a whole document.
+	 * @since MyWebApi 1.0
+	 * @param value The value to write
+	 * @return The UTF-8 encoded document
+	 */
+	public final byte[] toBytes(T value) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonWriter writer = new JsonWriter(out);
+		try {
+			write(writer, value);
+			writer.close();
+		} catch (IOException e) {
+			// a byte array output stream never fails
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Returns the codec of a class.
+	 * @since MyWebApi 1.0
+	 * @param type The class to convert
+	 * @return The codec
+	 * @throws IllegalArgumentException When the class cannot be converted
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> JsonCodec<T> of(Class<T> type) {
+		return (JsonCodec<T>) JsonCodecs.get(type);
+	}
+	
+	/**
+	 * Returns the codec of a generic type, like <code>List&lt;Item&gt;</code> (which can be obtained from a field or
+	 * the superclass of an anonymous class).
+	 * @since MyWebApi 1.0
+	 * @param type The type to convert
+	 * @return The codec
+	 * @throws IllegalArgumentException When the type cannot be converted
+	 */
+	public static JsonCodec<?> of(Type type) {
+		return JsonCodecs.get(type);
+	}
+	
+	/**
+	 * Writes any value as a whole document, using the codec of its runtime class.
+	 * @since MyWebApi 1.0
+	 * @param value The value to write
+	 * @return The UTF-8 encoded document
+	 * @throws IllegalArgumentException When the class of the value cannot be converted
+	 */
+	public static byte[] encode(Object value) {
+		return JsonCodecs.get(Object.class).toBytes(value);
+	}
+	
+}
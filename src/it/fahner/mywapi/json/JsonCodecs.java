@@ -0,0 +1,805 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the codecs of all types, and keeps every codec once it has been built.
+ * @see JsonCodec
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+final class JsonCodecs {
+	
+	/** Contains the codecs that have been built, by type. */
+	private static final ConcurrentHashMap<Type, JsonCodec<Object>> codecs =
+			new ConcurrentHashMap<Type, JsonCodec<Object>>();
+	
+	/** Contains the codecs that are being built, which may refer to each other (or themselves). */
+	private static final HashMap<Type, JsonCodec<Object>> building = new HashMap<Type, JsonCodec<Object>>();
+	
+	/** The codec of values of any type. */
+	private static final JsonCodec<Object> DYNAMIC = new DynamicCodec();
+	
+	private JsonCodecs() {}
+	
+	/**
+	 * Returns the codec of a type, and builds it if it does not exist yet.
+	 * @param type The type to convert
+	 * @return The codec
+	 * @throws IllegalArgumentException When the type cannot be converted
+	 */
+	static JsonCodec<Object> get(Type type) {
+		JsonCodec<Object> codec = codecs.get(type);
+		return codec != null ? codec : create(type);
+	}
+	
+	/**
+	 * Builds the codec of a type. Codecs that are built while building another codec are only made available
+	 * once the outermost codec has been built completely.
+	 * @param type The type to convert
+	 * @return The codec
+	 * @throws IllegalArgumentException When the type cannot be converted
+	 */
+	private static synchronized JsonCodec<Object> create(Type type) {
+		JsonCodec<Object> codec = codecs.get(type);
+		if (codec == null) { codec = building.get(type); }
+		if (codec != null) { return codec; }
+		boolean outermost = building.isEmpty();
+		try {
+			codec = build(type);
+			building.put(type, codec);
+			if (outermost) { codecs.putAll(building); }
+			return codec;
+		} finally {
+			if (outermost) { building.clear(); }
+		}
+	}
+	
+	/**
+	 * Builds a new codec for a type.
+	 * @param type The type to convert
+	 * @return The codec
+	 * @throws IllegalArgumentException When the type cannot be converted
+	 */
+	private static JsonCodec<Object> build(Type type) {
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) type;
+			Class<?> raw = (Class<?>) parameterized.getRawType();
+			Type[] arguments = parameterized.getActualTypeArguments();
+			if (Collection.class.isAssignableFrom(raw)) { return new CollectionCodec(raw, get(arguments[0])); }
+			if (Map.class.isAssignableFrom(raw)) {
+				if (arguments[0] != String.class && arguments[0] != Object.class) {
+					throw new IllegalArgumentException("JSON objects only have string keys: " + type);
+				}
+				return new MapCodec(raw, get(arguments[1]));
+			}
+			return object(type, raw);
+		}
+		if (type instanceof GenericArrayType) {
+			Type component = ((GenericArrayType) type).getGenericComponentType();
+			return new ArrayCodec(toClass(component), get(component));
+		}
+		if (type instanceof WildcardType) { return get(((WildcardType) type).getUpperBounds()[0]); }
+		if (type instanceof TypeVariable) { return DYNAMIC; }
+		Class<?> raw = (Class<?>) type;
+		if (raw == Object.class) { return DYNAMIC; }
+		if (raw == String.class) { return new StringCodec(); }
+		if (raw == boolean.class || raw == Boolean.class) { return new BooleanCodec(); }
+		if (raw.isPrimitive() || Number.class.isAssignableFrom(raw)) { return new NumberCodec(raw); }
+		if (raw.isEnum()) { return new EnumCodec(raw); }
+		if (raw.isArray()) { return new ArrayCodec(raw.getComponentType(), get(raw.getComponentType())); }
+		if (Collection.class.isAssignableFrom(raw)) { return new CollectionCodec(raw, DYNAMIC); }
+		if (Map.class.isAssignableFrom(raw)) { return new MapCodec(raw, DYNAMIC); }
+		return object(type, raw);
+	}
+	
+	/**
+	 * Builds a new codec for a class that is converted with a member for each of its fields.
+	 * @param type The type to convert, including any type arguments
+	 * @param raw The class of the type
+	 * @return The codec
+	 * @throws IllegalArgumentException When the class cannot be converted
+	 */
+	private static JsonCodec<Object> object(Type type, Class<?> raw) {
+		if (raw.isInterface() || Modifier.isAbstract(raw.getModifiers()) || raw.getName().startsWith("java.")) {
+			throw new IllegalArgumentException("Cannot convert " + raw.getName() + " to JSON");
+		}
+		ObjectCodec codec = new ObjectCodec(raw);
+		building.put(type, codec);
+		codec.bind(type);
+		return codec;
+	}
+	
+	/**
+	 * Replaces the type variables in a type by the types they stand for.
+	 * @param type The type that may contain type variables
+	 * @param variables The types by type variable, variables that are missing stand for <code>Object</code>
+	 * @return The type without type variables
+	 */
+	private static Type resolve(Type type, Map<TypeVariable<?>, Type> variables) {
+		if (type instanceof TypeVariable) {
+			Type value = variables.get(type);
+			return value != null ? value : Object.class;
+		}
+		if (type instanceof WildcardType) { return resolve(((WildcardType) type).getUpperBounds()[0], variables); }
+		if (type instanceof GenericArrayType) {
+			Type component = resolve(((GenericArrayType) type).getGenericComponentType(), variables);
+			return Array.newInstance(toClass(component), 0).getClass();
+		}
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) type;
+			Type[] arguments = parameterized.getActualTypeArguments();
+			boolean changed = false;
+			for (int i = 0; i < arguments.length; i += 1) {
+				Type argument = resolve(arguments[i], variables);
+				changed |= argument != arguments[i];
+				arguments[i] = argument;
+			}
+			if (!changed) { return type; }
+			return new ResolvedType((Class<?>) parameterized.getRawType(), parameterized.getOwnerType(), arguments);
+		}
+		return type;
+	}
+	
+	/**
+	 * Returns the class of a type, without its type arguments.
+	 * @param type The type
+	 * @return The class
+	 */
+	private static Class<?> toClass(Type type) {
+		if (type instanceof Class) { return (Class<?>) type; }
+		if (type instanceof ParameterizedType) { return (Class<?>) ((ParameterizedType) type).getRawType(); }
+		if (type instanceof GenericArrayType) {
+			return Array.newInstance(toClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+		}
+		return Object.class;
+	}
+	
+	/**
+	 * Returns the constructor without parameters of a class.
+	 * @param type The class
+	 * @return The constructor, made accessible
+	 * @throws IllegalArgumentException When the class has no such constructor
+	 */
+	private static Constructor<?> getConstructor(Class<?> type) {
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(type.getName() + " has no constructor without parameters");
+		}
+	}
+	
+	/**
+	 * Checks if a collection or map class can be created with a public constructor without parameters. Other
+	 * classes (like interfaces and immutable collections) are read as a standard collection or map instead.
+	 * @param type The class
+	 * @return <code>true</code> if the class itself can be created
+	 */
+	private static boolean isInstantiable(Class<?> type) {
+		if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) { return false; }
+		try {
+			return Modifier.isPublic(type.getConstructor().getModifiers()) && Modifier.isPublic(type.getModifiers());
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Creates a new instance using a constructor without parameters.
+	 * @param constructor The constructor
+	 * @return The new instance
+	 */
+	private static Object newInstance(Constructor<?> constructor) {
+		try {
+			return constructor.newInstance();
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Could not create " + constructor.getDeclaringClass().getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Could not create " + constructor.getDeclaringClass().getName(), e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not create " + constructor.getDeclaringClass().getName(),
+					e.getCause());
+		}
+	}
+	
+	/**
+	 * Creates the exception for a value that does not match the type of its codec.
+	 * @param parser The parser, positioned at the value
+	 * @param expected A description of the expected value
+	 * @return The exception
+	 */
+	private static JsonParseException mismatch(JsonPullParser parser, String expected) {
+		return new JsonParseException("Expected " + expected + " but found " + parser.getToken(), parser.getOffset());
+	}
+	
+	/**
+	 * Converts strings.
+	 */
+	private static final class StringCodec extends JsonCodec<Object> {
+		
+		@Override
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.STRING && token != JsonToken.NUMBER) { throw mismatch(parser, "a string"); }
+			return parser.getString();
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			writer.value((String) value);
+		}
+		
+	}
+	
+	/**
+	 * Converts booleans.
+	 */
+	private static final class BooleanCodec extends JsonCodec<Object> {
+		
+		@Override
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.TRUE && token != JsonToken.FALSE) { throw mismatch(parser, "a boolean"); }
+			return Boolean.valueOf(parser.getBoolean());
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			if (value == null) {
+				writer.nullValue();
+			} else {
+				writer.value(((Boolean) value).booleanValue());
+			}
+		}
+		
+	}
+	
+	/**
+	 * Converts numbers of a single type (primitive or not).
+	 */
+	private static final class NumberCodec extends JsonCodec<Object> {
+		
+		/** Contains the type of the numbers. */
+		private final Class<?> type;
+		
+		NumberCodec(Class<?> type) {
+			if (type == char.class) { throw new IllegalArgumentException("Cannot convert char to JSON"); }
+			this.type = type;
+		}
+		
+		@Override
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.NUMBER) { throw mismatch(parser, "a number"); }
+			try {
+				if (type == int.class || type == Integer.class) { return Integer.valueOf(parser.getInt()); }
+				if (type == long.class || type == Long.class) { return Long.valueOf(parser.getLong()); }
+				if (type == double.class || type == Double.class) { return Double.valueOf(parser.getDouble()); }
+				if (type == float.class || type == Float.class) { return Float.valueOf((float) parser.getDouble()); }
+				if (type == short.class || type == Short.class) { return Short.valueOf(toShort(parser.getInt())); }
+				if (type == byte.class || type == Byte.class) { return Byte.valueOf(toByte(parser.getInt())); }
+				if (type == BigInteger.class) { return new BigInteger(parser.getString()); }
+				return new BigDecimal(parser.getString());
+			} catch (NumberFormatException e) {
+				throw new JsonParseException(e.getMessage(), parser.getOffset());
+			}
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			writer.value((Number) value);
+		}
+		
+		private static short toShort(int value) {
+			if ((short) value != value) { throw new NumberFormatException("Not a short: " + value); }
+			return (short) value;
+		}
+		
+		private static byte toByte(int value) {
+			if ((byte) value != value) { throw new NumberFormatException("Not a byte: " + value); }
+			return (byte) value;
+		}
+		
+	}
+	
+	/**
+	 * Converts the constants of an enum, by their names.
+	 */
+	private static final class EnumCodec extends JsonCodec<Object> {
+		
+		/** Contains the constants by their names. */
+		private final HashMap<String, Object> constants;
+		
+		EnumCodec(Class<?> type) {
+			this.constants = new HashMap<String, Object>();
+			for (Object constant : type.getEnumConstants()) { constants.put(((Enum<?>) constant).name(), constant); }
+		}
+		
+		@Override
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.STRING) { throw mismatch(parser, "a string"); }
+			Object constant = constants.get(parser.getString());
+			if (constant == null) { throw new JsonParseException("Unknown constant", parser.getOffset()); }
+			return constant;
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			writer.value(value != null ? ((Enum<?>) value).name() : null);
+		}
+		
+	}
+	
+	/**
+	 * Converts arrays.
+	 */
+	private static final class ArrayCodec extends JsonCodec<Object> {
+		
+		/** Contains the type of the elements. */
+		private final Class<?> componentType;
+		
+		/** Contains the codec of the elements. */
+		private final JsonCodec<Object> elements;
+		
+		ArrayCodec(Class<?> componentType, JsonCodec<Object> elements) {
+			this.componentType = componentType;
+			this.elements = elements;
+		}
+		
+		@Override
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.BEGIN_ARRAY) { throw mismatch(parser, "an array"); }
+			ArrayList<Object> values = new ArrayList<Object>();
+			while (parser.next() != JsonToken.END_ARRAY) { values.add(elements.read(parser)); }
+			Object array = Array.newInstance(componentType, values.size());
+			for (int i = 0; i < values.size(); i += 1) {
+				if (values.get(i) != null || !componentType.isPrimitive()) { Array.set(array, i, values.get(i)); }
+			}
+			return array;
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			if (value == null) {
+				writer.nullValue();
+				return;
+			}
+			writer.beginArray();
+			int length = Array.getLength(value);
+			for (int i = 0; i < length; i += 1) { elements.write(writer, Array.get(value, i)); }
+			writer.endArray();
+		}
+		
+	}
+	
+	/**
+	 * Converts collections.
+	 */
+	private static final class CollectionCodec extends JsonCodec<Object> {
+		
+		/** Contains the constructor of the collections that are read. */
+		private final Constructor<?> constructor;
+		
+		/** Contains the codec of the elements. */
+		private final JsonCodec<Object> elements;
+		
+		CollectionCodec(Class<?> type, JsonCodec<Object> elements) {
+			Class<?> implementation = type;
+			if (!isInstantiable(type)) {
+				if (SortedSet.class.isAssignableFrom(type)) {
+					implementation = TreeSet.class;
+				} else if (Set.class.isAssignableFrom(type)) {
+					implementation = LinkedHashSet.class;
+				} else if (Queue.class.isAssignableFrom(type) && !List.class.isAssignableFrom(type)) {
+					implementation = ArrayDeque.class;
+				} else {
+					implementation = ArrayList.class;
+				}
+			}
+			this.constructor = getConstructor(implementation);
+			this.elements = elements;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.BEGIN_ARRAY) { throw mismatch(parser, "an array"); }
+			Collection<Object> values = (Collection<Object>) newInstance(constructor);
+			while (parser.next() != JsonToken.END_ARRAY) { values.add(elements.read(parser)); }
+			return values;
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			if (value == null) {
+				writer.nullValue();
+				return;
+			}
+			writer.beginArray();
+			for (Object element : (Collection<?>) value) { elements.write(writer, element); }
+			writer.endArray();
+		}
+		
+	}
+	
+	/**
+	 * Converts maps with string keys.
+	 */
+	private static final class MapCodec extends JsonCodec<Object> {
+		
+		/** Contains the constructor of the maps that are read. */
+		private final Constructor<?> constructor;
+		
+		/** Contains the codec of the values. */
+		private final JsonCodec<Object> values;
+		
+		MapCodec(Class<?> type, JsonCodec<Object> values) {
+			Class<?> implementation = type;
+			if (!isInstantiable(type)) {
+				implementation = SortedMap.class.isAssignableFrom(type) ? TreeMap.class : LinkedHashMap.class;
+			}
+			this.constructor = getConstructor(implementation);
+			this.values = values;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.BEGIN_OBJECT) { throw mismatch(parser, "an object"); }
+			Map<String, Object> map = (Map<String, Object>) newInstance(constructor);
+			while (parser.next() == JsonToken.NAME) {
+				String name = parser.getString();
+				parser.next();
+				map.put(name, values.read(parser));
+			}
+			return map;
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			if (value == null) {
+				writer.nullValue();
+				return;
+			}
+			writer.beginObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				writer.name(String.valueOf(entry.getKey()));
+				values.write(writer, entry.getValue());
+			}
+			writer.endObject();
+		}
+		
+	}
+	
+	/**
+	 * Converts values of any type. Reads objects as maps and arrays as lists, and writes every value using the
+	 * codec of its runtime class.
+	 */
+	private static final class DynamicCodec extends JsonCodec<Object> {
+		
+		@Override
+		public Object read(JsonPullParser parser) throws IOException {
+			switch (parser.getToken()) {
+			case BEGIN_OBJECT:
+				LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+				while (parser.next() == JsonToken.NAME) {
+					String name = parser.getString();
+					parser.next();
+					map.put(name, read(parser));
+				}
+				return map;
+			case BEGIN_ARRAY:
+				ArrayList<Object> list = new ArrayList<Object>();
+				while (parser.next() != JsonToken.END_ARRAY) { list.add(read(parser)); }
+				return list;
+			case STRING:
+				return parser.getString();
+			case NUMBER:
+				if (parser.isIntegral()) {
+					try {
+						return Long.valueOf(parser.getLong());
+					} catch (NumberFormatException e) {
+						// too large for a long, read it as a double instead
+					}
+				}
+				return Double.valueOf(parser.getDouble());
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case NULL:
+				return null;
+			default:
+				throw mismatch(parser, "a value");
+			}
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			if (value == null) {
+				writer.nullValue();
+			} else {
+				get(value.getClass()).write(writer, value);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Converts objects of a class, with a member for each of its fields.
+	 */
+	private static final class ObjectCodec extends JsonCodec<Object> {
+		
+		/** Contains the class of the objects. */
+		private final Class<?> type;
+		
+		/** Contains the constructor of the objects that are read, <code>null</code> until the first one is read. */
+		private volatile Constructor<?> constructor;
+		
+		/** Contains the bindings of all fields, in the order they are declared (starting with the superclass). */
+		private Binding[] bindings;
+		
+		ObjectCodec(Class<?> type) {
+			this.type = type;
+		}
+		
+		/**
+		 * Looks up all fields and builds their bindings, including the codecs of their types.
+		 * @param generic The type of the objects, including any type arguments
+		 */
+		void bind(Type generic) {
+			ArrayList<Binding> found = new ArrayList<Binding>();
+			collect(generic, found);
+			bindings = found.toArray(new Binding[found.size()]);
+		}
+		
+		/**
+		 * Builds the bindings of the fields of a class, after those of its superclasses.
+		 * @param generic The class, including any type arguments
+		 * @param found The list to add the bindings to
+		 */
+		private static void collect(Type generic, ArrayList<Binding> found) {
+			Class<?> c = toClass(generic);
+			if (c == Object.class) { return; }
+			HashMap<TypeVariable<?>, Type> variables = new HashMap<TypeVariable<?>, Type>();
+			if (generic instanceof ParameterizedType) {
+				Type[] arguments = ((ParameterizedType) generic).getActualTypeArguments();
+				TypeVariable<?>[] parameters = c.getTypeParameters();
+				for (int i = 0; i < parameters.length; i += 1) { variables.put(parameters[i], arguments[i]); }
+			}
+			if (c.getGenericSuperclass() != null) { collect(resolve(c.getGenericSuperclass(), variables), found); }
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+					continue;
+				}
+				field.setAccessible(true);
+				found.add(new Binding(field, get(resolve(field.getGenericType(), variables))));
+			}
+		}
+		
+		@Override
+		public Object read(JsonPullParser parser) throws IOException {
+			JsonToken token = parser.getToken();
+			if (token == JsonToken.NULL) { return null; }
+			if (token != JsonToken.BEGIN_OBJECT) { throw mismatch(parser, "an object"); }
+			// The constructor is only needed to read objects, so a class without one can still be written
+			if (constructor == null) { constructor = getConstructor(type); }
+			Object target = newInstance(constructor);
+			int next = 0;
+			while (parser.next() == JsonToken.NAME) {
+				int index = find(parser, next);
+				parser.next();
+				if (index < 0) {
+					parser.skipValue();
+				} else {
+					bindings[index].read(parser, target);
+					next = index + 1;
+				}
+			}
+			return target;
+		}
+		
+		@Override
+		public void write(JsonWriter writer, Object value) throws IOException {
+			if (value == null) {
+				writer.nullValue();
+				return;
+			}
+			writer.beginObject();
+			for (Binding binding : bindings) { binding.write(writer, value); }
+			writer.endObject();
+		}
+		
+		/**
+		 * Finds the binding of the current name. Members usually appear in the same order as the fields, so the
+		 * search starts at the binding after the one that was found last.
+		 * @param parser The parser, positioned at a name
+		 * @param start The index of the binding to try first
+		 * @return The index of the binding, <code>-1</code> if there is no field with the name
+		 */
+		private int find(JsonPullParser parser, int start) {
+			for (int i = 0; i < bindings.length; i += 1) {
+				int index = (start + i) % bindings.length;
+				if (parser.textEquals(bindings[index].name)) { return index; }
+			}
+			return -1;
+		}
+		
+	}
+	
+	/**
+	 * Binds a member of an object to a field.
+	 */
+	private static final class Binding {
+		
+		/** Contains the name of the member. */
+		final String name;
+		
+		/** Contains the field. */
+		private final Field field;
+		
+		/** Contains the codec of the type of the field. */
+		private final JsonCodec<Object> codec;
+		
+		/** Flag indicating that the field has a primitive type, so it is left alone when the member is null. */
+		private final boolean primitive;
+		
+		Binding(Field field, JsonCodec<Object> codec) {
+			this.name = field.getName();
+			this.field = field;
+			this.codec = codec;
+			this.primitive = field.getType().isPrimitive();
+		}
+		
+		/**
+		 * Reads the value of the member into the field.
+		 * @param parser The parser, positioned at the value of the member
+		 * @param target The object to set the field of
+		 * @throws IOException When the value could not be read
+		 */
+		void read(JsonPullParser parser, Object target) throws IOException {
+			Object value = codec.read(parser);
+			if (value == null && primitive) { return; }
+			try {
+				field.set(target, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Could not set " + field, e);
+			}
+		}
+		
+		/**
+		 * Writes the field as a member, unless it is <code>null</code>.
+		 * @param writer The writer to write the member to
+		 * @param source The object to get the field of
+		 * @throws IOException When the member could not be written
+		 */
+		void write(JsonWriter writer, Object source) throws IOException {
+			Object value;
+			try {
+				value = field.get(source);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Could not get " + field, e);
+			}
+			if (value == null) { return; }
+			writer.name(name);
+			codec.write(writer, value);
+		}
+		
+	}
+	
+	/**
+	 * A generic type of which the type variables have been replaced. Equal to (and with the same hash code as)
+	 * the types of the platform, so the codecs of both are kept as one.
+	 */
+	private static final class ResolvedType implements ParameterizedType {
+		
+		/** Contains the class of the type. */
+		private final Class<?> raw;
+		
+		/** Contains the type the class is a member of, <code>null</code> for a top level class. */
+		private final Type owner;
+		
+		/** Contains the type arguments. */
+		private final Type[] arguments;
+		
+		ResolvedType(Class<?> raw, Type owner, Type[] arguments) {
+			this.raw = raw;
+			this.owner = owner;
+			this.arguments = arguments;
+		}
+		
+		@Override
+		public Type[] getActualTypeArguments() {
+			return arguments.clone();
+		}
+		
+		@Override
+		public Type getRawType() {
+			return raw;
+		}
+		
+		@Override
+		public Type getOwnerType() {
+			return owner;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof ParameterizedType)) { return false; }
+			ParameterizedType type = (ParameterizedType) other;
+			return raw.equals(type.getRawType()) && Objects.equals(owner, type.getOwnerType())
+					&& Arrays.equals(arguments, type.getActualTypeArguments());
+		}
+		
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(arguments) ^ Objects.hashCode(owner) ^ raw.hashCode();
+		}
+		
+		@Override
+		public String toString() {
+			return raw.getName() + Arrays.toString(arguments);
+		}
+		
+	}
+	
+}
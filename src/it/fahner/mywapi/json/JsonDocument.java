@@ -0,0 +1,427 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A JSON document of which only the structure has been read, so its values can be read selectively.
+ * <p>Reading a document makes a single pass over its bytes, which only finds where every value and name starts
+ * and where every array and object ends. This index (the tape) takes 8 bytes per value or name, and refers to the
+ * bytes of the document instead of copying them. Values are only decoded once they are accessed through a
+ * {@link JsonNode}, so reading a few values from a large document costs time and memory in proportion to the
+ * values that are read, not to the size of the document.</p>
+ * <p>The structure of the document and the syntax of its numbers and literals are checked while it is indexed.
+ * Escape sequences and the encoding of strings are only checked once they are decoded.</p>
+ * @see it.fahner.mywapi.http.HttpResponse#getJson()
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class JsonDocument {
+	
+	/** Scope of the document before its value. */
+	private static final int EMPTY_DOCUMENT = 0;
+	
+	/** Scope of the document after its value. */
+	private static final int NONEMPTY_DOCUMENT = 1;
+	
+	/** Scope of an array before its first element. */
+	private static final int EMPTY_ARRAY = 2;
+	
+	/** Scope of an array after an element. */
+	private static final int NONEMPTY_ARRAY = 3;
+	
+	/** Scope of an object before its first member. */
+	private static final int EMPTY_OBJECT = 4;
+	
+	/** Scope of an object after the name of a member. */
+	private static final int DANGLING_NAME = 5;
+	
+	/** Scope of an object after a member. */
+	private static final int NONEMPTY_OBJECT = 6;
+	
+	/** Position of the token of an entry, in the top 4 bits. */
+	private static final int TOKEN_SHIFT = 60;
+	
+	/** Position of the index after an array or object, in the 28 bits below the token. */
+	private static final int END_SHIFT = 32;
+	
+	/** The largest amount of entries a tape can hold. */
+	private static final int MAX_ENTRIES = (1 << 28) - 1;
+	
+	/** The amount of bytes a parser over a single value copies at a time, if it has to copy. */
+	private static final int VALUE_BLOCK_SIZE = 256;
+	
+	/** Contains all tokens, by their ordinal. */
+	private static final JsonToken[] TOKENS = JsonToken.values();
+	
+	/** Contains the bytes of the document. */
+	private final ByteBuffer data;
+	
+	/** Contains an entry for every value and name: its token, the end of an array or object and its offset. */
+	private long[] tape;
+	
+	/** Contains the amount of entries on the tape. */
+	private int entries;
+	
+	private JsonDocument(ByteBuffer data) {
+		this.data = data;
+		this.tape = new long[Math.max(16, Math.min(data.remaining() / 8, 1 << 16))];
+	}
+	
+	@Override
+	public String toString() {
+		return "{JsonDocument: " + entries + " values and names in " + data.limit() + " bytes }";
+	}
+	
+	/**
+	 * Indexes a document that is held in an array, without copying it.
+	 * @since MyWebApi 1.0
+	 * @param data The array that holds the document, which must not change while the document is used
+	 * @param offset The index of the first byte of the document
+	 * @param length The length of the document in bytes
+	 * @return The indexed document
+	 * @throws JsonParseException When the structure of the document is malformed
+	 */
+	public static JsonDocument parse(byte[] data, int offset, int length) throws JsonParseException {
+		return parse(ByteBuffer.wrap(data, offset, length));
+	}
+	
+	/**
+	 * Indexes a document that is held in a buffer, from its position up to its limit, without copying it.
+	 * @since MyWebApi 1.0
+	 * @param data The buffer that holds the document, which must not change while the document is used
+	 * @return The indexed document
+	 * @throws JsonParseException When the structure of the document is malformed
+	 */
+	public static JsonDocument parse(ByteBuffer data) throws JsonParseException {
+		JsonDocument document = new JsonDocument(data.slice());
+		document.index();
+		return document;
+	}
+	
+	/**
+	 * Returns the value of the document.
+	 * @since MyWebApi 1.0
+	 * @return The root value
+	 */
+	public JsonNode getRoot() {
+		return new JsonNode(this, 0);
+	}
+	
+	/**
+	 * Returns the size of the index of this document.
+	 * @since MyWebApi 1.0
+	 * @return The amount of values and names in the document
+	 */
+	public int getEntryCount() {
+		return entries;
+	}
+	
+	/**
+	 * Returns the token of an entry.
+	 * @param entry The index of the entry
+	 * @return {@link JsonToken#BEGIN_OBJECT}, {@link JsonToken#BEGIN_ARRAY}, {@link JsonToken#NAME} or a scalar
+	 */
+	JsonToken getToken(int entry) {
+		return TOKENS[(int) (tape[entry] >>> TOKEN_SHIFT)];
+	}
+	
+	/**
+	 * Returns the offset of an entry in the document.
+	 * @param entry The index of the entry
+	 * @return The offset of the first byte of the value or name
+	 */
+	int getOffset(int entry) {
+		return (int) tape[entry];
+	}
+	
+	/**
+	 * Returns the entry after a value, skipping all values inside an array or object.
+	 * @param entry The index of the entry of the value
+	 * @return The index of the next entry
+	 */
+	int skip(int entry) {
+		int end = (int) (tape[entry] >>> END_SHIFT) & MAX_ENTRIES;
+		return end > 0 ? end : entry + 1;
+	}
+	
+	/**
+	 * Checks if the name of an entry is equal to a string, by comparing the bytes of the name to the encoded
+	 * string. Only a name with escape sequences is decoded.
+	 * @param entry The index of the entry of the name
+	 * @param name The name to compare with
+	 * @param encoded The name encoded in UTF-8
+	 * @return <code>true</code> if the name is equal
+	 * @throws JsonParseException When the name is malformed
+	 */
+	boolean nameEquals(int entry, String name, byte[] encoded) throws JsonParseException {
+		int start = getOffset(entry) + 1;
+		if (start + encoded.length >= data.limit()) { return false; }
+		for (int i = 0; i < encoded.length; i += 1) {
+			byte b = data.get(start + i);
+			if (b == '\\') { return name.equals(open(entry).getString()); }
+			if (b != encoded[i]) { return false; }
+		}
+		byte after = data.get(start + encoded.length);
+		if (after == '\\') { return name.equals(open(entry).getString()); }
+		return after == '"';
+	}
+	
+	/**
+	 * Creates a parser that reads the value or name of an entry.
+	 * @param entry The index of the entry
+	 * @return The parser, positioned at the first token of the value, or at the name as a string
+	 * @throws JsonParseException When the value is malformed
+	 */
+	JsonPullParser open(int entry) throws JsonParseException {
+		ByteBuffer value = data.duplicate();
+		value.position(getOffset(entry));
+		JsonPullParser parser = new JsonPullParser(value, getOffset(entry), VALUE_BLOCK_SIZE);
+		try {
+			parser.next();
+		} catch (JsonParseException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return parser;
+	}
+	
+	/**
+	 * Builds the tape of this document.
+	 * @throws JsonParseException When the structure of the document is malformed
+	 */
+	private void index() throws JsonParseException {
+		int end = data.limit();
+		int pos = 0;
+		if (end >= 3 && data.get(0) == (byte) 0xef && data.get(1) == (byte) 0xbb && data.get(2) == (byte) 0xbf) {
+			pos = 3;
+		}
+		int[] scopes = new int[32];
+		int[] starts = new int[32];
+		int depth = 1;
+		scopes[0] = EMPTY_DOCUMENT;
+		while (true) {
+			pos = skipWhitespace(pos);
+			int c = pos < end ? data.get(pos) & 0xff : -1;
+			switch (scopes[depth - 1]) {
+			case EMPTY_DOCUMENT:
+				if (c == -1) { throw syntaxError("Empty document", pos); }
+				scopes[depth - 1] = NONEMPTY_DOCUMENT;
+				break;
+			case NONEMPTY_DOCUMENT:
+				if (c != -1) { throw syntaxError("Unexpected data after the document", pos); }
+				return;
+			case EMPTY_ARRAY:
+			case NONEMPTY_ARRAY:
+				if (c == ']') {
+					depth -= 1;
+					tape[starts[depth]] |= (long) entries << END_SHIFT;
+					pos += 1;
+					continue;
+				}
+				if (scopes[depth - 1] == NONEMPTY_ARRAY) {
+					if (c != ',') { throw syntaxError("Expected ',' or ']'", pos); }
+					pos = skipWhitespace(pos + 1);
+					c = pos < end ? data.get(pos) & 0xff : -1;
+				}
+				scopes[depth - 1] = NONEMPTY_ARRAY;
+				break;
+			case EMPTY_OBJECT:
+			case NONEMPTY_OBJECT:
+				if (c == '}') {
+					depth -= 1;
+					tape[starts[depth]] |= (long) entries << END_SHIFT;
+					pos += 1;
+					continue;
+				}
+				if (scopes[depth - 1] == NONEMPTY_OBJECT) {
+					if (c != ',') { throw syntaxError("Expected ',' or '}'", pos); }
+					pos = skipWhitespace(pos + 1);
+					c = pos < end ? data.get(pos) & 0xff : -1;
+				}
+				if (c != '"') { throw syntaxError("Expected a name", pos); }
+				add(JsonToken.NAME, pos);
+				pos = skipString(pos);
+				scopes[depth - 1] = DANGLING_NAME;
+				continue;
+			default:
+				if (c != ':') { throw syntaxError("Expected ':'", pos); }
+				pos = skipWhitespace(pos + 1);
+				c = pos < end ? data.get(pos) & 0xff : -1;
+				scopes[depth - 1] = NONEMPTY_OBJECT;
+				break;
+			}
+			
+			// Index the value that starts at the current position
+			if (c == '{' || c == '[') {
+				if (depth == scopes.length) {
+					scopes = Arrays.copyOf(scopes, depth * 2);
+					starts = Arrays.copyOf(starts, depth * 2);
+				}
+				scopes[depth] = c == '{' ? EMPTY_OBJECT : EMPTY_ARRAY;
+				starts[depth] = entries;
+				depth += 1;
+				add(c == '{' ? JsonToken.BEGIN_OBJECT : JsonToken.BEGIN_ARRAY, pos);
+				pos += 1;
+			} else if (c == '"') {
+				add(JsonToken.STRING, pos);
+				pos = skipString(pos);
+			} else if (c == 't') {
+				add(JsonToken.TRUE, pos);
+				pos = skipLiteral(pos, "true");
+			} else if (c == 'f') {
+				add(JsonToken.FALSE, pos);
+				pos = skipLiteral(pos, "false");
+			} else if (c == 'n') {
+				add(JsonToken.NULL, pos);
+				pos = skipLiteral(pos, "null");
+			} else if (c == '-' || (c >= '0' && c <= '9')) {
+				add(JsonToken.NUMBER, pos);
+				pos = skipNumber(pos);
+			} else {
+				throw syntaxError("Expected a value", pos);
+			}
+		}
+	}
+	
+	/**
+	 * Adds an entry to the tape.
+	 * @param token The token of the value or name
+	 * @param offset The offset of its first byte
+	 * @throws JsonParseException When the document has too many values to index
+	 */
+	private void add(JsonToken token, int offset) throws JsonParseException {
+		if (entries == tape.length) {
+			if (entries == MAX_ENTRIES) { throw syntaxError("Too many values to index", offset); }
+			tape = Arrays.copyOf(tape, (int) Math.min(MAX_ENTRIES, (long) entries * 2));
+		}
+		tape[entries++] = ((long) token.ordinal() << TOKEN_SHIFT) | (offset & 0xffffffffL);
+	}
+	
+	/**
+	 * Skips whitespace.
+	 * @param pos The offset to start at
+	 * @return The offset of the first byte that is not whitespace
+	 */
+	private int skipWhitespace(int pos) {
+		int end = data.limit();
+		while (pos < end) {
+			byte c = data.get(pos);
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') { break; }
+			pos += 1;
+		}
+		return pos;
+	}
+	
+	/**
+	 * Skips a string without decoding it.
+	 * @param start The offset of its opening quote
+	 * @return The offset after its closing quote
+	 * @throws JsonParseException When the string is not terminated or contains a control character
+	 */
+	private int skipString(int start) throws JsonParseException {
+		int end = data.limit();
+		int pos = start + 1;
+		while (pos < end) {
+			byte c = data.get(pos++);
+			if (c == '"') { return pos; }
+			if (c == '\\') {
+				pos += 1;
+			} else if (c >= 0 && c < 0x20) {
+				throw syntaxError("Unescaped control character in string", start);
+			}
+		}
+		throw syntaxError("Unterminated string", start);
+	}
+	
+	/**
+	 * Skips a number without decoding it, after checking its syntax.
+	 * @param start The offset of its first character
+	 * @return The offset after its last character
+	 * @throws JsonParseException When the number is malformed
+	 */
+	private int skipNumber(int start) throws JsonParseException {
+		int pos = start;
+		if (data.get(pos) == '-') { pos += 1; }
+		if (pos < data.limit() && data.get(pos) == '0') {
+			pos += 1;
+		} else {
+			pos = skipDigits(start, pos);
+		}
+		if (pos < data.limit() && data.get(pos) == '.') { pos = skipDigits(start, pos + 1); }
+		if (pos < data.limit() && (data.get(pos) == 'e' || data.get(pos) == 'E')) {
+			pos += 1;
+			if (pos < data.limit() && (data.get(pos) == '+' || data.get(pos) == '-')) { pos += 1; }
+			pos = skipDigits(start, pos);
+		}
+		if (pos < data.limit() && isDigit(data.get(pos))) { throw syntaxError("Malformed number", start); }
+		return pos;
+	}
+	
+	/**
+	 * Skips the digits in a number, of which there must be at least one.
+	 * @param start The offset of the first character of the number
+	 * @param pos The offset of the first digit
+	 * @return The offset after the last digit
+	 * @throws JsonParseException When there is no digit
+	 */
+	private int skipDigits(int start, int pos) throws JsonParseException {
+		int first = pos;
+		while (pos < data.limit() && isDigit(data.get(pos))) { pos += 1; }
+		if (pos == first) { throw syntaxError("Malformed number", start); }
+		return pos;
+	}
+	
+	/**
+	 * Skips a literal, after checking its spelling.
+	 * @param start The offset of its first character
+	 * @param literal The literal
+	 * @return The offset after its last character
+	 * @throws JsonParseException When the literal is misspelled
+	 */
+	private int skipLiteral(int start, String literal) throws JsonParseException {
+		if (start + literal.length() > data.limit()) { throw syntaxError("Malformed literal", start); }
+		for (int i = 1; i < literal.length(); i += 1) {
+			if (data.get(start + i) != literal.charAt(i)) { throw syntaxError("Malformed literal", start); }
+		}
+		return start + literal.length();
+	}
+	
+	/**
+	 * Checks if a byte is a decimal digit.
+	 * @param c The byte
+	 * @return <code>true</code> if it is a digit
+	 */
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	/**
+	 * Creates the exception for a malformed document.
+	 * @param message The description of the error
+	 * @param offset The offset at which the error was found
+	 * @return The exception
+	 */
+	private static JsonParseException syntaxError(String message, int offset) {
+		return new JsonParseException(message, offset);
+	}
+	
+}
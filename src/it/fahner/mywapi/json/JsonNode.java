@@ -0,0 +1,286 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * A single value in a {@link JsonDocument}.
+ * <p>A node is only a reference to an entry in the index of its document, creating one costs next to nothing. Its
+ * value is decoded from the bytes of the document every time it is read, so keep the result instead of reading
+ * the same value more than once.</p>
+ * <p>Elements and members are found by walking the index, skipping over nested arrays and objects without
+ * looking at their contents. Looking up an element or member takes time in proportion to the size of its
+ * parent (not the size of the document), so iterate over a large array by index only once.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class JsonNode {
+	
+	/** Contains the charset names are encoded in. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/** Contains the document this node is part of. */
+	private final JsonDocument document;
+	
+	/** Contains the index of the entry of this node in the document. */
+	private final int entry;
+	
+	/**
+	 * Creates a reference to a value in a document.
+	 * @param document The document
+	 * @param entry The index of the entry of the value
+	 */
+	JsonNode(JsonDocument document, int entry) {
+		this.document = document;
+		this.entry = entry;
+	}
+	
+	@Override
+	public String toString() {
+		return "{JsonNode: " + getType() + " at offset " + getOffset() + " }";
+	}
+	
+	/**
+	 * Returns the type of this value.
+	 * @since MyWebApi 1.0
+	 * @return {@link JsonToken#BEGIN_OBJECT} for an object, {@link JsonToken#BEGIN_ARRAY} for an array, or
+	 * the token of a scalar value
+	 */
+	public JsonToken getType() {
+		return document.getToken(entry);
+	}
+	
+	/**
+	 * Checks if this value is the literal <code>null</code>.
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if this value is <code>null</code>
+	 */
+	public boolean isNull() {
+		return getType() == JsonToken.NULL;
+	}
+	
+	/**
+	 * Returns the offset of this value in its document.
+	 * @since MyWebApi 1.0
+	 * @return The offset in bytes of the first byte of this value
+	 */
+	public int getOffset() {
+		return document.getOffset(entry);
+	}
+	
+	/**
+	 * Returns the amount of elements in this array, or members in this object.
+	 * @since MyWebApi 1.0
+	 * @return The amount of elements or members, <code>0</code> if this is not an array or object
+	 */
+	public int size() {
+		int count = 0;
+		for (int i = first(), end = document.skip(entry); i < end; i = advance(i)) {
+			count += 1;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns an element of this array, or the value of a member of this object.
+	 * @since MyWebApi 1.0
+	 * @param index The index of the element or member
+	 * @return The value, <code>null</code> if there is no such element or member, or this is not an array or object
+	 */
+	public JsonNode get(int index) {
+		if (index < 0) { return null; }
+		int i = first();
+		for (int end = document.skip(entry); i < end; i = advance(i)) {
+			if (index-- == 0) { return new JsonNode(document, isObject() ? i + 1 : i); }
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the value of a member of this object. If the object has more than one member with the name, the
+	 * first one is returned.
+	 * @since MyWebApi 1.0
+	 * @param name The name of the member
+	 * @return The value, <code>null</code> if there is no such member or this is not an object
+	 * @throws JsonParseException When the name of a member is malformed
+	 */
+	public JsonNode get(String name) throws JsonParseException {
+		if (!isObject()) { return null; }
+		byte[] encoded = name.getBytes(UTF8);
+		for (int i = entry + 1, end = document.skip(entry); i < end; i = document.skip(i + 1)) {
+			if (document.nameEquals(i, name, encoded)) { return new JsonNode(document, i + 1); }
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the name of a member of this object.
+	 * @since MyWebApi 1.0
+	 * @param index The index of the member
+	 * @return The name, <code>null</code> if there is no such member or this is not an object
+	 * @throws JsonParseException When the name is malformed
+	 */
+	public String getName(int index) throws JsonParseException {
+		if (!isObject() || index < 0) { return null; }
+		for (int i = entry + 1, end = document.skip(entry); i < end; i = document.skip(i + 1)) {
+			if (index-- == 0) { return document.open(i).getString(); }
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns this string.
+	 * @since MyWebApi 1.0
+	 * @return The decoded string, <code>null</code> if this value is <code>null</code>
+	 * @throws JsonParseException When this is not a string, or the string is malformed
+	 */
+	public String asString() throws JsonParseException {
+		if (isNull()) { return null; }
+		return open(JsonToken.STRING, "a string").getString();
+	}
+	
+	/**
+	 * Returns this number as a long.
+	 * @since MyWebApi 1.0
+	 * @return The value
+	 * @throws JsonParseException When this is not a number, or not an integer that fits in a long
+	 */
+	public long asLong() throws JsonParseException {
+		JsonPullParser parser = open(JsonToken.NUMBER, "a number");
+		try {
+			return parser.getLong();
+		} catch (NumberFormatException e) {
+			throw new JsonParseException(e.getMessage(), getOffset());
+		}
+	}
+	
+	/**
+	 * Returns this number as an int.
+	 * @since MyWebApi 1.0
+	 * @return The value
+	 * @throws JsonParseException When this is not a number, or not an integer that fits in an int
+	 */
+	public int asInt() throws JsonParseException {
+		JsonPullParser parser = open(JsonToken.NUMBER, "a number");
+		try {
+			return parser.getInt();
+		} catch (NumberFormatException e) {
+			throw new JsonParseException(e.getMessage(), getOffset());
+		}
+	}
+	
+	/**
+	 * Returns this number as a double.
+	 * @since MyWebApi 1.0
+	 * @return The value, rounded to the nearest double
+	 * @throws JsonParseException When this is not a number
+	 */
+	public double asDouble() throws JsonParseException {
+		return open(JsonToken.NUMBER, "a number").getDouble();
+	}
+	
+	/**
+	 * Returns this literal <code>true</code> or <code>false</code>.
+	 * @since MyWebApi 1.0
+	 * @return The value
+	 * @throws JsonParseException When this is not <code>true</code> or <code>false</code>
+	 */
+	public boolean asBoolean() throws JsonParseException {
+		JsonToken type = getType();
+		if (type != JsonToken.TRUE && type != JsonToken.FALSE) { throw mismatch("a boolean"); }
+		return type == JsonToken.TRUE;
+	}
+	
+	/**
+	 * Decodes this value, including everything inside it.
+	 * @since MyWebApi 1.0
+	 * @param codec The codec that reads the value
+	 * @return The decoded value
+	 * @throws JsonParseException When the value is malformed, or does not match the type of the codec
+	 */
+	public <T> T as(JsonCodec<T> codec) throws JsonParseException {
+		try {
+			return codec.read(document.open(entry));
+		} catch (JsonParseException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Decodes this value, including everything inside it, into an object of a class.
+	 * @since MyWebApi 1.0
+	 * @see JsonCodec#of(Class)
+	 * @param type The class to decode into
+	 * @return The decoded value
+	 * @throws JsonParseException When the value is malformed, or does not match the class
+	 */
+	public <T> T as(Class<T> type) throws JsonParseException {
+		return as(JsonCodec.of(type));
+	}
+	
+	/**
+	 * Checks if this value is an object.
+	 * @return <code>true</code> if it is an object
+	 */
+	private boolean isObject() {
+		return getType() == JsonToken.BEGIN_OBJECT;
+	}
+	
+	/**
+	 * Returns the entry of the first element or member of this array or object.
+	 * @return The index of the entry, which is not before the end of this value if it is empty or a scalar
+	 */
+	private int first() {
+		JsonToken type = getType();
+		return type == JsonToken.BEGIN_OBJECT || type == JsonToken.BEGIN_ARRAY ? entry + 1 : document.skip(entry);
+	}
+	
+	/**
+	 * Returns the entry after an element or member of this array or object.
+	 * @param i The index of the entry of the element, or of the name of the member
+	 * @return The index of the entry of the next element or member
+	 */
+	private int advance(int i) {
+		return isObject() ? document.skip(i + 1) : document.skip(i);
+	}
+	
+	/**
+	 * Creates a parser positioned at this scalar value.
+	 * @param expected The token this value must have
+	 * @param description The description of the token, for the error message
+	 * @return The parser
+	 * @throws JsonParseException When this value has another token, or is malformed
+	 */
+	private JsonPullParser open(JsonToken expected, String description) throws JsonParseException {
+		if (getType() != expected) { throw mismatch(description); }
+		return document.open(entry);
+	}
+	
+	/**
+	 * Creates the exception for a value that does not have the expected type.
+	 * @param expected The description of the expected type
+	 * @return The exception
+	 */
+	private JsonParseException mismatch(String expected) {
+		return new JsonParseException("Expected " + expected + " but found " + getType(), getOffset());
+	}
+	
+}
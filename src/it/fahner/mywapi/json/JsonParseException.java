@@ -0,0 +1,47 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a JSON document is malformed.
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class JsonParseException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/** Contains the offset in bytes from the start of the document at which the error was found. */
+	private final long offset;
+	
+	public JsonParseException(String message, long offset) {
+		super(message + " at offset " + offset);
+		this.offset = offset;
+	}
+	
+	/**
+	 * Returns the position at which the document was found to be malformed.
+	 * @since MyWebApi 1.0
+	 * @return The offset in bytes from the start of the document
+	 */
+	public long getOffset() {
+		return offset;
+	}
+	
+}
@@ -0,0 +1,867 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads a JSON document token by token, straight from its UTF-8 encoded bytes.
+ * <p>The document is never turned into a tree, nor into a string: bytes are read from the stream in blocks
+ * and decoded one token at a time. Reading a token does not allocate any objects; the text of a name, string or
+ * number is decoded into a buffer that is reused for every token, and only copied when it is asked for (see
+ * {@link #getString()}). A parser over the stream of a {@link it.fahner.mywapi.http.HttpResponseStream} parses
+ * the body while it is being received.</p>
+ * <p>JSON exchanged over HTTP is always encoded in UTF-8 (RFC 8259), so the charset of the response is not
+ * used. Values that are skipped (see {@link #skipValue()}) are only checked for balanced brackets.</p>
+ * <p><code>
+ * parser.next(); // BEGIN_OBJECT<br>
+ * while (parser.next() == JsonToken.NAME) {<br>
+ * &nbsp;&nbsp;if (parser.textEquals("id")) { parser.next(); id = parser.getLong(); } else { parser.skipValue(); }<br>
+ * }
+ * </code></p>
+ * @see it.fahner.mywapi.http.HttpResponse#getJsonParser()
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class JsonPullParser implements Closeable {
+	
+	/**
+	 * The maximum amount of arrays and objects that can be nested in each other by default.
+	 * @since MyWebApi 1.0
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 512;
+	
+	/** Scope of the document before its value. */
+	private static final int EMPTY_DOCUMENT = 0;
+	
+	/** Scope of the document after its value. */
+	private static final int NONEMPTY_DOCUMENT = 1;
+	
+	/** Scope of an array before its first element. */
+	private static final int EMPTY_ARRAY = 2;
+	
+	/** Scope of an array after an element. */
+	private static final int NONEMPTY_ARRAY = 3;
+	
+	/** Scope of an object before its first member. */
+	private static final int EMPTY_OBJECT = 4;
+	
+	/** Scope of an object after the name of a member. */
+	private static final int DANGLING_NAME = 5;
+	
+	/** Scope of an object after a member. */
+	private static final int NONEMPTY_OBJECT = 6;
+	
+	/** Contains the stream the document is read from, <code>null</code> if it is not read from a stream. */
+	private InputStream in;
+	
+	/** Contains the buffer the document is copied from, <code>null</code> if it is not copied from a buffer. */
+	private ByteBuffer source;
+	
+	/** Contains the bytes that have been read but not parsed yet. */
+	private byte[] buffer;
+	
+	/** Contains the index in the buffer of the next byte to parse. */
+	private int pos;
+	
+	/** Contains the index in the buffer after the last byte that has been read. */
+	private int limit;
+	
+	/** Contains the offset in the document of the first byte in the buffer. */
+	private long bufferOffset;
+	
+	/** Contains the scopes of the open arrays and objects, starting with the document itself. */
+	private int[] scopes;
+	
+	/** Contains the amount of scopes in use. */
+	private int depth;
+	
+	/** Contains the current token, <code>null</code> before the first token. */
+	private JsonToken token;
+	
+	/** Contains the offset in the document of the first byte of the current token. */
+	private long tokenOffset;
+	
+	/** Contains the decoded text of the current name, string or number. */
+	private char[] text;
+	
+	/** Contains the length of the text of the current token. */
+	private int textLength;
+	
+	/** Flag indicating that the current number has no fraction and no exponent. */
+	private boolean integral;
+	
+	/** Flag indicating that more than one value may follow each other at the top level. */
+	private boolean multipleValues;
+	
+	/** Contains the maximum amount of arrays and objects that can be nested in each other. */
+	private int maxDepth;
+	
+	/**
+	 * Creates a new parser that reads a document from a stream.
+	 * @since MyWebApi 1.0
+	 * @param in The stream to read the document from
+	 */
+	public JsonPullParser(InputStream in) {
+		this(0);
+		this.in = in;
+		this.buffer = new byte[8192];
+	}
+	
+	/**
+	 * Creates a new parser that reads a document from an array, without copying it.
+	 * @since MyWebApi 1.0
+	 * @param data The array that holds the document, which must not change while it is parsed
+	 * @param offset The index of the first byte of the document
+	 * @param length The length of the document in bytes
+	 */
+	public JsonPullParser(byte[] data, int offset, int length) {
+		this(0);
+		this.buffer = data;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.bufferOffset = -offset;
+	}
+	
+	/**
+	 * Creates a new parser that reads a document from a buffer, from its position up to its limit. The document
+	 * is read without copying it if the buffer is backed by a writable array, and copied in blocks otherwise.
+	 * @since MyWebApi 1.0
+	 * @param data The buffer that holds the document, which must not change while it is parsed
+	 */
+	public JsonPullParser(ByteBuffer data) {
+		this(data, 0, 8192);
+	}
+	
+	/**
+	 * Creates a new parser that reads part of a larger document from a buffer.
+	 * @param data The buffer that holds the document, from its position up to its limit
+	 * @param origin The offset in the larger document of the position of the buffer
+	 * @param blockSize The amount of bytes to copy at a time, if the buffer is not backed by a writable array
+	 */
+	JsonPullParser(ByteBuffer data, long origin, int blockSize) {
+		this(origin);
+		if (data.hasArray() && !data.isReadOnly()) {
+			this.buffer = data.array();
+			this.pos = data.arrayOffset() + data.position();
+			this.limit = data.arrayOffset() + data.limit();
+			this.bufferOffset = origin - pos;
+		} else {
+			this.source = data.duplicate();
+			this.buffer = new byte[Math.min(blockSize, Math.max(1, data.remaining()))];
+		}
+	}
+	
+	private JsonPullParser(long origin) {
+		this.bufferOffset = origin;
+		this.scopes = new int[32];
+		this.scopes[0] = EMPTY_DOCUMENT;
+		this.depth = 1;
+		this.maxDepth = DEFAULT_MAX_DEPTH;
+		this.text = new char[64];
+	}
+	
+	@Override
+	public String toString() {
+		return "{JsonPullParser: " + token + " at offset " + tokenOffset + " }";
+	}
+	
+	/**
+	 * Specifies whether the document may consist of a sequence of values instead of a single one, separated by
+	 * whitespace, like newline-delimited JSON (NDJSON). {@link JsonToken#END_DOCUMENT} is then only returned
+	 * after the last value, or right away for a document without any value. The record separators
+	 * (<code>0x1E</code>) that precede every value in a JSON text sequence (<code>application/json-seq</code>,
+	 * RFC 7464) are skipped as well, and separate values just like whitespace does. Values that are not separated
+	 * at all (like <code>truefalse</code>) are rejected.
+	 * <p>Is set to <code>false</code> by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param multipleValues <code>true</code> to accept more than one value at the top level
+	 */
+	public void setMultipleValues(boolean multipleValues) {
+		this.multipleValues = multipleValues;
+	}
+	
+	/**
+	 * Sets the maximum amount of arrays and objects that can be nested in each other. A document that nests them
+	 * any deeper is rejected, which protects everything that reads values recursively (like the codecs) from
+	 * running out of stack. Arrays and objects that are skipped with {@link #skipValue()} do not count.
+	 * <p>Is set to {@link #DEFAULT_MAX_DEPTH} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param maxDepth The maximum nesting depth
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = Math.max(1, maxDepth);
+	}
+	
+	/**
+	 * Reads the next token.
+	 * @since MyWebApi 1.0
+	 * @return The token, {@link JsonToken#END_DOCUMENT} once the whole document has been read
+	 * @throws JsonParseException When the document is malformed
+	 * @throws IOException When the document could not be read
+	 */
+	public JsonToken next() throws IOException {
+		if (token == JsonToken.END_DOCUMENT) { return token; }
+		long end = bufferOffset + pos;
+		int c = nextNonWhitespace();
+		switch (scopes[depth - 1]) {
+		case EMPTY_DOCUMENT:
+			if (c == 0xef) { c = skipByteOrderMark(); }
+			if (multipleValues) { c = skipRecordSeparators(c); }
+			if (c == -1 && multipleValues) { return token = JsonToken.END_DOCUMENT; }
+			if (c == -1) { throw syntaxError("Empty document"); }
+			scopes[depth - 1] = NONEMPTY_DOCUMENT;
+			return token = value(c);
+		case NONEMPTY_DOCUMENT:
+			// Values that follow each other directly (like "1" and "2" in "12") cannot be told apart
+			if (multipleValues && c != -1 && c != 0x1e && tokenOffset == end) {
+				throw syntaxError("Expected whitespace or a record separator between values but found " + describe(c));
+			}
+			if (multipleValues) { c = skipRecordSeparators(c); }
+			if (c != -1 && multipleValues) { return token = value(c); }
+			if (c != -1) { throw syntaxError("Unexpected " + describe(c) + " after the document"); }
+			return token = JsonToken.END_DOCUMENT;
+		case EMPTY_ARRAY:
+			if (c == ']') { return token = pop(); }
+			scopes[depth - 1] = NONEMPTY_ARRAY;
+			return token = value(c);
+		case NONEMPTY_ARRAY:
+			if (c == ']') { return token = pop(); }
+			if (c != ',') { throw syntaxError("Expected ',' or ']' but found " + describe(c)); }
+			return token = value(nextNonWhitespace());
+		case EMPTY_OBJECT:
+			if (c == '}') { return token = pop(); }
+			return token = name(c);
+		case NONEMPTY_OBJECT:
+			if (c == '}') { return token = pop(); }
+			if (c != ',') { throw syntaxError("Expected ',' or '}' but found " + describe(c)); }
+			return token = name(nextNonWhitespace());
+		default:
+			if (c != ':') { throw syntaxError("Expected ':' but found " + describe(c)); }
+			scopes[depth - 1] = NONEMPTY_OBJECT;
+			return token = value(nextNonWhitespace());
+		}
+	}
+	
+	/**
+	 * Skips the value that starts at the current token. If the current token is {@link JsonToken#BEGIN_OBJECT} or
+	 * {@link JsonToken#BEGIN_ARRAY}, everything up to the matching end is skipped without being decoded. If it is
+	 * {@link JsonToken#NAME}, the value of that member is skipped. Does nothing for any other token.
+	 * <p>Afterwards the current token is the last token of the skipped value.</p>
+	 * @since MyWebApi 1.0
+	 * @throws JsonParseException When the document is malformed
+	 * @throws IOException When the document could not be read
+	 */
+	public void skipValue() throws IOException {
+		if (token == JsonToken.NAME) { next(); }
+		if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY) { return; }
+		int nesting = 1;
+		while (true) {
+			while (pos < limit) {
+				byte c = buffer[pos++];
+				if (c == '"') {
+					skipString();
+				} else if (c == '{' || c == '[') {
+					nesting += 1;
+				} else if ((c == '}' || c == ']') && --nesting == 0) {
+					tokenOffset = bufferOffset + pos - 1;
+					if ((c == '}') != (token == JsonToken.BEGIN_OBJECT)) {
+						throw syntaxError("Unexpected " + describe(c));
+					}
+					token = pop();
+					return;
+				}
+			}
+			if (!fill()) { throw syntaxError("Unexpected end of document"); }
+		}
+	}
+	
+	/**
+	 * Returns the current token.
+	 * @since MyWebApi 1.0
+	 * @return The current token, <code>null</code> if {@link #next()} has not been called yet
+	 */
+	public JsonToken getToken() {
+		return token;
+	}
+	
+	/**
+	 * Returns the amount of arrays and objects that are open at the current token. The tokens that start and end
+	 * an array or object belong to the array or object itself.
+	 * @since MyWebApi 1.0
+	 * @return The nesting depth, <code>0</code> for a value outside of any array or object
+	 */
+	public int getDepth() {
+		int open = depth - 1;
+		return token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY ? open + 1 : open;
+	}
+	
+	/**
+	 * Returns the position of the current token in the document.
+	 * @since MyWebApi 1.0
+	 * @return The offset in bytes of the first byte of the current token
+	 */
+	public long getOffset() {
+		return tokenOffset;
+	}
+	
+	/**
+	 * Returns the text of the current name, string or number, as a new string.
+	 * @since MyWebApi 1.0
+	 * @return The decoded text
+	 * @throws IllegalStateException When the current token is not a name, string or number
+	 */
+	public String getString() {
+		checkText();
+		return new String(text, 0, textLength);
+	}
+	
+	/**
+	 * Returns the buffer that holds the decoded text of the current name, string or number, without copying it.
+	 * The buffer is reused by the next token.
+	 * @since MyWebApi 1.0
+	 * @return The buffer, of which the first {@link #getTextLength()} characters are the text
+	 * @throws IllegalStateException When the current token is not a name, string or number
+	 */
+	public char[] getTextCharacters() {
+		checkText();
+		return text;
+	}
+	
+	/**
+	 * Returns the length of the decoded text of the current name, string or number.
+	 * @since MyWebApi 1.0
+	 * @return The amount of characters
+	 * @throws IllegalStateException When the current token is not a name, string or number
+	 */
+	public int getTextLength() {
+		checkText();
+		return textLength;
+	}
+	
+	/**
+	 * Checks if the text of the current name, string or number is equal to a string, without copying it.
+	 * @since MyWebApi 1.0
+	 * @param value The string to compare with
+	 * @return <code>true</code> if the current token is a name, string or number with the given text
+	 */
+	public boolean textEquals(String value) {
+		if (token != JsonToken.NAME && token != JsonToken.STRING && token != JsonToken.NUMBER) { return false; }
+		if (value.length() != textLength) { return false; }
+		for (int i = 0; i < textLength; i += 1) {
+			if (text[i] != value.charAt(i)) { return false; }
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks if the current number is written without a fraction and without an exponent.
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if the current token is a number that is written as an integer
+	 */
+	public boolean isIntegral() {
+		return token == JsonToken.NUMBER && integral;
+	}
+	
+	/**
+	 * Returns the value of the current number as a long.
+	 * @since MyWebApi 1.0
+	 * @return The value
+	 * @throws IllegalStateException When the current token is not a number
+	 * @throws NumberFormatException When the number is not an integer, or does not fit in a long
+	 */
+	public long getLong() {
+		checkNumber();
+		if (integral && textLength <= 18) { return parseIntegral(); }
+		try {
+			return new BigDecimal(text, 0, textLength).longValueExact();
+		} catch (ArithmeticException e) {
+			throw new NumberFormatException("Not a long: " + getString());
+		}
+	}
+	
+	/**
+	 * Returns the value of the current number as an int.
+	 * @since MyWebApi 1.0
+	 * @return The value
+	 * @throws IllegalStateException When the current token is not a number
+	 * @throws NumberFormatException When the number is not an integer, or does not fit in an int
+	 */
+	public int getInt() {
+		long value = getLong();
+		if ((int) value != value) { throw new NumberFormatException("Not an int: " + getString()); }
+		return (int) value;
+	}
+	
+	/**
+	 * Returns the value of the current number as a double.
+	 * @since MyWebApi 1.0
+	 * @return The value, rounded to the nearest double
+	 * @throws IllegalStateException When the current token is not a number
+	 */
+	public double getDouble() {
+		checkNumber();
+		if (integral && textLength <= 15) {
+			long value = parseIntegral();
+			return value == 0 && text[0] == '-' ? -0.0 : value;
+		}
+		return Double.parseDouble(new String(text, 0, textLength));
+	}
+	
+	/**
+	 * Returns the value of the current literal <code>true</code> or <code>false</code>.
+	 * @since MyWebApi 1.0
+	 * @return The value
+	 * @throws IllegalStateException When the current token is not <code>true</code> or <code>false</code>
+	 */
+	public boolean getBoolean() {
+		if (token != JsonToken.TRUE && token != JsonToken.FALSE) {
+			throw new IllegalStateException("Current token is " + token + ", not a boolean");
+		}
+		return token == JsonToken.TRUE;
+	}
+	
+	/**
+	 * Closes the stream the document is read from.
+	 * @since MyWebApi 1.0
+	 * @throws IOException When the stream could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (in != null) { in.close(); }
+	}
+	
+	/**
+	 * Reads the value that starts with a character.
+	 * @param c The first character of the value
+	 * @return The token of the value
+	 * @throws IOException When the value is malformed or could not be read
+	 */
+	private JsonToken value(int c) throws IOException {
+		switch (c) {
+		case '{':
+			push(EMPTY_OBJECT);
+			return JsonToken.BEGIN_OBJECT;
+		case '[':
+			push(EMPTY_ARRAY);
+			return JsonToken.BEGIN_ARRAY;
+		case '"':
+			readString();
+			return JsonToken.STRING;
+		case 't':
+			readLiteral("rue");
+			return JsonToken.TRUE;
+		case 'f':
+			readLiteral("alse");
+			return JsonToken.FALSE;
+		case 'n':
+			readLiteral("ull");
+			return JsonToken.NULL;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				readNumber(c);
+				return JsonToken.NUMBER;
+			}
+			throw syntaxError("Expected a value but found " + describe(c));
+		}
+	}
+	
+	/**
+	 * Reads the name of a member.
+	 * @param c The first character of the name
+	 * @return The name token
+	 * @throws IOException When the name is malformed or could not be read
+	 */
+	private JsonToken name(int c) throws IOException {
+		if (c != '"') { throw syntaxError("Expected a name but found " + describe(c)); }
+		readString();
+		scopes[depth - 1] = DANGLING_NAME;
+		return JsonToken.NAME;
+	}
+	
+	/**
+	 * Opens a new array or object.
+	 * @param scope The scope of the new array or object
+	 * @throws JsonParseException When arrays and objects are nested too deeply
+	 */
+	private void push(int scope) throws JsonParseException {
+		if (depth > maxDepth) { throw syntaxError("Nesting deeper than " + maxDepth + " levels"); }
+		if (depth == scopes.length) { scopes = Arrays.copyOf(scopes, depth * 2); }
+		scopes[depth] = scope;
+		depth += 1;
+	}
+	
+	/**
+	 * Closes the innermost array or object.
+	 * @return The token that ends it
+	 */
+	private JsonToken pop() {
+		depth -= 1;
+		return scopes[depth] == EMPTY_ARRAY || scopes[depth] == NONEMPTY_ARRAY
+				? JsonToken.END_ARRAY
+				: JsonToken.END_OBJECT;
+	}
+	
+	/**
+	 * Reads the rest of a string into the text buffer, after its opening quote.
+	 * @throws IOException When the string is malformed or could not be read
+	 */
+	private void readString() throws IOException {
+		textLength = 0;
+		while (true) {
+			// Copy plain ASCII characters straight from the buffer
+			int end = pos;
+			while (end < limit) {
+				byte c = buffer[end];
+				if (c == '"' || c == '\\' || c < 0x20) { break; }
+				end += 1;
+			}
+			ensureText(end - pos);
+			while (pos < end) { text[textLength++] = (char) buffer[pos++]; }
+			if (pos == limit) {
+				if (!fill()) { throw syntaxError("Unterminated string"); }
+				continue;
+			}
+			int c = buffer[pos++] & 0xff;
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				readEscape();
+			} else if (c < 0x20) {
+				throw syntaxError("Unescaped control character in string");
+			} else {
+				readMultiByte(c);
+			}
+		}
+	}
+	
+	/**
+	 * Reads an escape sequence into the text buffer, after its backslash.
+	 * @throws IOException When the escape sequence is malformed or could not be read
+	 */
+	private void readEscape() throws IOException {
+		int c = read();
+		ensureText(1);
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			text[textLength++] = (char) c;
+			break;
+		case 'b':
+			text[textLength++] = '\b';
+			break;
+		case 'f':
+			text[textLength++] = '\f';
+			break;
+		case 'n':
+			text[textLength++] = '\n';
+			break;
+		case 'r':
+			text[textLength++] = '\r';
+			break;
+		case 't':
+			text[textLength++] = '\t';
+			break;
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i += 1) {
+				int digit = Character.digit(read(), 16);
+				if (digit < 0) { throw syntaxError("Malformed unicode escape"); }
+				value = (value << 4) | digit;
+			}
+			text[textLength++] = (char) value;
+			break;
+		default:
+			throw syntaxError("Invalid escape sequence");
+		}
+	}
+	
+	/**
+	 * Reads a character that is encoded in more than one byte into the text buffer.
+	 * @param lead The first byte of the character
+	 * @throws IOException When the character is not valid UTF-8 or could not be read
+	 */
+	private void readMultiByte(int lead) throws IOException {
+		int codePoint;
+		int extra;
+		if (lead >= 0xc2 && lead <= 0xdf) {
+			codePoint = lead & 0x1f;
+			extra = 1;
+		} else if (lead >= 0xe0 && lead <= 0xef) {
+			codePoint = lead & 0x0f;
+			extra = 2;
+		} else if (lead >= 0xf0 && lead <= 0xf4) {
+			codePoint = lead & 0x07;
+			extra = 3;
+		} else {
+			throw syntaxError("Malformed UTF-8");
+		}
+		for (int i = 0; i < extra; i += 1) {
+			int c = read();
+			if ((c & 0xc0) != 0x80) { throw syntaxError("Malformed UTF-8"); }
+			codePoint = (codePoint << 6) | (c & 0x3f);
+		}
+		if ((extra == 2 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint)))
+				|| (extra == 3 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT))) {
+			throw syntaxError("Malformed UTF-8");
+		}
+		ensureText(2);
+		textLength += Character.toChars(codePoint, text, textLength);
+	}
+	
+	/**
+	 * Reads a number into the text buffer.
+	 * @param first The first character of the number
+	 * @throws IOException When the number is malformed or could not be read
+	 */
+	private void readNumber(int first) throws IOException {
+		textLength = 0;
+		integral = true;
+		appendText(first);
+		int c = first;
+		if (c == '-') {
+			c = read();
+			if (!isDigit(c)) { throw syntaxError("Malformed number"); }
+			appendText(c);
+		}
+		if (c != '0') { readDigits(); }
+		if (peek() == '.') {
+			integral = false;
+			appendText(read());
+			if (!isDigit(peek())) { throw syntaxError("Malformed number"); }
+			readDigits();
+		}
+		c = peek();
+		if (c == 'e' || c == 'E') {
+			integral = false;
+			appendText(read());
+			c = peek();
+			if (c == '+' || c == '-') { appendText(read()); }
+			if (!isDigit(peek())) { throw syntaxError("Malformed number"); }
+			readDigits();
+		}
+	}
+	
+	/**
+	 * Reads all digits up to the next character that is not a digit into the text buffer.
+	 * @throws IOException When the digits could not be read
+	 */
+	private void readDigits() throws IOException {
+		while (isDigit(peek())) { appendText(buffer[pos++]); }
+	}
+	
+	/**
+	 * Reads the rest of a literal, after its first character.
+	 * @param rest The rest of the literal
+	 * @throws IOException When the literal is malformed or could not be read
+	 */
+	private void readLiteral(String rest) throws IOException {
+		for (int i = 0; i < rest.length(); i += 1) {
+			if (read() != rest.charAt(i)) { throw syntaxError("Malformed literal"); }
+		}
+	}
+	
+	/**
+	 * Skips the rest of a string without decoding it, after its opening quote.
+	 * @throws IOException When the string is not terminated or could not be read
+	 */
+	private void skipString() throws IOException {
+		while (true) {
+			while (pos < limit) {
+				byte c = buffer[pos++];
+				if (c == '"') { return; }
+				if (c == '\\') {
+					if (pos == limit && !fill()) { break; }
+					pos += 1;
+				}
+			}
+			if (!fill()) { throw syntaxError("Unterminated string"); }
+		}
+	}
+	
+	/**
+	 * Skips a UTF-8 byte order mark, after its first byte.
+	 * @return The first character after the byte order mark (and any whitespace after it)
+	 * @throws IOException When the byte order mark is malformed or could not be read
+	 */
+	private int skipByteOrderMark() throws IOException {
+		if (read() != 0xbb || read() != 0xbf) { throw syntaxError("Malformed UTF-8"); }
+		return nextNonWhitespace();
+	}
+	
+	/**
+	 * Skips the record separators that start the values of a JSON text sequence, and any whitespace after them.
+	 * @param c The current character
+	 * @return The first character that is not a record separator, <code>-1</code> at the end of the document
+	 * @throws IOException When the document could not be read
+	 */
+	private int skipRecordSeparators(int c) throws IOException {
+		while (c == 0x1e) { c = nextNonWhitespace(); }
+		return c;
+	}
+	
+	/**
+	 * Reads up to the next character that is not whitespace, and marks it as the start of the current token.
+	 * @return The character, <code>-1</code> at the end of the document
+	 * @throws IOException When the document could not be read
+	 */
+	private int nextNonWhitespace() throws IOException {
+		while (true) {
+			while (pos < limit) {
+				int c = buffer[pos++] & 0xff;
+				if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+					tokenOffset = bufferOffset + pos - 1;
+					return c;
+				}
+			}
+			if (!fill()) {
+				tokenOffset = bufferOffset + pos;
+				return -1;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the next byte.
+	 * @return The byte, <code>-1</code> at the end of the document
+	 * @throws IOException When the document could not be read
+	 */
+	private int read() throws IOException {
+		if (pos == limit && !fill()) { return -1; }
+		return buffer[pos++] & 0xff;
+	}
+	
+	/**
+	 * Returns the next byte without reading it.
+	 * @return The byte, <code>-1</code> at the end of the document
+	 * @throws IOException When the document could not be read
+	 */
+	private int peek() throws IOException {
+		if (pos == limit && !fill()) { return -1; }
+		return buffer[pos] & 0xff;
+	}
+	
+	/**
+	 * Reads the next block of the document into the buffer, once all bytes in the buffer have been parsed.
+	 * @return <code>true</code> if more bytes have been read, <code>false</code> at the end of the document
+	 * @throws IOException When the document could not be read
+	 */
+	private boolean fill() throws IOException {
+		if (in == null && source == null) { return false; }
+		bufferOffset += limit;
+		pos = 0;
+		limit = 0;
+		int n;
+		if (source != null) {
+			n = Math.min(buffer.length, source.remaining());
+			if (n == 0) { return false; }
+			source.get(buffer, 0, n);
+		} else {
+			do {
+				n = in.read(buffer, 0, buffer.length);
+			} while (n == 0);
+			if (n < 0) { return false; }
+		}
+		limit = n;
+		return true;
+	}
+	
+	/**
+	 * Makes sure the text buffer has room for more characters.
+	 * @param extra The amount of characters that will be added
+	 */
+	private void ensureText(int extra) {
+		if (textLength + extra > text.length) {
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + extra));
+		}
+	}
+	
+	/**
+	 * Adds a single (ASCII) character to the text buffer.
+	 * @param c The character
+	 */
+	private void appendText(int c) {
+		ensureText(1);
+		text[textLength++] = (char) c;
+	}
+	
+	/**
+	 * Parses the text buffer as an integer that is known to fit in a long.
+	 * @return The value
+	 */
+	private long parseIntegral() {
+		boolean negative = text[0] == '-';
+		long value = 0;
+		for (int i = negative ? 1 : 0; i < textLength; i += 1) {
+			value = value * 10 + (text[i] - '0');
+		}
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Makes sure the current token has text.
+	 */
+	private void checkText() {
+		if (token != JsonToken.NAME && token != JsonToken.STRING && token != JsonToken.NUMBER) {
+			throw new IllegalStateException("Current token is " + token + ", not a name, string or number");
+		}
+	}
+	
+	/**
+	 * Makes sure the current token is a number.
+	 */
+	private void checkNumber() {
+		if (token != JsonToken.NUMBER) {
+			throw new IllegalStateException("Current token is " + token + ", not a number");
+		}
+	}
+	
+	/**
+	 * Creates the exception for a malformed document, at the start of the current token.
+	 * @param message The description of the error
+	 * @return The exception
+	 */
+	private JsonParseException syntaxError(String message) {
+		return new JsonParseException(message, tokenOffset);
+	}
+	
+	/**
+	 * Describes a character for an error message.
+	 * @param c The character, <code>-1</code> for the end of the document
+	 * @return The description
+	 */
+	private static String describe(int c) {
+		if (c == -1) { return "end of document"; }
+		return c >= 0x20 && c < 0x7f ? "'" + (char) c + "'" : "byte 0x" + Integer.toHexString(c & 0xff);
+	}
+	
+	/**
+	 * Checks if a character is a decimal digit.
+	 * @param c The character
+	 * @return <code>true</code> if the character is a digit
+	 */
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+	
+}
@@ -0,0 +1,316 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of paths into a JSON document, of which the values are read in a single pass over the document.
+ * <p>A path starts with <code>$</code> (the whole document), followed by any amount of steps:</p>
+ * <ul>
+ * <li><code>.name</code> or <code>['name']</code> selects a member of an object</li>
+ * <li><code>[2]</code> selects an element of an array</li>
+ * <li><code>.*</code> or <code>[*]</code> selects every member or element</li>
+ * </ul>
+ * <p>For example, the query below reads the ids of the items and the cursor of the next page from a
+ * paginated list:</p>
+ * <p><code>
+ * static final JsonQuery PAGE = JsonQuery.compile("$.data[*].id", "$.meta.next");<br />
+ * JsonQueryResult result = response.query(PAGE);
+ * </code></p>
+ * <p>While the document is read, every array or object that none of the paths leads into is skipped without
+ * being decoded, so only the selected values are allocated. When none of the paths contains a wildcard, reading
+ * stops as soon as every path has found its value, and the rest of the document is not read (or checked) at all.
+ * A query is immutable, compile it once and reuse it.</p>
+ * @see it.fahner.mywapi.http.HttpResponse#query(JsonQuery)
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class JsonQuery {
+	
+	/** Step that selects every member or element. */
+	private static final int WILDCARD = -1;
+	
+	/** Step that selects a member by its name. */
+	private static final int NAME = -2;
+	
+	/** The maximum amount of paths in a single query. */
+	private static final int MAX_PATHS = 64;
+	
+	/** Contains the codec that decodes the selected values. */
+	private static final JsonCodec<Object> VALUES = JsonCodec.of(Object.class);
+	
+	/** Contains the paths as they were given. */
+	private final String[] paths;
+	
+	/** Contains the steps of every path: an index, {@link #WILDCARD} or {@link #NAME}. */
+	private final int[][] steps;
+	
+	/** Contains the names of the steps of every path that select a member by its name. */
+	private final String[][] names;
+	
+	/** Flag indicating that every path selects at most one value, so reading can stop once all are found. */
+	private final boolean definite;
+	
+	private JsonQuery(String[] paths) {
+		this.paths = paths;
+		this.steps = new int[paths.length][];
+		this.names = new String[paths.length][];
+		boolean wildcards = false;
+		for (int i = 0; i < paths.length; i += 1) {
+			parse(i);
+			for (int step : steps[i]) { wildcards |= step == WILDCARD; }
+		}
+		this.definite = !wildcards;
+	}
+	
+	@Override
+	public String toString() {
+		return "{JsonQuery: " + Arrays.toString(paths) + " }";
+	}
+	
+	/**
+	 * Compiles a set of paths into a query.
+	 * @since MyWebApi 1.0
+	 * @param paths The paths to select, at most 64
+	 * @return The query
+	 * @throws IllegalArgumentException When a path is malformed, or there are too many paths
+	 */
+	public static JsonQuery compile(String... paths) {
+		if (paths.length > MAX_PATHS) { throw new IllegalArgumentException("A query has at most " + MAX_PATHS + " paths"); }
+		return new JsonQuery(paths.clone());
+	}
+	
+	/**
+	 * Returns the paths of this query.
+	 * @since MyWebApi 1.0
+	 * @return The paths, in the order they were compiled in
+	 */
+	public String[] getPaths() {
+		return paths.clone();
+	}
+	
+	/**
+	 * Reads the values of all paths from a document. Selected values are decoded like
+	 * <code>JsonCodec.of(Object.class)</code> does: objects into maps, arrays into lists, numbers into longs
+	 * or doubles.
+	 * @since MyWebApi 1.0
+	 * @param parser The parser to read the document from, positioned before its first token
+	 * @return The values of every path
+	 * @throws JsonParseException When the document is malformed
+	 * @throws IOException When the document could not be read
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public JsonQueryResult execute(JsonPullParser parser) throws IOException {
+		List<Object>[] values = new List[paths.length];
+		for (int i = 0; i < values.length; i += 1) { values[i] = new ArrayList<Object>(); }
+		long all = paths.length == MAX_PATHS ? -1L : (1L << paths.length) - 1;
+		parser.next();
+		if (!read(parser, all, 0, values) && parser.next() != JsonToken.END_DOCUMENT) {
+			throw new JsonParseException("Unexpected data after the document", parser.getOffset());
+		}
+		return new JsonQueryResult(this, values);
+	}
+	
+	/**
+	 * Returns the position of a path in this query.
+	 * @param path The path, exactly as it was compiled
+	 * @return The index of the path
+	 * @throws IllegalArgumentException When the path is not part of this query
+	 */
+	int indexOf(String path) {
+		for (int i = 0; i < paths.length; i += 1) {
+			if (paths[i].equals(path)) { return i; }
+		}
+		throw new IllegalArgumentException("Not part of " + this + ": " + path);
+	}
+	
+	/**
+	 * Reads a value, and everything inside it that any of the given paths selects.
+	 * @param parser The parser, positioned at the first token of the value and left at its last token
+	 * @param alive The paths that lead to this value, one bit per path
+	 * @param depth The amount of steps that lead to this value
+	 * @param values The values that have been selected so far, per path
+	 * @return <code>true</code> if reading can stop, because every path has found its value
+	 * @throws IOException When the document is malformed or could not be read
+	 */
+	private boolean read(JsonPullParser parser, long alive, int depth, List<Object>[] values) throws IOException {
+		long deeper = 0;
+		long complete = 0;
+		for (int i = 0; i < paths.length; i += 1) {
+			if ((alive & (1L << i)) == 0) { continue; }
+			if (steps[i].length == depth) {
+				complete |= 1L << i;
+			} else {
+				deeper |= 1L << i;
+			}
+		}
+		
+		// A selected value is decoded as a whole, longer paths through it are then followed in memory
+		if (complete != 0) {
+			Object value = VALUES.read(parser);
+			for (int i = 0; i < paths.length; i += 1) {
+				if ((complete & (1L << i)) != 0) { values[i].add(value); }
+				if ((deeper & (1L << i)) != 0) { select(value, i, depth, values[i]); }
+			}
+			return isDone(values);
+		}
+		JsonToken token = parser.getToken();
+		if (token == JsonToken.BEGIN_OBJECT) {
+			while (parser.next() == JsonToken.NAME) {
+				long child = 0;
+				for (int i = 0; i < paths.length; i += 1) {
+					if ((deeper & (1L << i)) == 0) { continue; }
+					int step = steps[i][depth];
+					if (step == WILDCARD || (step == NAME && parser.textEquals(names[i][depth]))) { child |= 1L << i; }
+				}
+				parser.next();
+				if (child == 0) {
+					parser.skipValue();
+				} else if (read(parser, child, depth + 1, values)) {
+					return true;
+				}
+			}
+		} else if (token == JsonToken.BEGIN_ARRAY) {
+			for (int index = 0; parser.next() != JsonToken.END_ARRAY; index += 1) {
+				long child = 0;
+				for (int i = 0; i < paths.length; i += 1) {
+					if ((deeper & (1L << i)) == 0) { continue; }
+					int step = steps[i][depth];
+					if (step == WILDCARD || step == index) { child |= 1L << i; }
+				}
+				if (child == 0) {
+					parser.skipValue();
+				} else if (read(parser, child, depth + 1, values)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Follows the rest of a path through a value that has already been decoded.
+	 * @param value The decoded value
+	 * @param path The index of the path
+	 * @param depth The amount of steps that lead to the value
+	 * @param out The list to add the selected values to
+	 */
+	private void select(Object value, int path, int depth, List<Object> out) {
+		if (depth == steps[path].length) {
+			out.add(value);
+			return;
+		}
+		int step = steps[path][depth];
+		if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			if (step == WILDCARD) {
+				for (Object member : map.values()) { select(member, path, depth + 1, out); }
+			} else if (step == NAME && map.containsKey(names[path][depth])) {
+				select(map.get(names[path][depth]), path, depth + 1, out);
+			}
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			if (step == WILDCARD) {
+				for (Object element : list) { select(element, path, depth + 1, out); }
+			} else if (step >= 0 && step < list.size()) {
+				select(list.get(step), path, depth + 1, out);
+			}
+		}
+	}
+	
+	/**
+	 * Checks if reading can stop.
+	 * @param values The values that have been selected so far, per path
+	 * @return <code>true</code> if no path has a wildcard, and every path has found its value
+	 */
+	private boolean isDone(List<Object>[] values) {
+		if (!definite) { return false; }
+		for (List<Object> found : values) {
+			if (found.isEmpty()) { return false; }
+		}
+		return true;
+	}
+	
+	/**
+	 * Parses a path into its steps.
+	 * @param path The index of the path
+	 * @throws IllegalArgumentException When the path is malformed
+	 */
+	private void parse(int path) {
+		String source = paths[path];
+		if (!source.startsWith("$")) { throw malformed(source); }
+		ArrayList<Integer> parsedSteps = new ArrayList<Integer>();
+		ArrayList<String> parsedNames = new ArrayList<String>();
+		int pos = 1;
+		while (pos < source.length()) {
+			char c = source.charAt(pos);
+			int end;
+			if (c == '.') {
+				end = pos + 1;
+				while (end < source.length() && source.charAt(end) != '.' && source.charAt(end) != '[') { end += 1; }
+				String name = source.substring(pos + 1, end);
+				if (name.isEmpty()) { throw malformed(source); }
+				parsedSteps.add(Integer.valueOf(name.equals("*") ? WILDCARD : NAME));
+				parsedNames.add(name.equals("*") ? null : name);
+				pos = end;
+			} else if (c == '[' && pos + 1 < source.length()
+					&& (source.charAt(pos + 1) == '\'' || source.charAt(pos + 1) == '"')) {
+				end = source.indexOf(source.charAt(pos + 1) + "]", pos + 2);
+				if (end < 0) { throw malformed(source); }
+				parsedSteps.add(Integer.valueOf(NAME));
+				parsedNames.add(source.substring(pos + 2, end));
+				pos = end + 2;
+			} else if (c == '[') {
+				end = source.indexOf(']', pos);
+				if (end < 0) { throw malformed(source); }
+				String index = source.substring(pos + 1, end);
+				if (index.equals("*")) {
+					parsedSteps.add(Integer.valueOf(WILDCARD));
+				} else {
+					try {
+						parsedSteps.add(Integer.valueOf(Integer.parseInt(index)));
+					} catch (NumberFormatException e) {
+						throw malformed(source);
+					}
+					if (parsedSteps.get(parsedSteps.size() - 1).intValue() < 0) { throw malformed(source); }
+				}
+				parsedNames.add(null);
+				pos = end + 1;
+			} else {
+				throw malformed(source);
+			}
+		}
+		steps[path] = new int[parsedSteps.size()];
+		for (int i = 0; i < steps[path].length; i += 1) { steps[path][i] = parsedSteps.get(i).intValue(); }
+		names[path] = parsedNames.toArray(new String[parsedNames.size()]);
+	}
+	
+	/**
+	 * Creates the exception for a malformed path.
+	 * @param path The path
+	 * @return The exception
+	 */
+	private static IllegalArgumentException malformed(String path) {
+		return new IllegalArgumentException("Malformed JSON path: " + path);
+	}
+	
+}
@@ -0,0 +1,94 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The values that a {@link JsonQuery} has selected from a document.
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class JsonQueryResult {
+	
+	/** Contains the query that selected the values. */
+	private final JsonQuery query;
+	
+	/** Contains the selected values, per path in the order of the query. */
+	private final List<Object>[] values;
+	
+	/**
+	 * Creates the result of a query.
+	 * @param query The query
+	 * @param values The selected values, per path
+	 */
+	JsonQueryResult(JsonQuery query, List<Object>[] values) {
+		this.query = query;
+		this.values = values;
+	}
+	
+	@Override
+	public String toString() {
+		return "{JsonQueryResult: " + query + " }";
+	}
+	
+	/**
+	 * Returns all values that a path has selected.
+	 * @since MyWebApi 1.0
+	 * @param path The path, exactly as it was compiled into the query
+	 * @return The values in the order they appear in the document, empty if the path selected nothing
+	 * @throws IllegalArgumentException When the path is not part of the query
+	 */
+	public List<Object> getValues(String path) {
+		return getValues(query.indexOf(path));
+	}
+	
+	/**
+	 * Returns all values that a path has selected.
+	 * @since MyWebApi 1.0
+	 * @param index The position of the path in the query
+	 * @return The values in the order they appear in the document, empty if the path selected nothing
+	 */
+	public List<Object> getValues(int index) {
+		return Collections.unmodifiableList(values[index]);
+	}
+	
+	/**
+	 * Returns the first value that a path has selected.
+	 * @since MyWebApi 1.0
+	 * @param path The path, exactly as it was compiled into the query
+	 * @return The value, <code>null</code> if the path selected nothing (or selected <code>null</code>)
+	 * @throws IllegalArgumentException When the path is not part of the query
+	 */
+	public Object getValue(String path) {
+		List<Object> found = values[query.indexOf(path)];
+		return found.isEmpty() ? null : found.get(0);
+	}
+	
+	/**
+	 * Checks if a path has selected anything.
+	 * @since MyWebApi 1.0
+	 * @param path The path, exactly as it was compiled into the query
+	 * @return <code>true</code> if the path selected at least one value
+	 * @throws IllegalArgumentException When the path is not part of the query
+	 */
+	public boolean contains(String path) {
+		return !values[query.indexOf(path)].isEmpty();
+	}
+	
+}
@@ -0,0 +1,68 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+/**
+ * The tokens a {@link JsonPullParser} reads a JSON document as.
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public enum JsonToken {
+	
+	/** The start of an object (<code>'{'</code>). */
+	BEGIN_OBJECT,
+	
+	/** The end of an object (<code>'}'</code>). */
+	END_OBJECT,
+	
+	/** The start of an array (<code>'['</code>). */
+	BEGIN_ARRAY,
+	
+	/** The end of an array (<code>']'</code>). */
+	END_ARRAY,
+	
+	/** The name of a member of an object. */
+	NAME,
+	
+	/** A string value. */
+	STRING,
+	
+	/** A number value. */
+	NUMBER,
+	
+	/** The literal value <code>true</code>. */
+	TRUE,
+	
+	/** The literal value <code>false</code>. */
+	FALSE,
+	
+	/** The literal value <code>null</code>. */
+	NULL,
+	
+	/** The end of the document, after which there are no more tokens. */
+	END_DOCUMENT;
+	
+	/**
+	 * Checks if this token is a value on its own (a string, number or literal).
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if this token is a scalar value
+	 */
+	public boolean isScalar() {
+		return this == STRING || this == NUMBER || this == TRUE || this == FALSE || this == NULL;
+	}
+	
+}
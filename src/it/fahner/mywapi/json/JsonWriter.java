@@ -0,0 +1,409 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes a JSON document token by token, straight to a stream of UTF-8 encoded bytes.
+ * <p>Commas and colons are written where they belong, and every method checks that the token it writes is
+ * allowed at that point of the document. The bytes are buffered until the writer is flushed or closed.</p>
+ * <p>All methods that write a token return the writer itself, for call chaining:</p>
+ * <p><code>
+ * writer.beginObject().name("id").value(42).name("tags").beginArray().value("a").endArray().endObject();
+ * </code></p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class JsonWriter implements Closeable, Flushable {
+	
+	/** Scope of the document before its value. */
+	private static final int EMPTY_DOCUMENT = 0;
+	
+	/** Scope of the document after its value. */
+	private static final int NONEMPTY_DOCUMENT = 1;
+	
+	/** Scope of an array before its first element. */
+	private static final int EMPTY_ARRAY = 2;
+	
+	/** Scope of an array after an element. */
+	private static final int NONEMPTY_ARRAY = 3;
+	
+	/** Scope of an object before its first member. */
+	private static final int EMPTY_OBJECT = 4;
+	
+	/** Scope of an object after the name of a member. */
+	private static final int DANGLING_NAME = 5;
+	
+	/** Scope of an object after a member. */
+	private static final int NONEMPTY_OBJECT = 6;
+	
+	/** Contains the hexadecimal digits, for escaping control characters. */
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+	
+	/** Contains the stream the document is written to. */
+	private final OutputStream out;
+	
+	/** Contains the bytes that have not been written to the stream yet. */
+	private final byte[] buffer;
+	
+	/** Contains the amount of bytes in the buffer. */
+	private int count;
+	
+	/** Contains the scopes of the open arrays and objects, starting with the document itself. */
+	private int[] scopes;
+	
+	/** Contains the amount of scopes in use. */
+	private int depth;
+	
+	/**
+	 * Creates a new writer.
+	 * @since MyWebApi 1.0
+	 * @param out The stream to write the document to
+	 */
+	public JsonWriter(OutputStream out) {
+		this.out = out;
+		this.buffer = new byte[8192];
+		this.scopes = new int[32];
+		this.scopes[0] = EMPTY_DOCUMENT;
+		this.depth = 1;
+	}
+	
+	/**
+	 * Starts an object.
+	 * @since MyWebApi 1.0
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 */
+	public JsonWriter beginObject() throws IOException {
+		return open(EMPTY_OBJECT, '{');
+	}
+	
+	/**
+	 * Ends the innermost object.
+	 * @since MyWebApi 1.0
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 * @throws IllegalStateException When the innermost scope is not an object, or its last name has no value
+	 */
+	public JsonWriter endObject() throws IOException {
+		return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+	}
+	
+	/**
+	 * Starts an array.
+	 * @since MyWebApi 1.0
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 */
+	public JsonWriter beginArray() throws IOException {
+		return open(EMPTY_ARRAY, '[');
+	}
+	
+	/**
+	 * Ends the innermost array.
+	 * @since MyWebApi 1.0
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 * @throws IllegalStateException When the innermost scope is not an array
+	 */
+	public JsonWriter endArray() throws IOException {
+		return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+	}
+	
+	/**
+	 * Writes the name of the next member of the innermost object.
+	 * @since MyWebApi 1.0
+	 * @param name The name of the member
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 * @throws IllegalStateException When the innermost scope is not an object, or its last name has no value
+	 */
+	public JsonWriter name(String name) throws IOException {
+		int scope = scopes[depth - 1];
+		if (scope == NONEMPTY_OBJECT) {
+			writeByte(',');
+		} else if (scope != EMPTY_OBJECT) {
+			throw new IllegalStateException("A name is only allowed inside an object, before a value");
+		}
+		scopes[depth - 1] = DANGLING_NAME;
+		writeString(name);
+		writeByte(':');
+		return this;
+	}
+	
+	/**
+	 * Writes a string value.
+	 * @since MyWebApi 1.0
+	 * @param value The value, <code>null</code> to write <code>null</code>
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 */
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) { return nullValue(); }
+		beforeValue();
+		writeString(value);
+		return this;
+	}
+	
+	/**
+	 * Writes a number value.
+	 * @since MyWebApi 1.0
+	 * @param value The value
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 */
+	public JsonWriter value(long value) throws IOException {
+		beforeValue();
+		writeAscii(Long.toString(value));
+		return this;
+	}
+	
+	/**
+	 * Writes a number value.
+	 * @since MyWebApi 1.0
+	 * @param value The value
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 * @throws IllegalArgumentException When the value is not a number or infinite, which JSON cannot represent
+	 */
+	public JsonWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException("JSON cannot represent " + value);
+		}
+		beforeValue();
+		writeAscii(Double.toString(value));
+		return this;
+	}
+	
+	/**
+	 * Writes a number value of any type.
+	 * @since MyWebApi 1.0
+	 * @param value The value, <code>null</code> to write <code>null</code>
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 * @throws IllegalArgumentException When the value is not a number or infinite, which JSON cannot represent
+	 */
+	public JsonWriter value(Number value) throws IOException {
+		if (value == null) { return nullValue(); }
+		if (value instanceof Double || value instanceof Float) { return value(value.doubleValue()); }
+		beforeValue();
+		writeAscii(value.toString());
+		return this;
+	}
+	
+	/**
+	 * Writes a literal <code>true</code> or <code>false</code>.
+	 * @since MyWebApi 1.0
+	 * @param value The value
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 */
+	public JsonWriter value(boolean value) throws IOException {
+		beforeValue();
+		writeAscii(value ? "true" : "false");
+		return this;
+	}
+	
+	/**
+	 * Writes a literal <code>null</code>.
+	 * @since MyWebApi 1.0
+	 * @return This writer for call chaining
+	 * @throws IOException When the document could not be written
+	 */
+	public JsonWriter nullValue() throws IOException {
+		beforeValue();
+		writeAscii("null");
+		return this;
+	}
+	
+	/**
+	 * Writes all buffered bytes to the stream, and flushes it.
+	 * @since MyWebApi 1.0
+	 * @throws IOException When the bytes could not be written
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.write(buffer, 0, count);
+		count = 0;
+		out.flush();
+	}
+	
+	/**
+	 * Writes all buffered bytes to the stream, and closes it.
+	 * @since MyWebApi 1.0
+	 * @throws IOException When the bytes could not be written or the stream could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			out.write(buffer, 0, count);
+			count = 0;
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Starts an array or object.
+	 * @param scope The scope of the new array or object
+	 * @param bracket The bracket that starts it
+	 * @return This writer
+	 * @throws IOException When the document could not be written
+	 */
+	private JsonWriter open(int scope, char bracket) throws IOException {
+		beforeValue();
+		if (depth == scopes.length) { scopes = Arrays.copyOf(scopes, depth * 2); }
+		scopes[depth] = scope;
+		depth += 1;
+		writeByte(bracket);
+		return this;
+	}
+	
+	/**
+	 * Ends the innermost array or object.
+	 * @param empty The scope of the array or object before its first value
+	 * @param nonempty The scope of the array or object after a value
+	 * @param bracket The bracket that ends it
+	 * @return This writer
+	 * @throws IOException When the document could not be written
+	 */
+	private JsonWriter close(int empty, int nonempty, char bracket) throws IOException {
+		int scope = scopes[depth - 1];
+		if (scope != empty && scope != nonempty) {
+			throw new IllegalStateException("Unexpected '" + bracket + "'");
+		}
+		depth -= 1;
+		writeByte(bracket);
+		return this;
+	}
+	
+	/**
+	 * Updates the innermost scope before a value, and writes the comma that separates it from the previous one.
+	 * @throws IOException When the document could not be written
+	 */
+	private void beforeValue() throws IOException {
+		switch (scopes[depth - 1]) {
+		case EMPTY_DOCUMENT:
+			scopes[depth - 1] = NONEMPTY_DOCUMENT;
+			break;
+		case EMPTY_ARRAY:
+			scopes[depth - 1] = NONEMPTY_ARRAY;
+			break;
+		case NONEMPTY_ARRAY:
+			writeByte(',');
+			break;
+		case DANGLING_NAME:
+			scopes[depth - 1] = NONEMPTY_OBJECT;
+			break;
+		case NONEMPTY_DOCUMENT:
+			throw new IllegalStateException("A document has only one value");
+		default:
+			throw new IllegalStateException("A value inside an object must have a name");
+		}
+	}
+	
+	/**
+	 * Writes a quoted and escaped string, encoded in UTF-8.
+	 * @param value The string to write
+	 * @throws IOException When the document could not be written
+	 */
+	private void writeString(String value) throws IOException {
+		writeByte('"');
+		int length = value.length();
+		for (int i = 0; i < length; i += 1) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				writeByte('\\');
+				writeByte(c);
+			} else if (c < 0x20) {
+				writeEscape(c);
+			} else if (c < 0x80) {
+				writeByte(c);
+			} else if (c < 0x800) {
+				writeByte(0xc0 | (c >> 6));
+				writeByte(0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				writeByte(0xf0 | (codePoint >> 18));
+				writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+				writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+				writeByte(0x80 | (codePoint & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				writeEscape(c);
+			} else {
+				writeByte(0xe0 | (c >> 12));
+				writeByte(0x80 | ((c >> 6) & 0x3f));
+				writeByte(0x80 | (c & 0x3f));
+			}
+		}
+		writeByte('"');
+	}
+	
+	/**
+	 * Writes a character as an escape sequence.
+	 * @param c The character to write
+	 * @throws IOException When the document could not be written
+	 */
+	private void writeEscape(char c) throws IOException {
+		switch (c) {
+		case '\n':
+			writeAscii("\\n");
+			break;
+		case '\r':
+			writeAscii("\\r");
+			break;
+		case '\t':
+			writeAscii("\\t");
+			break;
+		default:
+			writeAscii("\\u");
+			writeByte(HEX[(c >> 12) & 0xf]);
+			writeByte(HEX[(c >> 8) & 0xf]);
+			writeByte(HEX[(c >> 4) & 0xf]);
+			writeByte(HEX[c & 0xf]);
+		}
+	}
+	
+	/**
+	 * Writes a string that only contains ASCII characters.
+	 * @param value The string to write
+	 * @throws IOException When the document could not be written
+	 */
+	private void writeAscii(String value) throws IOException {
+		for (int i = 0; i < value.length(); i += 1) { writeByte(value.charAt(i)); }
+	}
+	
+	/**
+	 * Writes a single byte to the buffer, and the buffer to the stream once it is full.
+	 * @param b The byte to write
+	 * @throws IOException When the document could not be written
+	 */
+	private void writeByte(int b) throws IOException {
+		if (count == buffer.length) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+		buffer[count++] = (byte) b;
+	}
+	
+}
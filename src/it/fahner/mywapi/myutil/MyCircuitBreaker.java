@@ -0,0 +1,189 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import it.fahner.mywapi.MyCircuitBreakerPolicy;
+
+/**
+ * The circuit breaker of a single endpoint. Keeps the outcome of the most recent requests in a ring
+ * buffer and decides whether new requests may be sent.
+ * @see MyCircuitBreakerPolicy
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyCircuitBreaker {
+	
+	/**
+	 * The states a circuit breaker can be in.
+	 * @since MyWebApi 1.0
+	 */
+	public enum State {
+		
+		/** Requests are sent normally. */
+		CLOSED,
+		
+		/** Requests are not sent at all. */
+		OPEN,
+		
+		/** A limited amount of probe requests is sent to find out if the endpoint has recovered. */
+		HALF_OPEN;
+		
+	}
+	
+	/** Outcome flag of a request that has failed. */
+	private static final byte FAILED = 1;
+	
+	/** Outcome flag of a request that was slow. */
+	private static final byte SLOW = 2;
+	
+	/** Contains the policy of this circuit breaker. */
+	private MyCircuitBreakerPolicy policy;
+	
+	/** Contains the outcome flags of the most recent requests. */
+	private byte[] outcomes;
+	
+	/** Contains the index in the ring buffer of the next outcome. */
+	private int next;
+	
+	/** Contains the amount of outcomes in the ring buffer. */
+	private int recorded;
+	
+	/** Contains the current state. */
+	private State state;
+	
+	/** Contains the time at which the circuit has opened. */
+	private long openedAt;
+	
+	/** Contains the time at which the circuit has half opened. */
+	private long halfOpenedAt;
+	
+	/** Contains the amount of probe requests that have been let through since half opening. */
+	private int probesStarted;
+	
+	/** Contains the amount of probe requests that have succeeded since half opening. */
+	private int probesSucceeded;
+	
+	/**
+	 * Creates a new (closed) circuit breaker.
+	 * @since MyWebApi 1.0
+	 * @param policy The policy to use
+	 */
+	public MyCircuitBreaker(MyCircuitBreakerPolicy policy) {
+		this.policy = policy;
+		this.outcomes = new byte[policy.getWindowSize()];
+		this.state = State.CLOSED;
+	}
+	
+	/**
+	 * Checks if requests are currently being rejected without any probes being let through.
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if the circuit is open and not yet ready to half open
+	 */
+	public synchronized boolean isRejecting() {
+		return state == State.OPEN && System.currentTimeMillis() - openedAt < policy.getOpenDuration();
+	}
+	
+	/**
+	 * Asks permission to send a request. Every request that was permitted must be reported using
+	 * {@link #record(boolean, long)}, or handed back using {@link #release()} if it was not sent after all.
+	 * <p>Probes that have not been reported within the open duration count as failed, so the circuit opens
+	 * again instead of waiting for them forever.</p>
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if the request can be sent, <code>false</code> if it must fail immediately
+	 */
+	public synchronized boolean tryAcquire() {
+		long now = System.currentTimeMillis();
+		if (state == State.OPEN) {
+			if (now - openedAt < policy.getOpenDuration()) { return false; }
+			state = State.HALF_OPEN;
+			halfOpenedAt = now;
+			probesStarted = 0;
+			probesSucceeded = 0;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probesStarted >= policy.getProbes()) {
+				if (now - halfOpenedAt >= policy.getOpenDuration()) { open(); }
+				return false;
+			}
+			probesStarted += 1;
+		}
+		return true;
+	}
+	
+	/**
+	 * Hands back the permission to send a request that was given by {@link #tryAcquire()}, for a request that
+	 * has not been sent (or whose outcome no longer matters) and will not be reported using
+	 * {@link #record(boolean, long)}.
+	 * @since MyWebApi 1.0
+	 */
+	public synchronized void release() {
+		if (state == State.HALF_OPEN && probesStarted > probesSucceeded) { probesStarted -= 1; }
+	}
+	
+	/**
+	 * Records the outcome of a request that was permitted by {@link #tryAcquire()}.
+	 * @since MyWebApi 1.0
+	 * @param failed <code>true</code> if the request has failed
+	 * @param durationMillis The time in milliseconds the request took
+	 */
+	public synchronized void record(boolean failed, long durationMillis) {
+		boolean slow = durationMillis > policy.getSlowCallDuration();
+		if (state == State.HALF_OPEN) {
+			if (failed || slow) {
+				open();
+			} else if (++probesSucceeded >= policy.getProbes()) {
+				state = State.CLOSED;
+				recorded = 0;
+				next = 0;
+			}
+			return;
+		}
+		if (state == State.OPEN) { return; }
+		outcomes[next] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+		next = (next + 1) % outcomes.length;
+		recorded = Math.min(recorded + 1, outcomes.length);
+		if (recorded < policy.getMinimumCalls()) { return; }
+		int failures = 0;
+		int slowCalls = 0;
+		for (int i = 0; i < recorded; i += 1) {
+			if ((outcomes[i] & FAILED) != 0) { failures += 1; }
+			if ((outcomes[i] & SLOW) != 0) { slowCalls += 1; }
+		}
+		if (failures * 100 >= policy.getFailureRateThreshold() * recorded
+				|| slowCalls * 100 >= policy.getSlowCallRateThreshold() * recorded) {
+			open();
+		}
+	}
+	
+	/**
+	 * Returns the current state of this circuit breaker.
+	 * @since MyWebApi 1.0
+	 * @return The current state
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+	
+	/**
+	 * Opens the circuit.
+	 */
+	private void open() {
+		state = State.OPEN;
+		openedAt = System.currentTimeMillis();
+	}
+	
+}
@@ -0,0 +1,96 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the durations of the most recent requests, so percentiles of the observed latency can be calculated.
+ * <p>Sorting all samples for every request would be wasteful, so a percentile is only calculated again after
+ * a number of new samples has been recorded.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyLatencyTracker {
+	
+	/** The amount of new samples after which percentiles are calculated again. */
+	private static final int RECALCULATE_AFTER = 32;
+	
+	/** Contains the most recent durations in milliseconds. */
+	private long[] samples;
+	
+	/** Contains the index in the ring buffer of the next sample. */
+	private int next;
+	
+	/** Contains the amount of samples in the ring buffer. */
+	private int recorded;
+	
+	/** Contains the most recent samples in sorted order, <code>null</code> when they must be sorted again. */
+	private long[] sorted;
+	
+	/** Contains the amount of samples that were recorded since the samples were last sorted. */
+	private int unsorted;
+	
+	/**
+	 * Creates a new latency tracker without any samples.
+	 * @since MyWebApi 1.0
+	 * @param size The amount of most recent samples to keep
+	 */
+	public MyLatencyTracker(int size) {
+		this.samples = new long[Math.max(1, size)];
+	}
+	
+	/**
+	 * Records the duration of a request.
+	 * @since MyWebApi 1.0
+	 * @param millis The duration in milliseconds
+	 */
+	public synchronized void record(long millis) {
+		samples[next] = millis;
+		next = (next + 1) % samples.length;
+		recorded = Math.min(recorded + 1, samples.length);
+		if (++unsorted >= RECALCULATE_AFTER) { sorted = null; }
+	}
+	
+	/**
+	 * Returns the amount of samples that are currently kept.
+	 * @since MyWebApi 1.0
+	 * @return The amount of samples
+	 */
+	public synchronized int getSampleCount() {
+		return recorded;
+	}
+	
+	/**
+	 * Returns a percentile of the recorded durations, for example <code>95</code> for the duration that
+	 * 95% of the requests did not exceed.
+	 * @since MyWebApi 1.0
+	 * @param percentile The percentile to return (1-100)
+	 * @return The duration in milliseconds, <code>-1</code> if nothing has been recorded yet
+	 */
+	public synchronized long getPercentile(int percentile) {
+		if (recorded == 0) { return -1; }
+		if (sorted == null) {
+			sorted = Arrays.copyOf(samples, recorded);
+			Arrays.sort(sorted);
+			unsorted = 0;
+		}
+		int index = (int) Math.ceil(Math.min(Math.max(percentile, 1), 100) / 100.0 * sorted.length) - 1;
+		return sorted[index];
+	}
+	
+}
@@ -17,44 +17,61 @@
 package it.fahner.mywapi.myutil;
 
 import it.fahner.mywapi.http.HttpRequest;
+import it.fahner.mywapi.http.HttpResponse;
 
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class keeps track of requests that are being resolved (i.e. are 'busy').
  * <p>Requests do, however, need to be explicitly marked as 'open'.</p>
+ * <p>Every open request is stored together with the future that will receive its response, so identical
+ * requests that are started while it is open can wait for that response instead of being sent again.</p>
  * @since MyWebApi 1.0
  * @author C. Fahner <info@fahnerit.com>
  */
 public class MyOpenRequestsTracker {
 	
-	/** Contains the requestIdentifiers of all currently opened requests. */
-	private HashSet<String> openRequests;
+	/** Maps the requestIdentifiers of all currently opened requests to the future of their response. */
+	private HashMap<String, CompletableFuture<HttpResponse>> openRequests;
 	
 	/**
 	 * Creates a new (empty) MyOpenRequestsTracker.
 	 * @since MyWebApi 1.0
 	 */
 	public MyOpenRequestsTracker() {
-		this.openRequests = new HashSet<String>();
+		this.openRequests = new HashMap<String, CompletableFuture<HttpResponse>>();
 	}
 	
 	/**
-	 * Stores the request as an open request.
+	 * Stores the request as an open request, unless a request for the same resource is already open.
+	 * <p>Checking and storing happens atomically, so only one of several identical requests that are stored
+	 * at the same time will actually be stored.</p>
 	 * @since MyWebApi 1.0
 	 * @param request The request to store
+	 * @param result The future that will be completed with the response of the request
+	 * @return <code>null</code> if the request has been stored, otherwise the future of the request for
+	 *  the same resource that was already open
 	 */
-	public synchronized void storeRequest(HttpRequest request) {
-		this.openRequests.add(request.getResourceIdentity());
+	public synchronized CompletableFuture<HttpResponse> storeRequest(HttpRequest request,
+			CompletableFuture<HttpResponse> result) {
+		CompletableFuture<HttpResponse> open = this.openRequests.get(request.getResourceIdentity());
+		if (open != null) { return open; }
+		this.openRequests.put(request.getResourceIdentity(), result);
+		return null;
 	}
 	
 	/**
 	 * Removes the request from the list of outstanding requests.
+	 * <p>Nothing is removed if the open request for the same resource was stored with another future.</p>
 	 * @since MyWebApi 1.0
 	 * @param request The request to remove
+	 * @param result The future the request was stored with
 	 */
-	public synchronized void removeRequest(HttpRequest request) {
-		this.openRequests.remove(request.getResourceIdentity());
+	public synchronized void removeRequest(HttpRequest request, CompletableFuture<HttpResponse> result) {
+		if (this.openRequests.get(request.getResourceIdentity()) == result) {
+			this.openRequests.remove(request.getResourceIdentity());
+		}
 	}
 	
 	/**
@@ -65,7 +82,7 @@ public class MyOpenRequestsTracker {
 	 *  <code>false</code> otherwise
 	 */
 	public synchronized boolean isOpen(HttpRequest request) {
-		return this.openRequests.contains(request.getResourceIdentity());
+		return this.openRequests.containsKey(request.getResourceIdentity());
 	}
 	
 	/**
@@ -0,0 +1,262 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import it.fahner.mywapi.http.HttpRequest;
+
+import java.net.URL;
+import java.util.HashMap;
+
+/**
+ * Limits the rate at which requests are sent, using a token bucket for every key (by default, for every
+ * host).
+ * <p>Permits are reserved rather than waited for: {@link #reserve(String)} returns how long the caller has to
+ * wait before it may send its request, so the caller can schedule the request instead of blocking a thread.</p>
+ * <p>When the origin responds with <code>429 Too Many Requests</code> (or with <code>503 Service
+ * Unavailable</code> and a <code>Retry-After</code> header), {@link #throttle(String, long)} stops handing out
+ * permits for that key until the requested time has passed (but no longer than the maximum pause, see
+ * {@link #setMaxPause(long)}), and halves its rate. Every successful request afterwards raises the rate a
+ * little, until the configured rate is reached again.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyRateLimiter {
+	
+	/**
+	 * Decides which requests share a token bucket.
+	 * @since MyWebApi 1.0
+	 */
+	public interface KeySelector {
+		
+		/**
+		 * Returns the key of the token bucket a request must take its permit from.
+		 * @since MyWebApi 1.0
+		 * @param request The request that is about to be sent
+		 * @return The key of the token bucket
+		 */
+		public String getKey(HttpRequest request);
+		
+	}
+	
+	/**
+	 * Selects a token bucket for every host (and port).
+	 * @since MyWebApi 1.0
+	 */
+	public static final KeySelector PER_HOST = new KeySelector() {
+		
+		@Override
+		public String getKey(HttpRequest request) {
+			URL url = request.getUrl();
+			return url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+		}
+		
+	};
+	
+	/**
+	 * The maximum time in milliseconds that a key is throttled for when none has been specified.
+	 * @since MyWebApi 1.0
+	 */
+	public static final long DEFAULT_MAX_PAUSE = 60000;
+	
+	/** The fraction of the configured rate that every successful request adds back after throttling. */
+	private static final double RECOVERY = 0.05;
+	
+	/** The lowest fraction of the configured rate that throttling can reduce the rate to. */
+	private static final double MIN_FRACTION = 0.05;
+	
+	/** Contains the configured amount of permits per second, <code>0</code> for no limit. */
+	private double rate;
+	
+	/** Contains the maximum amount of permits that can be saved up. */
+	private int burst;
+	
+	/** Contains the maximum time in milliseconds that a key is throttled for at once. */
+	private long maxPause;
+	
+	/** Decides which requests share a token bucket. */
+	private KeySelector selector;
+	
+	/** Contains the token bucket of every key. */
+	private HashMap<String, Bucket> buckets;
+	
+	/**
+	 * Creates a new rate limiter.
+	 * @since MyWebApi 1.0
+	 * @param permitsPerSecond The amount of requests per second for every key, <code>0</code> to only wait
+	 *  when the origin asks for it
+	 * @param burst The maximum amount of requests that can be sent at once after a quiet period
+	 */
+	public MyRateLimiter(double permitsPerSecond, int burst) {
+		this.selector = PER_HOST;
+		this.buckets = new HashMap<String, Bucket>();
+		this.maxPause = DEFAULT_MAX_PAUSE;
+		setRate(permitsPerSecond, burst);
+	}
+	
+	/**
+	 * Changes the rate of all keys. Resets all token buckets.
+	 * @since MyWebApi 1.0
+	 * @param permitsPerSecond The amount of requests per second for every key, <code>0</code> for no limit
+	 * @param burst The maximum amount of requests that can be sent at once after a quiet period
+	 */
+	public synchronized void setRate(double permitsPerSecond, int burst) {
+		this.rate = Math.max(0, permitsPerSecond);
+		this.burst = Math.max(1, burst);
+		buckets.clear();
+	}
+	
+	/**
+	 * Sets the maximum time that a key is throttled for at once, no matter how long the origin asks to wait. This
+	 * keeps a bogus <code>Retry-After</code> header from blocking a host for hours.
+	 * <p>Is set to {@link #DEFAULT_MAX_PAUSE} by default.</p>
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The maximum pause in milliseconds
+	 */
+	public synchronized void setMaxPause(long milliseconds) {
+		this.maxPause = Math.max(0, milliseconds);
+	}
+	
+	/**
+	 * Sets what decides which requests share a token bucket. Resets all token buckets.
+	 * @since MyWebApi 1.0
+	 * @param selector The key selector to use, <code>null</code> for {@link #PER_HOST}
+	 */
+	public synchronized void setKeySelector(KeySelector selector) {
+		this.selector = selector != null ? selector : PER_HOST;
+		buckets.clear();
+	}
+	
+	/**
+	 * Returns the key of the token bucket a request must take its permit from.
+	 * @since MyWebApi 1.0
+	 * @param request The request that is about to be sent
+	 * @return The key of the token bucket
+	 */
+	public synchronized String getKey(HttpRequest request) {
+		return selector.getKey(request);
+	}
+	
+	/**
+	 * Reserves a permit. The permit is taken right away, but may only be used after the returned delay.
+	 * @since MyWebApi 1.0
+	 * @param key The key of the token bucket
+	 * @return The time in milliseconds to wait before sending the request
+	 */
+	public synchronized long reserve(String key) {
+		long now = System.currentTimeMillis();
+		Bucket bucket = getBucket(key, now);
+		long wait = Math.max(0, bucket.blockedUntil - now);
+		if (rate <= 0) { return wait; }
+		bucket.tokens -= 1;
+		if (bucket.tokens < 0) {
+			// the bucket has been filled up to its last update, which lies in the future while blocked
+			long available = bucket.last + (long) Math.ceil(-bucket.tokens * 1000 / bucket.rate);
+			wait = Math.max(wait, available - now);
+		}
+		return wait;
+	}
+	
+	/**
+	 * Takes a permit, but only if one is available right away.
+	 * @since MyWebApi 1.0
+	 * @param key The key of the token bucket
+	 * @return <code>true</code> if a permit has been taken, <code>false</code> if the request has to wait
+	 */
+	public synchronized boolean tryAcquire(String key) {
+		long now = System.currentTimeMillis();
+		Bucket bucket = getBucket(key, now);
+		if (bucket.blockedUntil > now) { return false; }
+		if (rate <= 0) { return true; }
+		if (bucket.tokens < 1) { return false; }
+		bucket.tokens -= 1;
+		return true;
+	}
+	
+	/**
+	 * Stops handing out permits for a key for a while, because the origin has asked for it, and halves the
+	 * rate of that key. The pause never lasts longer than the maximum pause.
+	 * @since MyWebApi 1.0
+	 * @param key The key of the token bucket
+	 * @param pauseMillis The time in milliseconds the origin has asked to wait
+	 */
+	public synchronized void throttle(String key, long pauseMillis) {
+		long now = System.currentTimeMillis();
+		Bucket bucket = getBucket(key, now);
+		bucket.blockedUntil = Math.max(bucket.blockedUntil, now + Math.max(0, Math.min(pauseMillis, maxPause)));
+		if (rate <= 0) { return; }
+		bucket.rate = Math.max(rate * MIN_FRACTION, bucket.rate / 2);
+		// do not let permits pile up while blocked, they would all be used at once when the pause ends
+		bucket.tokens = Math.min(bucket.tokens, 0);
+		bucket.last = Math.max(bucket.last, bucket.blockedUntil);
+	}
+	
+	/**
+	 * Records a request that was not throttled by the origin, which raises the rate of a throttled key a little.
+	 * @since MyWebApi 1.0
+	 * @param key The key of the token bucket
+	 */
+	public synchronized void recordSuccess(String key) {
+		if (rate <= 0) { return; }
+		Bucket bucket = buckets.get(key);
+		if (bucket != null && bucket.rate < rate) { bucket.rate = Math.min(rate, bucket.rate + rate * RECOVERY); }
+	}
+	
+	/**
+	 * Returns the token bucket of a key (creating it if it does not exist yet), filled up to the current time.
+	 * @param key The key of the token bucket
+	 * @param now The current time
+	 * @return The token bucket
+	 */
+	private Bucket getBucket(String key, long now) {
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new Bucket(rate, burst, now);
+			buckets.put(key, bucket);
+		} else if (now > bucket.last) {
+			bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.last) * bucket.rate / 1000);
+			bucket.last = now;
+		}
+		return bucket;
+	}
+	
+	/**
+	 * The token bucket of a single key.
+	 */
+	private static final class Bucket {
+		
+		/** The current amount of permits per second, lower than configured while throttled. */
+		private double rate;
+		
+		/** The amount of permits available, negative if permits have been reserved ahead of time. */
+		private double tokens;
+		
+		/** The time up to which the bucket has been filled. */
+		private long last;
+		
+		/** The time until which no permits are handed out. */
+		private long blockedUntil;
+		
+		private Bucket(double rate, int tokens, long now) {
+			this.rate = rate;
+			this.tokens = tokens;
+			this.last = now;
+			this.blockedUntil = 0;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,114 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps a copy of every byte that is read from another input stream, so a body that is streamed to a request
+ * can still be cached once it has been read to its end.
+ * <p>Skipped bytes are read (and recorded) as well, so the copy never has any gaps.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyRecordingInputStream extends FilterInputStream {
+	
+	/** Contains the bytes that have been read so far. */
+	private ByteArrayOutputStream recording;
+	
+	/** Flag indicating that the end of the stream has been reached. */
+	private boolean ended;
+	
+	/**
+	 * Creates a new recording input stream.
+	 * @since MyWebApi 1.0
+	 * @param in The stream to read from
+	 */
+	public MyRecordingInputStream(InputStream in) {
+		super(in);
+		this.recording = new ByteArrayOutputStream();
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			ended = true;
+		} else {
+			recording.write(b);
+		}
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int count = in.read(buffer, offset, length);
+		if (count < 0) {
+			ended = true;
+		} else {
+			recording.write(buffer, offset, count);
+		}
+		return count;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n) {
+			int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (count < 0) { break; }
+			skipped += count;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+	
+	@Override
+	public synchronized void mark(int readlimit) {}
+	
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+	
+	/**
+	 * Checks if the stream has been read to its end, meaning the recording holds the entire stream.
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if the end of the stream has been reached
+	 */
+	public boolean hasEnded() {
+		return ended;
+	}
+	
+	/**
+	 * Returns a copy of the bytes that have been read so far.
+	 * @since MyWebApi 1.0
+	 * @return The recorded bytes
+	 */
+	public byte[] toByteArray() {
+		return recording.toByteArray();
+	}
+	
+}
@@ -0,0 +1,487 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import it.fahner.mywapi.MyLog;
+import it.fahner.mywapi.MyQueuedRequest;
+import it.fahner.mywapi.MyRequest;
+import it.fahner.mywapi.http.HttpBodySource;
+import it.fahner.mywapi.http.HttpResponse;
+import it.fahner.mywapi.http.types.HttpParamList;
+import it.fahner.mywapi.http.types.HttpRequestMethod;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds the requests that were started while queueing was enabled, in the order they were started.
+ * <p>The queue can be backed by an append-only journal file, so queued requests survive a restart of the
+ * application. Every queued request is appended to the journal as a line containing its path, request
+ * method, URL parameters, content name and body. Once a request has been replayed, a line marking it as
+ * done is appended. The journal is rewritten (atomically, by replacing it with a new file) whenever the queue
+ * becomes empty. A body source (see {@link MyRequest#getBodySource()}) is written to the journal with its
+ * content type if it holds its body in memory (see {@link HttpBodySource#getContent()}). Requests with any other
+ * body source are only kept in memory.</p>
+ * <p>Replaying never runs more than a fixed amount of requests at the same time, and never runs two
+ * requests with the same content name at the same time. Requests with the same content name are therefore
+ * always replayed in the order they were queued. Requests without a content name are not related to each other,
+ * and can be replayed at the same time.</p>
+ * <p>When the application stops, {@link #abandon(Dispatcher)} hands the requests that are still queued to a
+ * dispatcher one last time (to fail them), while they stay in the journal for the next session.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyRequestQueue {
+	
+	/**
+	 * Sends requests that are replayed from the queue.
+	 * @since MyWebApi 1.0
+	 */
+	public interface Dispatcher {
+		
+		/**
+		 * Starts a request that is replayed from the queue.
+		 * @since MyWebApi 1.0
+		 * @param request The request to start
+		 * @param broadcast <code>true</code> if all request listeners must be notified once it has been resolved
+		 * @return The future that completes once the request has been resolved
+		 */
+		public CompletableFuture<HttpResponse> dispatch(MyRequest request, boolean broadcast);
+		
+	}
+	
+	/** Journal line prefix that marks a queued request. */
+	private static final String ADDED = "+";
+	
+	/** Journal line prefix that marks a replayed request. */
+	private static final String DONE = "-";
+	
+	/** Journal field value that represents <code>null</code>. */
+	private static final String NULL = "~";
+	
+	/** Contains all queued requests that have not been replayed yet, in the order they were queued. */
+	private LinkedHashMap<Long, Entry> pending;
+	
+	/** Contains the content names of all requests that are being replayed right now. */
+	private HashSet<String> busyNames;
+	
+	/** Contains the journal file, <code>null</code> if the queue is only kept in memory. */
+	private File journal;
+	
+	/** Contains the identifier of the next queued request. */
+	private long nextId;
+	
+	/** Contains the amount of requests that are being replayed right now. */
+	private int running;
+	
+	/** Contains the maximum amount of requests to replay at the same time. */
+	private int concurrency;
+	
+	/** Sends the replayed requests, <code>null</code> while not replaying. */
+	private Dispatcher dispatcher;
+	
+	/** Flag indicating that a thread is starting replayed requests right now. */
+	private boolean pumping;
+	
+	/** Flag indicating that the pumping thread has to check the queue once more. */
+	private boolean pumpAgain;
+	
+	/**
+	 * Creates a new (empty) request queue that is only kept in memory.
+	 * @since MyWebApi 1.0
+	 */
+	public MyRequestQueue() {
+		this.pending = new LinkedHashMap<Long, Entry>();
+		this.busyNames = new HashSet<String>();
+		this.nextId = 1;
+	}
+	
+	/**
+	 * Starts backing this queue with a journal file.
+	 * <p>Requests that were left in the journal by a previous session are restored (as instances of
+	 * {@link MyQueuedRequest}) in front of the requests that are queued right now.</p>
+	 * @since MyWebApi 1.0
+	 * @param journal The journal file to use, <code>null</code> to keep the queue in memory only
+	 * @throws IOException When the journal could not be read or written
+	 */
+	public synchronized void setJournal(File journal) throws IOException {
+		this.journal = journal;
+		if (journal == null) { return; }
+		LinkedHashMap<Long, Entry> restored = new LinkedHashMap<Long, Entry>();
+		if (journal.exists()) { restored = readJournal(journal); }
+		for (Entry entry : restored.values()) { nextId = Math.max(nextId, entry.id + 1); }
+		for (Entry entry : pending.values()) {
+			entry.id = nextId++;
+			restored.put(entry.id, entry);
+		}
+		this.pending = restored;
+		rewriteJournal();
+		MyLog.log("Request queue journal opened, " + restored.size() + " requests pending (" + journal + ")");
+	}
+	
+	/**
+	 * Adds a request to the end of this queue (and appends it to the journal).
+	 * <p>The request is replayed right away if the queue is being replayed.</p>
+	 * @since MyWebApi 1.0
+	 * @param request The request to queue
+	 * @param future The future to complete once the request has been replayed
+	 * @param broadcast <code>true</code> if all request listeners must be notified once it has been replayed
+	 */
+	public void add(MyRequest request, CompletableFuture<HttpResponse> future, boolean broadcast) {
+		synchronized (this) {
+			Entry entry = new Entry(nextId++, request, future, broadcast);
+			pending.put(entry.id, entry);
+			if (isJournaled(entry)) {
+				append(describe(entry));
+			} else if (journal != null) {
+				MyLog.log("Request with a streaming body is not journaled (" + request + ")");
+			}
+		}
+		pump();
+	}
+	
+	/**
+	 * Returns the amount of requests in this queue that have not been replayed yet.
+	 * @since MyWebApi 1.0
+	 * @return The amount of queued requests
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+	
+	/**
+	 * Starts replaying all queued requests. Replaying continues until the queue is empty or
+	 * {@link #pause()} is called.
+	 * @since MyWebApi 1.0
+	 * @param concurrency The maximum amount of requests to replay at the same time
+	 * @param dispatcher Sends the replayed requests
+	 */
+	public void replay(int concurrency, Dispatcher dispatcher) {
+		synchronized (this) {
+			this.concurrency = Math.max(1, concurrency);
+			this.dispatcher = dispatcher;
+			MyLog.log("Replaying " + pending.size() + " queued requests");
+		}
+		pump();
+	}
+	
+	/**
+	 * Stops replaying queued requests. Requests that are being replayed right now will still finish.
+	 * @since MyWebApi 1.0
+	 */
+	public synchronized void pause() {
+		this.dispatcher = null;
+	}
+	
+	/**
+	 * Stops replaying, and hands every queued request that is not being replayed right now to a dispatcher one
+	 * last time, so it can fail the request. The requests stay in the journal (if there is one), and are replayed
+	 * by the next session that opens it. Requests that are being replayed right now will still finish.
+	 * @since MyWebApi 1.0
+	 * @param dispatcher Fails the abandoned requests
+	 */
+	public void abandon(Dispatcher dispatcher) {
+		ArrayList<Entry> abandoned = new ArrayList<Entry>();
+		synchronized (this) {
+			this.dispatcher = null;
+			for (Entry entry : pending.values()) {
+				if (entry.replaying || entry.abandoned) { continue; }
+				entry.abandoned = true;
+				abandoned.add(entry);
+			}
+		}
+		for (final Entry entry : abandoned) {
+			CompletableFuture<HttpResponse> outcome = dispatcher.dispatch(entry.request, entry.broadcast);
+			if (entry.future == null) { continue; }
+			outcome.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+				
+				@Override
+				public void accept(HttpResponse response, Throwable error) {
+					if (error == null) { entry.future.complete(response); } else { entry.future.completeExceptionally(error); }
+				}
+				
+			});
+		}
+	}
+	
+	/**
+	 * Starts replaying as many queued requests as allowed.
+	 * <p>Only one thread pumps at a time. Requests that resolve immediately (from the cache) ask the
+	 * active pump for another round instead of pumping recursively.</p>
+	 */
+	private void pump() {
+		synchronized (this) {
+			if (pumping) { pumpAgain = true; return; }
+			pumping = true;
+		}
+		while (true) {
+			Entry next = null;
+			Dispatcher current;
+			synchronized (this) {
+				current = dispatcher;
+				if (current != null && running < concurrency) {
+					for (Entry entry : pending.values()) {
+						if (entry.replaying || entry.abandoned
+								|| (entry.nameKey() != null && busyNames.contains(entry.nameKey()))) {
+							continue;
+						}
+						next = entry;
+						break;
+					}
+				}
+				if (next == null) {
+					if (pumpAgain) { pumpAgain = false; continue; }
+					pumping = false;
+					return;
+				}
+				next.replaying = true;
+				if (next.nameKey() != null) { busyNames.add(next.nameKey()); }
+				running += 1;
+			}
+			final Entry replayed = next;
+			current.dispatch(replayed.request, replayed.broadcast).whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+				
+				@Override
+				public void accept(HttpResponse response, Throwable error) {
+					finish(replayed, response, error);
+				}
+				
+			});
+		}
+	}
+	
+	/**
+	 * Removes a replayed request from the queue and continues replaying.
+	 * @param entry The replayed request
+	 * @param response The response of the request, <code>null</code> if it has failed
+	 * @param error The reason the request has failed, <code>null</code> if it has succeeded
+	 */
+	private void finish(Entry entry, HttpResponse response, Throwable error) {
+		synchronized (this) {
+			pending.remove(entry.id);
+			if (entry.nameKey() != null) { busyNames.remove(entry.nameKey()); }
+			running -= 1;
+			if (pending.isEmpty()) { rewriteJournal(); } else { append(DONE + "\t" + entry.id); }
+		}
+		if (entry.future != null) {
+			if (error == null) { entry.future.complete(response); } else { entry.future.completeExceptionally(error); }
+		}
+		pump();
+	}
+	
+	/**
+	 * Appends a single line to the journal (if there is one).
+	 * @param line The line to append
+	 */
+	private void append(String line) {
+		if (journal == null) { return; }
+		try {
+			FileOutputStream out = new FileOutputStream(journal, true);
+			try {
+				out.write((line + "\n").getBytes("UTF-8"));
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			MyLog.error("Could not write to request queue journal (" + journal + "): " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Replaces the journal with one that only contains the requests that are still pending.
+	 * <p>The new journal is written to a temporary file next to it first, which then atomically replaces the
+	 * journal. If anything goes wrong, the old journal is kept as it was.</p>
+	 */
+	private void rewriteJournal() {
+		if (journal == null) { return; }
+		File rewritten = new File(journal.getPath() + ".tmp");
+		try {
+			FileOutputStream out = new FileOutputStream(rewritten, false);
+			try {
+				for (Entry entry : pending.values()) {
+					if (isJournaled(entry)) { out.write((describe(entry) + "\n").getBytes("UTF-8")); }
+				}
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(rewritten.toPath(), journal.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(rewritten.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			MyLog.error("Could not rewrite request queue journal (" + journal + "): " + e.getMessage());
+			if (!rewritten.delete()) { rewritten.deleteOnExit(); }
+		}
+	}
+	
+	/**
+	 * Checks if a queued request can be written to the journal. A request with a body source that does not hold
+	 * its body in memory cannot, since its body only exists while the request is sent.
+	 * @param entry The queued request
+	 * @return <code>true</code> if the request can be journaled
+	 */
+	private static boolean isJournaled(Entry entry) {
+		HttpBodySource source = entry.request.getBodySource();
+		return source == null || source.getContent() != null;
+	}
+	
+	/**
+	 * Returns the journal line that describes a queued request.
+	 * @param entry The queued request
+	 * @return The line, without line terminator
+	 */
+	private static String describe(Entry entry) {
+		MyRequest request = entry.request;
+		HttpParamList params = request.getUrlParameters();
+		HttpBodySource source = request.getBodySource();
+		return ADDED + "\t" + entry.id
+				+ "\t" + encode(request.getRequestMethod() != null ? request.getRequestMethod().name() : null)
+				+ "\t" + encode(request.getPath())
+				+ "\t" + encode(params != null ? params.toUrlEncodedString() : null)
+				+ "\t" + encode(request.getContentName())
+				+ "\t" + encode(request.getBody())
+				+ "\t" + encode(source != null ? source.getContentType() : null)
+				+ "\t" + (source != null ? Base64.getEncoder().encodeToString(source.getContent()) : NULL);
+	}
+	
+	/**
+	 * Reads all requests from a journal that have not been marked as done.
+	 * <p>Lines that cannot be parsed (for example a line that was only partially written when
+	 * the application was killed) are skipped.</p>
+	 * @param journal The journal to read
+	 * @return The pending requests, in the order they were queued
+	 * @throws IOException When the journal could not be read
+	 */
+	private static LinkedHashMap<Long, Entry> readJournal(File journal) throws IOException {
+		LinkedHashMap<Long, Entry> out = new LinkedHashMap<Long, Entry>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				try {
+					if (fields[0].equals(DONE) && fields.length == 2) {
+						out.remove(Long.valueOf(fields[1]));
+					} else if (fields[0].equals(ADDED) && (fields.length == 7 || fields.length == 9)) {
+						String method = decode(fields[2]);
+						String params = decode(fields[4]);
+						HttpBodySource source = fields.length == 9 && !fields[8].equals(NULL)
+								? HttpBodySource.of(Base64.getDecoder().decode(fields[8]), decode(fields[7]))
+								: null;
+						MyRequest request = new MyQueuedRequest(
+								decode(fields[3]),
+								method != null ? HttpRequestMethod.valueOf(method) : null,
+								HttpParamList.fromUrlEncodedString(params),
+								decode(fields[5]),
+								decode(fields[6]),
+								source);
+						long id = Long.parseLong(fields[1]);
+						out.put(id, new Entry(id, request, null, true));
+					}
+				} catch (IllegalArgumentException e) {
+					MyLog.error("Skipped unreadable request queue journal line: " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return out;
+	}
+	
+	/**
+	 * Encodes a (nullable) value so it can be stored in a single journal field.
+	 * @param value The value to encode
+	 * @return The encoded value
+	 */
+	private static String encode(String value) {
+		if (value == null) { return NULL; }
+		try { return URLEncoder.encode(value, "UTF-8"); }
+		catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+	}
+	
+	/**
+	 * Decodes a value that was encoded by {@link #encode(String)}.
+	 * @param value The encoded value
+	 * @return The original value
+	 */
+	private static String decode(String value) {
+		if (value.equals(NULL)) { return null; }
+		try { return URLDecoder.decode(value, "UTF-8"); }
+		catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+	}
+	
+	/**
+	 * A single queued request.
+	 */
+	private static final class Entry {
+		
+		/** Identifies the request in the journal. */
+		private long id;
+		
+		/** The queued request. */
+		private final MyRequest request;
+		
+		/** The future to complete once replayed, <code>null</code> if restored from the journal. */
+		private final CompletableFuture<HttpResponse> future;
+		
+		/** Flag indicating that all request listeners must be notified once replayed. */
+		private final boolean broadcast;
+		
+		/** Flag indicating that the request is being replayed right now. */
+		private boolean replaying;
+		
+		/** Flag indicating that the request has been abandoned, and is only kept for the journal. */
+		private boolean abandoned;
+		
+		private Entry(long id, MyRequest request, CompletableFuture<HttpResponse> future, boolean broadcast) {
+			this.id = id;
+			this.request = request;
+			this.future = future;
+			this.broadcast = broadcast;
+		}
+		
+		/**
+		 * Returns the key that groups requests that must be replayed in order.
+		 * @return The content name, <code>null</code> if the request has none and can be replayed in any order
+		 */
+		private String nameKey() {
+			return request.getContentName();
+		}
+		
+	}
+	
+}
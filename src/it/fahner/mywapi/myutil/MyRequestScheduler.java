@@ -0,0 +1,293 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides the order in which requests are resolved. Never hands more than a fixed amount of tasks to
+ * the executor at the same time; all other tasks wait in this scheduler.
+ * <p>Waiting tasks are kept in one first-in-first-out lane per priority. Whenever a task may start, the
+ * oldest task of the lane with the highest <i>effective</i> priority is started. The effective priority
+ * of a task is its own priority plus one for every aging interval it has been waiting, so tasks with a
+ * low priority are never starved by a steady stream of tasks with a high priority.</p>
+ * <p>A task that finishes asynchronously (see {@link AsyncTask}) keeps its place among the running tasks
+ * until it reports that it is done, even though it no longer occupies a thread of the executor.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyRequestScheduler {
+	
+	/**
+	 * A task that may finish after it has returned, for example because it waits for a response without
+	 * holding a thread.
+	 * @since MyWebApi 1.0
+	 */
+	public interface AsyncTask {
+		
+		/**
+		 * Starts the task.
+		 * @since MyWebApi 1.0
+		 * @param done Must be run exactly once when the task has finished, from any thread
+		 */
+		public void start(Runnable done);
+		
+	}
+	
+	/** Contains a lane of waiting tasks for every priority, mapped by that priority. */
+	private TreeMap<Integer, ArrayDeque<Task>> lanes;
+	
+	/** Contains the executor that runs the started tasks. */
+	private Executor executor;
+	
+	/** Contains the maximum amount of tasks that can run at the same time. */
+	private int maxRunning;
+	
+	/** Contains the maximum amount of tasks that can wait at the same time. */
+	private int maxWaiting;
+	
+	/** Contains the time in milliseconds a task has to wait before its priority is raised by one. */
+	private long agingMillis;
+	
+	/** Contains the amount of tasks running right now. */
+	private int running;
+	
+	/** Contains the amount of tasks waiting right now. */
+	private int waiting;
+	
+	/**
+	 * Creates a new scheduler without any waiting tasks.
+	 * @since MyWebApi 1.0
+	 * @param executor The executor that runs the started tasks
+	 * @param maxRunning The maximum amount of tasks that can run at the same time
+	 * @param maxWaiting The maximum amount of tasks that can wait at the same time
+	 * @param agingMillis The time in milliseconds a task has to wait before its priority is raised by one
+	 */
+	public MyRequestScheduler(Executor executor, int maxRunning, int maxWaiting, long agingMillis) {
+		this.lanes = new TreeMap<Integer, ArrayDeque<Task>>();
+		this.executor = executor;
+		this.maxRunning = maxRunning;
+		this.maxWaiting = maxWaiting;
+		this.agingMillis = agingMillis;
+	}
+	
+	/**
+	 * Schedules a task. The task starts right away if less than the maximum amount of tasks are running.
+	 * @since MyWebApi 1.0
+	 * @param priority The priority of the task, tasks with a higher priority start first
+	 * @param task The task to run
+	 * @param rejected Runs instead of the task if the executor does not accept the task once it is started
+	 * @throws RejectedExecutionException When the maximum amount of tasks is already waiting
+	 */
+	public void schedule(int priority, final Runnable task, Runnable rejected) {
+		scheduleAsync(priority, new AsyncTask() {
+			
+			@Override
+			public void start(Runnable done) {
+				try {
+					task.run();
+				} finally {
+					done.run();
+				}
+			}
+			
+		}, rejected);
+	}
+	
+	/**
+	 * Schedules a task that finishes asynchronously. The task counts as running until it reports that it is
+	 * done. The task starts right away if less than the maximum amount of tasks are running.
+	 * @since MyWebApi 1.0
+	 * @param priority The priority of the task, tasks with a higher priority start first
+	 * @param task The task to run
+	 * @param rejected Runs instead of the task if the executor does not accept the task once it is started
+	 * @throws RejectedExecutionException When the maximum amount of tasks is already waiting
+	 */
+	public void scheduleAsync(int priority, AsyncTask task, Runnable rejected) {
+		synchronized (this) {
+			if (waiting >= maxWaiting) { throw new RejectedExecutionException("Too many waiting requests"); }
+			ArrayDeque<Task> lane = lanes.get(priority);
+			if (lane == null) {
+				lane = new ArrayDeque<Task>();
+				lanes.put(priority, lane);
+			}
+			lane.addLast(new Task(priority, task, rejected));
+			waiting += 1;
+		}
+		startWaiting();
+	}
+	
+	/**
+	 * Sets the executor that runs all tasks started from now on.
+	 * @since MyWebApi 1.0
+	 * @param executor The executor to use
+	 */
+	public synchronized void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Changes the limits of this scheduler. Tasks that are already running or waiting are not affected.
+	 * @since MyWebApi 1.0
+	 * @param maxRunning The maximum amount of tasks that can run at the same time
+	 * @param maxWaiting The maximum amount of tasks that can wait at the same time
+	 */
+	public void setLimits(int maxRunning, int maxWaiting) {
+		synchronized (this) {
+			this.maxRunning = maxRunning;
+			this.maxWaiting = maxWaiting;
+		}
+		startWaiting();
+	}
+	
+	/**
+	 * Sets the time a task has to wait before its priority is raised by one.
+	 * @since MyWebApi 1.0
+	 * @param agingMillis The time in milliseconds
+	 */
+	public synchronized void setAging(long agingMillis) {
+		this.agingMillis = agingMillis;
+	}
+	
+	/**
+	 * Returns the maximum amount of tasks that can wait at the same time.
+	 * @since MyWebApi 1.0
+	 * @return The maximum amount of waiting tasks
+	 */
+	public synchronized int getMaxWaiting() {
+		return maxWaiting;
+	}
+	
+	/**
+	 * Returns the amount of tasks that are waiting to be started.
+	 * @since MyWebApi 1.0
+	 * @return The amount of waiting tasks
+	 */
+	public synchronized int getWaiting() {
+		return waiting;
+	}
+	
+	/**
+	 * Starts waiting tasks until the maximum amount of tasks is running or no task is waiting.
+	 */
+	private void startWaiting() {
+		while (true) {
+			final Task next;
+			Executor current;
+			synchronized (this) {
+				if (running >= maxRunning) { return; }
+				next = takeNext();
+				if (next == null) { return; }
+				running += 1;
+				current = executor;
+			}
+			try {
+				current.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						final AtomicBoolean finished = new AtomicBoolean();
+						Runnable done = new Runnable() {
+							
+							@Override
+							public void run() {
+								if (finished.compareAndSet(false, true)) { finished(); }
+							}
+							
+						};
+						try {
+							next.task.start(done);
+						} catch (RuntimeException e) {
+							done.run();
+							throw e;
+						} catch (Error e) {
+							done.run();
+							throw e;
+						}
+					}
+					
+				});
+			} catch (RejectedExecutionException e) {
+				synchronized (this) { running -= 1; }
+				next.rejected.run();
+			}
+		}
+	}
+	
+	/**
+	 * Marks a single task as finished and starts the next one.
+	 */
+	private void finished() {
+		synchronized (this) { running -= 1; }
+		startWaiting();
+	}
+	
+	/**
+	 * Removes the waiting task with the highest effective priority from its lane.
+	 * @return The task to start next, <code>null</code> if no task is waiting
+	 */
+	private Task takeNext() {
+		long now = System.currentTimeMillis();
+		ArrayDeque<Task> best = null;
+		long bestPriority = Long.MIN_VALUE;
+		for (Map.Entry<Integer, ArrayDeque<Task>> lane : lanes.descendingMap().entrySet()) {
+			Task head = lane.getValue().peekFirst();
+			if (head == null) { continue; }
+			long effective = head.priority + (agingMillis > 0 ? (now - head.created) / agingMillis : 0);
+			// Lanes are visited from high to low priority, so ties go to the higher base priority
+			if (effective > bestPriority) {
+				best = lane.getValue();
+				bestPriority = effective;
+			}
+		}
+		if (best == null) { return null; }
+		waiting -= 1;
+		return best.pollFirst();
+	}
+	
+	/**
+	 * A single scheduled task.
+	 */
+	private static final class Task {
+		
+		/** The priority the task was scheduled with. */
+		private final int priority;
+		
+		/** The task itself. */
+		private final AsyncTask task;
+		
+		/** Runs when the executor does not accept the task. */
+		private final Runnable rejected;
+		
+		/** The time the task was scheduled. */
+		private final long created;
+		
+		private Task(int priority, AsyncTask task, Runnable rejected) {
+			this.priority = priority;
+			this.task = task;
+			this.rejected = rejected;
+			this.created = System.currentTimeMillis();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+/**
+ * Limits the amount of retries to a percentage of the amount of requests.
+ * <p>Every request that is sent for the first time deposits a fraction of a retry into this budget,
+ * every retry withdraws a whole one. A small amount of retries per second is always allowed, so a
+ * client that sends very little traffic can still retry. When the origin is down and every request
+ * fails, retries stop once the budget is spent instead of multiplying the load on the origin.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyRetryBudget {
+	
+	/** Contains the fraction of a retry that every request deposits. */
+	private double ratio;
+	
+	/** Contains the amount of retries per second that are always allowed. */
+	private int minPerSecond;
+	
+	/** Contains the amount of retries currently in the budget. */
+	private double balance;
+	
+	/** Contains the maximum amount of retries the budget can hold. */
+	private double maxBalance;
+	
+	/** Contains the start of the current second, for the retries that are always allowed. */
+	private long secondStart;
+	
+	/** Contains the amount of retries that were always allowed in the current second. */
+	private int usedThisSecond;
+	
+	/**
+	 * Creates a new, empty, retry budget.
+	 * @since MyWebApi 1.0
+	 * @param ratio The maximum amount of retries as a fraction of the amount of requests (e.g. <code>0.1</code>)
+	 * @param minPerSecond The amount of retries per second that are always allowed
+	 */
+	public MyRetryBudget(double ratio, int minPerSecond) {
+		this.ratio = ratio;
+		this.minPerSecond = minPerSecond;
+		this.maxBalance = Math.max(1, ratio * 1000);
+	}
+	
+	/**
+	 * Records a request that is sent for the first time.
+	 * @since MyWebApi 1.0
+	 */
+	public synchronized void recordRequest() {
+		balance = Math.min(maxBalance, balance + ratio);
+	}
+	
+	/**
+	 * Withdraws a single retry from the budget, if there is one.
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if the retry is allowed, <code>false</code> if the budget is spent
+	 */
+	public synchronized boolean tryRetry() {
+		long now = System.currentTimeMillis();
+		if (now - secondStart >= 1000) {
+			secondStart = now;
+			usedThisSecond = 0;
+		}
+		if (usedThisSecond < minPerSecond) {
+			usedThisSecond += 1;
+			return true;
+		}
+		if (balance >= 1) {
+			balance -= 1;
+			return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,54 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the named daemon threads that MyWebApi uses to resolve requests.
+ * <p>Threads are marked as daemon threads so an application never has to shut down a MyWebApi
+ * instance just to be able to exit.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyThreadFactory implements ThreadFactory {
+	
+	/** Contains the prefix used for the name of every created thread. */
+	private String namePrefix;
+	
+	/** Contains the sequence number of the next thread to create. */
+	private AtomicInteger threadNumber;
+	
+	/**
+	 * Creates a new thread factory.
+	 * @since MyWebApi 1.0
+	 * @param namePrefix The prefix to use for the name of every thread (a sequence number is appended)
+	 */
+	public MyThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+		this.threadNumber = new AtomicInteger(1);
+	}
+	
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+	
+}
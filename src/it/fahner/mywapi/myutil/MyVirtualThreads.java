@@ -0,0 +1,70 @@
+/*
+ Copyright 2013 FahnerIT
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package it.fahner.mywapi.myutil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides access to virtual threads on platforms that support them (Java 21 and up).
+ * <p>Virtual threads are looked up reflectively, so the library keeps working on platforms
+ * that do not know about them.</p>
+ * @since MyWebApi 1.0
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public final class MyVirtualThreads {
+	
+	/** Private constructor, this class only has static methods. */
+	private MyVirtualThreads() {}
+	
+	/**
+	 * Checks if the current platform supports virtual threads.
+	 * @since MyWebApi 1.0
+	 * @return <code>true</code> if virtual threads are available, <code>false</code> otherwise
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Creates an executor that starts a new named virtual thread for every task.
+	 * @since MyWebApi 1.0
+	 * @param namePrefix The prefix to use for the name of every thread (a sequence number is appended)
+	 * @return The new executor
+	 * @throws UnsupportedOperationException When the platform does not support virtual threads
+	 */
+	public static ExecutorService newExecutor(String namePrefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-", 1L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Virtual threads are not supported on this platform");
+		}
+	}
+	
+}
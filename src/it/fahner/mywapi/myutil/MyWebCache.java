@@ -31,8 +31,42 @@ public class MyWebCache {
 	
 	private HashMap<String, HttpResponseCache> caches;
 	
+	/** Contains the time in milliseconds that expired responses are kept as stale responses. */
+	private long staleRetention;
+	
+	/** Flag indicating that response bodies are kept compressed. */
+	private boolean compression;
+	
 	public MyWebCache() {
 		this.caches = new HashMap<String, HttpResponseCache>();
+		this.staleRetention = 0;
+	}
+	
+	/**
+	 * Sets how long responses are kept after they have expired, so they can still be returned by
+	 * {@link #getStaleResponse(String, HttpRequest)}.
+	 * @since MyWebApi 1.0
+	 * @param milliseconds The time to keep expired responses (in milliseconds), <code>0</code> to remove them
+	 *  as soon as they expire
+	 */
+	public synchronized void setStaleRetention(long milliseconds) {
+		this.staleRetention = milliseconds;
+		for (HttpResponseCache cache : caches.values()) {
+			cache.setStaleRetention(milliseconds);
+		}
+	}
+	
+	/**
+	 * Specifies whether the bodies of responses that are added from now on are kept compressed (see
+	 * {@link HttpResponseCache#setCompression(boolean)}).
+	 * @since MyWebApi 1.0
+	 * @param compression <code>true</code> to keep response bodies compressed
+	 */
+	public synchronized void setCompression(boolean compression) {
+		this.compression = compression;
+		for (HttpResponseCache cache : caches.values()) {
+			cache.setCompression(compression);
+		}
 	}
 	
 	/**
@@ -44,7 +78,11 @@ public class MyWebCache {
 	 */
 	public synchronized void add(String contentName, HttpResponse response, long expireAfter) {
 		HttpResponseCache cache = this.caches.get(contentName);
-		if (cache == null) { cache = new HttpResponseCache(); }
+		if (cache == null) {
+			cache = new HttpResponseCache();
+			cache.setStaleRetention(staleRetention);
+			cache.setCompression(compression);
+		}
 		cache.store(response, expireAfter);
 		this.caches.put(contentName, cache);
 	}
@@ -72,13 +110,27 @@ public class MyWebCache {
 		return caches.get(contentName).getResponseFor(request);
 	}
 	
+	/**
+	 * Returns the cached response for the specified request, even if it has expired (as long as it is still
+	 * kept, see {@link #setStaleRetention(long)}).
+	 * @since MyWebApi 1.0
+	 * @param contentName The content name under which this response is supposed to be stored
+	 * @param request The request to check for if a cached response exists
+	 * @return The {@link HttpResponse} if found, <code>null</code> if no cached response is kept
+	 */
+	public synchronized HttpResponse getStaleResponse(String contentName, HttpRequest request) {
+		if (!caches.containsKey(contentName)) { return null; }
+		return caches.get(contentName).getStaleResponseFor(request);
+	}
+	
 	/**
 	 * Removes all cached content for a specified content name.
 	 * @since MyWebApi 1.0
 	 * @param contentName The content name to remove all caches entries for
 	 */
 	public synchronized void removeAll(String contentName) {
-		this.caches.remove(contentName);
+		HttpResponseCache removed = this.caches.remove(contentName);
+		if (removed != null) { removed.clear(); }
 	}
 	
 	/**
@@ -86,6 +138,9 @@ public class MyWebCache {
 	 * @since MyWebApi 1.0
 	 */
 	public synchronized void clear() {
+		for (HttpResponseCache cache : caches.values()) {
+			cache.clear();
+		}
 		this.caches.clear();
 	}
 	
@@ -0,0 +1,155 @@
+package it.fahner.mywapi.test;
+
+import it.fahner.mywapi.MyBaseRequest;
+import it.fahner.mywapi.MyWebApi;
+import it.fahner.mywapi.http.HttpClientTransport;
+import it.fahner.mywapi.http.HttpTransport;
+import it.fahner.mywapi.http.types.HttpParamList;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Shows that the amount of threads stays flat as more requests are in flight, when requests are sent using
+ * an asynchronous transport ({@link HttpClientTransport}).
+ * <p>Starts a local stub server that answers every request after a fixed delay, then keeps an increasing
+ * amount of requests in flight at the same time, up to <code>args[0]</code> (default 10000). Reports the wall
+ * time, the amount of failed requests and the peak amount of live platform threads of every run.</p>
+ * @author C. Fahner <info@fahnerit.com>
+ */
+public class MyAsyncTransportLoadTest {
+	
+	/** The time in milliseconds the stub server waits before answering a request. */
+	private static final int SERVER_DELAY = 200;
+	
+	/** The amount of worker threads that start requests. */
+	private static final int WORKERS = 4;
+	
+	/** The time in milliseconds to wait for the workers of a finished run to stop. */
+	private static final int WORKER_DRAIN = 60000;
+	
+	public static void main(String[] args) throws Exception {
+		int maxConcurrency = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		HttpServer server = startStubServer(maxConcurrency);
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		
+		// All runs share a single transport, so its event loop threads are only started once
+		HttpTransport transport = new HttpClientTransport();
+		for (int concurrency = 100; concurrency <= maxConcurrency; concurrency *= 10) {
+			run(baseUrl, transport, concurrency);
+			if (concurrency < maxConcurrency && concurrency * 10 > maxConcurrency) {
+				run(baseUrl, transport, maxConcurrency);
+			}
+		}
+		server.stop(0);
+		System.exit(0);
+	}
+	
+	/**
+	 * Keeps the given amount of requests in flight and waits for all of them to resolve.
+	 */
+	private static void run(String baseUrl, HttpTransport transport, int concurrency) throws InterruptedException {
+		MyWebApi api = new MyWebApi(baseUrl);
+		api.setTransport(transport);
+		api.setExecutor(MyWebApi.createWorkerPool(WORKERS, concurrency));
+		api.setAllowDuplicates(true);
+		api.setSchedulerLimits(concurrency, concurrency);
+		final CountDownLatch done = new CountDownLatch(concurrency);
+		final AtomicInteger failed = new AtomicInteger();
+		final AtomicInteger peakThreads = new AtomicInteger();
+		Thread sampler = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+				while (done.getCount() > 0) {
+					peakThreads.set(Math.max(peakThreads.get(), threads.getThreadCount()));
+					try { Thread.sleep(10); } catch (InterruptedException e) { return; }
+				}
+			}
+			
+		});
+		sampler.setDaemon(true);
+		sampler.start();
+		long start = System.nanoTime();
+		for (int i = 0; i < concurrency; i += 1) {
+			final int id = i;
+			api.startRequest(new MyBaseRequest() {
+				
+				@Override
+				public HttpParamList getUrlParameters() {
+					return new HttpParamList().set("id", Integer.toString(id));
+				}
+				
+				@Override
+				public String getContentName() {
+					return null;
+				}
+				
+				@Override
+				protected void onResolved() {
+					if (!hasSucceeded()) { failed.incrementAndGet(); }
+					done.countDown();
+				}
+				
+			});
+		}
+		done.await();
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		api.shutdown();
+		api.awaitTermination(WORKER_DRAIN);
+		sampler.join();
+		System.out.println(concurrency + " requests in flight: " + millis + " ms, " + failed.get() + " failed, peak "
+				+ peakThreads.get() + " live platform threads");
+	}
+	
+	/**
+	 * Starts a loopback server that answers every request after {@link #SERVER_DELAY} milliseconds,
+	 * without holding a server thread while it waits.
+	 */
+	private static HttpServer startStubServer(int backlog) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), backlog);
+		final ScheduledExecutorService delayer = Executors.newScheduledThreadPool(2);
+		final byte[] body = "{\"ok\":true}".getBytes("UTF-8");
+		server.createContext("/", new HttpHandler() {
+			
+			@Override
+			public void handle(final HttpExchange exchange) {
+				delayer.schedule(new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+							exchange.sendResponseHeaders(200, body.length);
+							OutputStream out = exchange.getResponseBody();
+							out.write(body);
+							out.close();
+						} catch (IOException e) {
+							exchange.close();
+						}
+					}
+					
+				}, SERVER_DELAY, TimeUnit.MILLISECONDS);
+			}
+			
+		});
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		return server;
+	}
+	
+}